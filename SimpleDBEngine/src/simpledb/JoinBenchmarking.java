@@ -1,20 +1,25 @@
 package simpledb;
 
-import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferPoolMonitor;
 import simpledb.jdbc.embedded.EmbeddedDriver;
 import simpledb.opt.TablePlanner;
+import simpledb.server.SimpleDB;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
 import java.sql.*;
 import java.util.*;
+import javax.management.*;
 
 public class JoinBenchmarking {
 
     static boolean disableIndexing = false;
     static boolean lessThan = false;
     static int recordsCount = 0;
+    static long hits = 0;
+    static long misses = 0;
     static ResultSet rs;
     static String query = null;
     static HashMap<String, Integer> matches = new HashMap<>();
@@ -89,8 +94,8 @@ public class JoinBenchmarking {
             s = query;
         }
 
-        BufferMgr.hits = 0;
-        BufferMgr.misses = 0;
+        String dbname = url.replace("jdbc:simpledb:", "");
+        long[] countsBefore = bufferCounts(dbname);
         long time = System.currentTimeMillis();
         rs = stmt.executeQuery(s);
         int count = 0;
@@ -103,12 +108,27 @@ public class JoinBenchmarking {
             searchkeys.add(result);
         } // Going through entire result set.
         recordsCount = count;
+        long[] countsAfter = bufferCounts(dbname);
+        hits = countsAfter[0] - countsBefore[0];
+        misses = countsAfter[1] - countsBefore[1];
 
         System.out.println("Number of records in join: " + count);
         conn.close();
         return System.currentTimeMillis() - time;
     }
 
+    /* Reads the buffer pool's hit and miss counts through JMX */
+    private static long[] bufferCounts(String dbname) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = BufferPoolMonitor.objectName(dbname);
+            return new long[]{(Long) server.getAttribute(name, "Hits"),
+                    (Long) server.getAttribute(name, "Misses")};
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static String runTest(int n, int type) {
         TablePlanner.DEBUG_MODE = true;
         TablePlanner.MODE = type;
@@ -135,13 +155,13 @@ public class JoinBenchmarking {
             result += (test + " time taken: " + time) + "\n";
             result += (test + " guess for block accesses: " + TablePlanner.DEBUG_PLAN.blocksAccessed() + "\n");
             result += (test + " records: " + recordsCount) + "\n";
-            result += (test + " hits: " + BufferMgr.hits) + "\n";
-            result += (test + " misses (disk reads): " + BufferMgr.misses) + "\n" + "\n";
+            result += (test + " hits: " + hits) + "\n";
+            result += (test + " misses (disk reads): " + misses) + "\n" + "\n";
             if (TablePlanner.MODE != type) {
                 return test + " mode was not possible.\n\n";
             }
             csvForm += n + "," + test + "," + time + "," + TablePlanner.DEBUG_PLAN.blocksAccessed() + "," +
-                    recordsCount + "," + BufferMgr.hits + "," + BufferMgr.misses;
+                    recordsCount + "," + hits + "," + misses;
             return result;
         } catch (SQLException throwables) {
             throwables.printStackTrace();
@@ -152,9 +172,31 @@ public class JoinBenchmarking {
     public static void main(String[] args) throws SQLException {
 //        runTests();
 //        correctnessTest();
+//        comparePolicies();
         testSelection();
     }
 
+    /* Compares the buffer replacement policies on the less than join query */
+    public static void comparePolicies() throws SQLException {
+        TablePlanner.DEBUG_MODE = false;
+        lessThan = true;
+        String[] policies = new String[]{"lru", "clock", "lru-k", "2q"};
+        StringBuilder out = new StringBuilder("\n\n");
+        for (String policy : policies) {
+            SimpleDB.BUFFER_POLICY = policy;
+            long time = joinTableTest(1000);
+            long total = hits + misses;
+            double ratio = (total == 0) ? 0.0 : (double) hits / total;
+            out.append(policy + " time taken: " + time + "\n");
+            out.append(policy + " hits: " + hits + "\n");
+            out.append(policy + " misses (disk reads): " + misses + "\n");
+            out.append(policy + " hit ratio: " + ratio + "\n\n");
+        }
+        SimpleDB.BUFFER_POLICY = "clock";
+        lessThan = false;
+        System.out.print(out);
+    }
+
     /* Tests if the correct join algorithm is chosen */
     public static void testSelection() throws SQLException {
         TablePlanner.DEBUG_MODE = false;
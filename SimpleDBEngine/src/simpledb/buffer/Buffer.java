@@ -1,36 +1,81 @@
 package simpledb.buffer;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
 /**
- * An individual buffer. A databuffer wraps a page 
+ * An individual buffer. A databuffer wraps a page
  * and stores information about its status,
  * such as the associated disk block,
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * <P>
+ * The pin count is atomic, so that pinning and unpinning
+ * need no latch.
+ * The buffer's own monitor serializes reading and writing
+ * its page; a thread that pins a block while it is still being
+ * read from disk, or written by the buffer manager, waits
+ * for the I/O to finish.
+ * A buffer adds itself to the {@link DirtyPageTable}
+ * when it is first modified, and removes itself when it is written.
+ * <P>
+ * When the file manager can show a block in place,
+ * as mapped storage can, the buffer reads the block through
+ * a read-only view instead of copying it into its own page.
+ * The block is copied only when it is about to be modified,
+ * by {@link #contentsForUpdate()}.
  * @author Edward Sciore
  */
 public class Buffer {
    private FileMgr fm;
    private LogMgr lm;
-   private Page contents;
-   private BlockId blk = null;
-   private int pins = 0;
+   private Page frame;
+   private volatile Page contents;
+   private volatile BlockId blk = null;
+   private AtomicInteger pins = new AtomicInteger(0);
    private int txnum = -1;
-   private int lsn = -1;
+   private long lsn = -1;
+   private long modcount = 0;
+   private boolean busy = false;
+   private volatile BufferRing ring = null;
+   private DirtyPageTable dirty;
 
-   public Buffer(FileMgr fm, LogMgr lm) {
+   Buffer(FileMgr fm, LogMgr lm, Page contents, DirtyPageTable dirty) {
       this.fm = fm;
       this.lm = lm;
-      contents = new Page(fm.blockSize());
+      this.frame = contents;
+      this.contents = contents;
+      this.dirty = dirty;
    }
-   
+
+   /**
+    * Returns the page that holds the contents of the block.
+    * The page may be a read-only view of the block;
+    * a caller that modifies the page must get it
+    * from {@link #contentsForUpdate()} instead.
+    * @return the contents of the block
+    */
    public Page contents() {
       return contents;
    }
 
+   /**
+    * Returns the buffer's own page, holding the contents
+    * of the block, so that the caller can modify it.
+    * If the block was being read through a view,
+    * it is first copied into the page.
+    * @return the modifiable contents of the block
+    */
+   public synchronized Page contentsForUpdate() {
+      if (contents != frame) {
+         fm.read(blk, frame);
+         contents = frame;
+      }
+      return frame;
+   }
+
    /**
     * Returns a reference to the disk block
     * allocated to the buffer.
@@ -40,10 +85,13 @@ public class Buffer {
       return blk;
    }
 
-   public void setModified(int txnum, int lsn) {
+   public synchronized void setModified(int txnum, long lsn) {
+      if (this.txnum < 0)
+         dirty.add(this, lsn);
       this.txnum = txnum;
       if (lsn >= 0)
          this.lsn = lsn;
+      modcount++;
    }
 
    /**
@@ -52,49 +100,209 @@ public class Buffer {
     * @return true if the buffer is pinned
     */
    public boolean isPinned() {
-      return pins > 0;
+      return pins.get() > 0;
    }
-   
-   public int modifyingTx() {
+
+   public synchronized int modifyingTx() {
       return txnum;
    }
 
+   synchronized boolean isModified() {
+      return txnum >= 0;
+   }
+
+   /**
+    * Returns the number of times the page has been modified,
+    * or -1 if the buffer is clean.
+    * A caller that writes the page without the buffer's monitor
+    * passes the count to {@link #written(long)} afterwards.
+    * @return the modification count, or -1
+    */
+   synchronized long modifications() {
+      return (txnum < 0) ? -1 : modcount;
+   }
+
+   /**
+    * Returns the LSN of the latest logged modification of the page.
+    * @return the LSN of the latest modification
+    */
+   synchronized long lsn() {
+      return lsn;
+   }
+
    /**
-    * Reads the contents of the specified block into
-    * the contents of the buffer.
-    * If the buffer was dirty, then its previous contents
-    * are first written to disk.
+    * Marks the buffer clean after its page has been written,
+    * unless it was modified again after the caller
+    * read the modification count.
+    * @param modcount the modification count that was written
+    * @return true if the buffer is now clean
+    */
+   synchronized boolean written(long modcount) {
+      if (txnum < 0 || this.modcount != modcount)
+         return false;
+      txnum = -1;
+      dirty.remove(this);
+      return true;
+   }
+
+   int pinCount() {
+      return pins.get();
+   }
+
+   /**
+    * Assigns the buffer to the specified block,
+    * without yet reading the block's contents.
+    * Until {@link #load()} is called, a thread that pins the
+    * buffer will wait in {@link #waitUntilLoaded()}.
+    * The buffer must be clean and its previous block must
+    * no longer be in the page table.
     * @param b a reference to the data block
     */
-   void assignToBlock(BlockId b) {
-      flush();
+   synchronized void assignToBlock(BlockId b) {
       blk = b;
-      fm.read(blk, contents);
-      pins = 0;
+      contents = frame;
+      busy = true;
    }
-   
+
    /**
-    * Write the buffer to its disk block if it is dirty.
+    * Reads the contents of the assigned block into the buffer,
+    * or shows them through a view if the file manager can,
+    * and wakes any threads waiting for it.
     */
-   void flush() {
-      if (txnum >= 0) {
-         lm.flush(lsn);
-         fm.write(blk, contents);
-         txnum = -1;
+   synchronized void load() {
+      try {
+         Page view = fm.view(blk);
+         if (view != null)
+            contents = view;
+         else
+            fm.read(blk, frame);
       }
+      finally {
+         finishLoad();
+      }
+   }
+
+   /**
+    * Wakes the threads waiting for the buffer's block to be read,
+    * after the caller has read it into the page itself.
+    */
+   synchronized void finishLoad() {
+      busy = false;
+      notifyAll();
+   }
+
+   /**
+    * Marks the buffer as being written, so that a thread
+    * that pins it waits until {@link #finishFlush()} is done.
+    * If the buffer is already being read or written,
+    * the method first waits for that to finish.
+    * No thread may modify the buffer while it is being written:
+    * either the caller holds the only pin on the buffer,
+    * and took it under its partition latch,
+    * or the buffer's modifying transaction holds
+    * the locks on its block and is not using it.
+    */
+   synchronized void beginFlush() {
+      waitUntilLoaded();
+      busy = true;
+   }
+
+   /**
+    * Writes the buffer if it is dirty, and wakes any threads
+    * that pinned it after {@link #beginFlush()}.
+    * @return true if the buffer was written
+    */
+   synchronized boolean finishFlush() {
+      try {
+         return flush();
+      }
+      finally {
+         endFlush();
+      }
+   }
+
+   /**
+    * Wakes any threads that pinned the buffer after
+    * {@link #beginFlush()}, once the caller has written
+    * the page itself.
+    */
+   synchronized void endFlush() {
+      busy = false;
+      notifyAll();
+   }
+
+   /**
+    * Waits until the contents of the buffer's block
+    * have been read, and until any write of the buffer
+    * in progress has finished.
+    */
+   synchronized void waitUntilLoaded() {
+      try {
+         while (busy)
+            wait();
+      }
+      catch (InterruptedException e) {
+         throw new BufferAbortException();
+      }
+   }
+
+   /**
+    * Disassociates the buffer from its block,
+    * so that it can go back on the free list.
+    */
+   synchronized void reset() {
+      blk = null;
+      contents = frame;
+   }
+
+   /**
+    * Write the buffer to its disk block if it is dirty.
+    * @return true if the buffer was written
+    */
+   synchronized boolean flush() {
+      if (txnum < 0)
+         return false;
+      lm.flush(lsn);
+      fm.write(blk, contents);
+      txnum = -1;
+      dirty.remove(this);
+      return true;
+   }
+
+   /**
+    * Returns the ring that owns this buffer,
+    * or null if the buffer belongs to the shared pool.
+    */
+   BufferRing ring() {
+      return ring;
+   }
+
+   void setRing(BufferRing ring) {
+      this.ring = ring;
+   }
+
+   /**
+    * Pins an unpinned buffer, so that it can be
+    * assigned to a new block.
+    * @return false if the buffer is already pinned
+    */
+   boolean claim() {
+      return pins.compareAndSet(0, 1);
    }
 
    /**
     * Increase the buffer's pin count.
+    * @return the new pin count
     */
-   void pin() {
-      pins++;
+   int pin() {
+      return pins.incrementAndGet();
    }
 
    /**
     * Decrease the buffer's pin count.
+    * @return the new pin count
     */
-   void unpin() {
-      pins--;
+   int unpin() {
+      return pins.decrementAndGet();
    }
-}
\ No newline at end of file
+}
@@ -1,135 +1,1299 @@
 package simpledb.buffer;
 
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The manager keeps a page table that maps each resident block
+ * to its buffer, and a list of buffers that have never been assigned.
+ * When neither has a buffer for the block being pinned,
+ * a {@link ReplacementPolicy} chooses the unpinned buffer to replace.
+ * A block can also be pinned through a {@link BufferRing},
+ * in which case the ring's own buffers are reused first.
+ * <P>
+ * The manager has no global latch.
+ * The page table is split into partitions by the hash of the block id,
+ * each a {@link BlockMap} with its own latch, and pin counts are atomic,
+ * so pins of resident blocks in different partitions do not contend.
+ * Choosing a buffer to replace is serialized by a separate latch.
+ * A replaced buffer is written and read outside of every latch;
+ * a thread that pins the block meanwhile waits on the buffer itself.
+ * A thread that finds every buffer pinned parks until
+ * a buffer is unpinned, and each unpin wakes just one such thread.
+ * <P>
+ * Modified buffers are kept in a {@link DirtyPageTable}.
+ * An optional {@link BufferWriter} thread uses it to write
+ * unpinned dirty buffers ahead of their replacement,
+ * and commits and checkpoints use it to write only dirty buffers,
+ * each run of adjacent dirty blocks with a single gathering write.
+ * The pages of the buffers are slices of a few large off-heap slabs,
+ * allocated by a {@link SlabArena}.
+ * <P>
+ * The pool can be resized while it is in use.
+ * A buffer that leaves the pool is kept claimed,
+ * so that no policy or ring will hand it out,
+ * and it is the first to be reused when the pool grows again.
+ * An optional {@link PoolSizeAdvisor} estimates the hit ratio
+ * that the pool would have at other sizes.
+ * <P>
+ * The ids of the resident blocks can be dumped to a file,
+ * at shutdown and at checkpoints, and read back in at startup
+ * by a background thread, so that the pool does not start cold.
+ * <P>
+ * An operator that needs several buffers for as long as it runs
+ * can first reserve that many frames as a {@link BufferReservation}.
+ * The reservations together never exceed the size of the pool,
+ * so operators that run at the same time cannot all plan
+ * on the same unpinned buffers. A pin that takes a frame is
+ * charged to a reservation of the pinning transaction, if it has
+ * a frame to spare; any other pin that takes a frame must leave
+ * unpinned as many frames as the reservations have not used,
+ * or else wait. The check is made as the frame is taken,
+ * without a latch, so pins made at the same moment
+ * can take a frame or two too many between them.
+ * <P>
+ * A scan that reads a file in order can get a {@link ReadAhead},
+ * which reads the blocks ahead of the scan into unpinned buffers,
+ * each run of blocks with a single large read.
+ * An optional {@link Prefetcher} thread does those reads,
+ * so that the scan does not wait for them.
  * @author Edward Sciore
  *
  */
 public class BufferMgr {
-   private Buffer[] bufferpool;
-   private int numAvailable;
+   private static final int NUM_PARTITIONS = 32;
+   private FileMgr fm;
+   private LogMgr lm;
+   private volatile int numbuffs;
+   private Deque<Buffer> retired = new ArrayDeque<>();
+   private List<BlockMap<Buffer>> partitions = new ArrayList<>();
+   private Object victimLatch = new Object();
+   private Deque<Buffer> freelist = new ArrayDeque<>();
+   private ReplacementPolicy policy;
+   private Set<BufferRing> rings = new HashSet<>();
+   private int[] ringreuses = new int[BufferRing.NAMES.length];
+   private int[] ringallocs = new int[BufferRing.NAMES.length];
+   private AtomicInteger numAvailable;
+   private Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+   private AtomicInteger reserved = new AtomicInteger(0);
+   private AtomicInteger reservedInUse = new AtomicInteger(0); // frames charged to reservations
+   private Queue<Thread> reservers = new ConcurrentLinkedQueue<>();
+   private DirtyPageTable dirty = new DirtyPageTable();
+   private BufferWriter writer;
+   private volatile Prefetcher prefetcher;
+   private volatile int readahead = 0;
+   private SlabArena arena;
+   private volatile PoolSizeAdvisor advisor;
+   private File dumpfile;
+   private volatile boolean prewarming = false;
+   private volatile boolean prewarmStopped = false;
+   private Thread prewarmer;
+   private static final int MAX_PREWARM_RUN = 64;
+   private static final int MAX_WRITE_RUN = 64;
    private static final long MAX_TIME = 10000; // 10 seconds
 
-   public static int hits;
-   public static int misses;
-   
+   private BufferStats stats = new BufferStats();
+
    /**
-    * Creates a buffer manager having the specified number 
+    * Creates a buffer manager having the specified number
     * of buffer slots.
     * This constructor depends on a {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} object.
+    * Buffers are replaced by the clock policy,
+    * which is the only policy that records a pin without a latch.
     * @param numbuffs the number of buffer slots to allocate
     */
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
-      bufferpool = new Buffer[numbuffs];
-      numAvailable = numbuffs;
-      for (int i=0; i<numbuffs; i++)
-         bufferpool[i] = new Buffer(fm, lm);
+      this(fm, lm, numbuffs, new ClockPolicy(numbuffs));
    }
-   
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots, which are replaced according to
+    * the specified policy.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param policy the replacement policy
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, ReplacementPolicy policy) {
+      this.fm = fm;
+      this.lm = lm;
+      this.policy = policy;
+      this.numbuffs = numbuffs;
+      int partsize = Math.max(16, 2 * numbuffs / NUM_PARTITIONS);
+      for (int i=0; i<NUM_PARTITIONS; i++)
+         partitions.add(new BlockMap<>(partsize));
+      numAvailable = new AtomicInteger(numbuffs);
+      arena = new SlabArena(fm.blockSize(), fm.alignment());
+      List<Page> pages = arena.allocate(numbuffs);
+      for (Page p : pages)
+         freelist.add(new Buffer(fm, lm, p, dirty));
+   }
+
    /**
     * Returns the number of available (i.e. unpinned) buffers.
     * @return the number of available buffers
     */
-   public synchronized int available() {
-      return numAvailable;
+   public int available() {
+      return numAvailable.get();
+   }
+
+   /**
+    * Returns the number of frames that can be reserved now
+    * without waiting: the unpinned buffers that
+    * are not already promised to another reservation.
+    * @return the number of reservable frames
+    */
+   public int reservable() {
+      return Math.max(0, Math.min(available(), numbuffs - reserved.get()));
+   }
+
+   /**
+    * Reserves the specified number of frames, at least one,
+    * waiting until the other reservations leave room for them.
+    * If there is no room within a fixed time period,
+    * then a {@link BufferAbortException} is thrown.
+    * @param numframes the number of frames to reserve
+    * @return the reservation
+    */
+   public BufferReservation reserve(int numframes) {
+      if (numframes < 1 || numframes > numbuffs)
+         throw new IllegalArgumentException("cannot reserve " + numframes
+               + " of " + numbuffs + " buffers");
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_TIME);
+      Thread me = Thread.currentThread();
+      try {
+         while (true) {
+            reservers.add(me);
+            int r = reserved.get();
+            if (r + numframes <= numbuffs) {
+               if (reserved.compareAndSet(r, r + numframes))
+                  return new BufferReservation(numframes);
+               reservers.remove(me);
+               continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+               throw new BufferAbortException();
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted())
+               throw new BufferAbortException();
+            reservers.remove(me);
+         }
+      }
+      finally {
+         reservers.remove(me);
+      }
+   }
+
+   /**
+    * Returns the frames of the specified reservation,
+    * and wakes every thread waiting to reserve,
+    * and as many threads waiting to pin as it had frames.
+    * The buffers still pinned through the reservation
+    * are no longer charged to it.
+    * Releasing a reservation twice has no effect.
+    * @param r the reservation to release
+    */
+   public void release(BufferReservation r) {
+      int inuse = r.release();
+      if (inuse >= 0) {
+         reservedInUse.addAndGet(-inuse);
+         reserved.addAndGet(-r.size());
+         wakeReservers();
+         for (int i=0; i<r.size(); i++)
+            wakeWaiter();
+      }
    }
-   
+
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
+    * Returns the number of frames currently reserved.
+    * @return the number of reserved frames
+    */
+   public int reserved() {
+      return reserved.get();
+   }
+
+   /**
+    * Returns the number of buffers in the pool.
+    * @return the size of the pool
+    */
+   public int size() {
+      return numbuffs;
+   }
+
+   /**
+    * Returns the replacement policy, which also keeps
+    * the hit ratio of the pool.
+    * @return the replacement policy
+    */
+   public ReplacementPolicy policy() {
+      return policy;
+   }
+
+   /**
+    * Creates a ring of buffers for the specified kind of access.
+    * A bulk read ring gets one buffer for every 16 in the pool,
+    * and a bulk write ring one for every 8,
+    * but never fewer than 2 or more than 32.
+    * The ring holds no buffers until blocks are pinned through it.
+    * @param kind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    * @return the new ring
+    */
+   public BufferRing newRing(int kind) {
+      int fraction = (kind == BufferRing.BULKREAD) ? 16 : 8;
+      int size = Math.min(32, Math.max(2, numbuffs / fraction));
+      return new BufferRing(kind, size);
+   }
+
+   /**
+    * Returns the buffers of the specified ring to the shared pool.
+    * The ring is empty afterwards, but can still be used.
+    * @param ring the ring to release
+    */
+   public void releaseRing(BufferRing ring) {
+      synchronized (victimLatch) {
+         for (Buffer buff : ring.clear())
+            detach(buff);
+         rings.remove(ring);
+      }
+   }
+
+   /**
+    * Returns the number of times a buffer of a ring of the
+    * specified kind was reused, instead of a buffer being
+    * taken from the shared pool.
+    * @param kind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    * @return the number of reuses
+    */
+   public int ringReuses(int kind) {
+      synchronized (victimLatch) {
+         return ringreuses[kind];
+      }
+   }
+
+   /**
+    * Returns the number of buffers that rings of the
+    * specified kind have taken from the shared pool.
+    * @param kind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    * @return the number of buffers taken
+    */
+   public int ringAllocations(int kind) {
+      synchronized (victimLatch) {
+         return ringallocs[kind];
+      }
+   }
+
+   /**
+    * Flushes the dirty buffers modified by the specified transaction,
+    * and forces the data files to the disk.
+    * The transaction's blocks may also have been written earlier,
+    * by a replacement or by the writer, so the files are forced
+    * even if none of its buffers were still dirty.
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
+   public void flushAll(int txnum) {
+      List<Buffer> buffs = new ArrayList<>();
+      for (Buffer buff : dirty.buffers())
          if (buff.modifyingTx() == txnum)
-         buff.flush();
+            buffs.add(buff);
+      flush(buffs, txnum);
+      fm.forceAll();
+   }
+
+   /**
+    * Flushes every dirty buffer that no transaction has pinned,
+    * and forces the data files to the disk, as a checkpoint requires.
+    * A pinned buffer may be in the middle of a modification,
+    * so it is left to be written when it is unpinned
+    * or when its transaction commits.
+    */
+   public void flushAll() {
+      flush(new ArrayList<>(dirty.buffers()), -1);
+      fm.forceAll();
+   }
+
+   /**
+    * Returns a copy of the dirty-page table: the block of each
+    * dirty buffer, with the LSN of the log record that first
+    * made its page dirty, or -1 if that change was not logged.
+    * The table is read without stopping the transactions,
+    * so it is only as exact as a fuzzy checkpoint needs.
+    * @return the dirty blocks and their LSNs
+    */
+   public Map<BlockId,Long> dirtyPages() {
+      Map<BlockId,Long> result = new HashMap<>();
+      for (Map.Entry<Buffer,Long> e : dirty.entries()) {
+         BlockId blk = e.getKey().block();
+         if (blk != null)
+            result.put(blk, e.getValue());
+      }
+      return result;
+   }
+
+   /**
+    * Flushes the buffers of the specified blocks that are
+    * still dirty, and forces the data files to the disk.
+    * This is the flush that follows a fuzzy checkpoint,
+    * of the pages that were dirty when it was written.
+    * A buffer that is pinned is skipped, since a live transaction
+    * may be modifying it; it is written when the transaction
+    * commits, or later by the writer.
+    * @param blks the blocks to flush
+    */
+   public void flushBlocks(Collection<BlockId> blks) {
+      List<Buffer> buffs = new ArrayList<>();
+      for (BlockId blk : blks) {
+         BlockMap<Buffer> part = partition(blk);
+         synchronized (part) {
+            Buffer buff = part.get(blk);
+            if (buff != null)
+               buffs.add(buff);
+         }
+      }
+      flush(buffs, -1);
+      fm.forceAll();
+   }
+
+   /**
+    * Writes the specified buffers, if they are still dirty.
+    * Each buffer is claimed for the write, so that it cannot
+    * be replaced, written by another thread, or modified
+    * until its page has been written; a buffer that cannot be
+    * claimed is skipped.
+    * The buffers are sorted by file and block number, so that
+    * each run of adjacent blocks is written
+    * with a single gathering write.
+    * @param buffs the buffers to write
+    * @param txnum the transaction whose pinned buffers may be written,
+    *              or -1 to write only unpinned buffers
+    */
+   private void flush(List<Buffer> buffs, int txnum) {
+      List<Buffer> claimed = new ArrayList<>(buffs.size());
+      Map<Buffer,Long> modcounts = new HashMap<>();
+      try {
+         for (Buffer buff : buffs) {
+            if (!claimForFlush(buff, txnum))
+               continue;
+            claimed.add(buff);
+            long modcount = buff.modifications();
+            if (modcount >= 0)
+               modcounts.put(buff, modcount);
+         }
+         List<Buffer> sorted = new ArrayList<>(modcounts.keySet());
+         sorted.sort(Comparator.comparing((Buffer b) -> b.block().fileName())
+                               .thenComparingInt(b -> b.block().number()));
+         List<Buffer> run = new ArrayList<>();
+         for (Buffer buff : sorted) {
+            if (!run.isEmpty() && (run.size() == MAX_WRITE_RUN
+                  || !follows(run.get(run.size()-1).block(), buff.block()))) {
+               writeRun(run, modcounts);
+               run.clear();
+            }
+            run.add(buff);
+         }
+         writeRun(run, modcounts);
+      }
+      finally {
+         for (Buffer buff : claimed) {
+            buff.endFlush();
+            unpin(buff);
+         }
+      }
+   }
+
+   /**
+    * Claims the buffer for a write, if it is still assigned
+    * to its block, in the way {@link #clean(Buffer)} does:
+    * an unpinned buffer is claimed with the only pin.
+    * A pinned buffer is claimed only if it was last modified
+    * by the specified transaction, which is committing or
+    * rolling back; the transaction's lock on the block keeps
+    * other transactions from modifying it meanwhile.
+    * A thread that pins the buffer while it is claimed
+    * waits until the write is done.
+    * @return true if the buffer was claimed
+    */
+   private boolean claimForFlush(Buffer buff, int txnum) {
+      BlockId blk = buff.block();
+      if (blk == null)
+         return false;
+      BlockMap<Buffer> part = partition(blk);
+      synchronized (part) {
+         if (part.get(blk) != buff)
+            return false;
+         if (claim(buff)) {
+            buff.beginFlush();
+            return true;
+         }
+         if (txnum < 0 || buff.modifyingTx() != txnum)
+            return false;
+         if (buff.pin() == 1)
+            numAvailable.decrementAndGet();
+      }
+      // the buffer may be being written by a replacement
+      buff.beginFlush();
+      return true;
+   }
+
+   /**
+    * Writes the pages of the claimed buffers, whose blocks
+    * are consecutive, once the log has been flushed
+    * past their modifications.
+    * Each page and its LSN are read under the buffer's monitor.
+    */
+   private void writeRun(List<Buffer> run, Map<Buffer,Long> modcounts) {
+      if (run.isEmpty())
+         return;
+      Page[] pages = new Page[run.size()];
+      long lsn = -1;
+      for (int i=0; i<pages.length; i++) {
+         Buffer buff = run.get(i);
+         synchronized (buff) {
+            pages[i] = buff.contents();
+            lsn = Math.max(lsn, buff.lsn());
+         }
+      }
+      lm.flush(lsn);
+      fm.write(run.get(0).block(), pages);
+      for (Buffer buff : run)
+         if (buff.written(modcounts.get(buff)))
+            stats.file(buff.block().fileName()).flushed();
+   }
+
+   /**
+    * Returns the statistics of the pool.
+    * @return the statistics of the pool
+    */
+   public BufferStats stats() {
+      return stats;
+   }
+
+   /**
+    * Returns the number of buffers that have been modified
+    * but not yet written.
+    * @return the number of dirty buffers
+    */
+   public int numDirty() {
+      return dirty.size();
+   }
+
+   /**
+    * Starts a background thread that writes unpinned
+    * dirty buffers every few milliseconds.
+    * @param delay the number of milliseconds between rounds
+    */
+   public synchronized void startWriter(long delay) {
+      if (writer != null)
+         return;
+      writer = new BufferWriter(this, delay);
+      Thread t = new Thread(writer, "buffer writer");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Stops the background writer, if it is running.
+    */
+   public void stopWriter() {
+      BufferWriter w;
+      synchronized (this) {
+         w = writer;
+         writer = null;
+      }
+      if (w != null)
+         w.stop();
+   }
+
+   /**
+    * Sets the number of blocks that a {@link ReadAhead}
+    * keeps in the pool ahead of its scan.
+    * Read-ahead is disabled if the number is 0.
+    * @param blocks the size of the read-ahead window
+    */
+   public void setReadAhead(int blocks) {
+      readahead = Math.max(0, blocks);
+   }
+
+   /**
+    * Creates a read-ahead for a scan of the specified file.
+    * A scan through a bulk read ring is taken to read the
+    * whole file, and is read ahead from its first block.
+    * @param filename the name of the file
+    * @param ring the ring the scan pins blocks through, or null
+    * @return the read-ahead
+    */
+   public ReadAhead newReadAhead(String filename, BufferRing ring) {
+      return new ReadAhead(this, filename, ring, readahead);
+   }
+
+   /**
+    * Starts a background thread that does the reads
+    * that read-aheads ask for.
+    * Without it, each scan does its own read-ahead.
+    */
+   public synchronized void startPrefetcher() {
+      if (prefetcher != null)
+         return;
+      prefetcher = new Prefetcher();
+      Thread t = new Thread(prefetcher, "buffer prefetcher");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Stops the background prefetcher, if it is running.
+    */
+   public void stopPrefetcher() {
+      Prefetcher p;
+      synchronized (this) {
+         p = prefetcher;
+         prefetcher = null;
+      }
+      if (p != null)
+         p.stop();
+   }
+
+   /**
+    * Passes the read-ahead's request to the prefetcher,
+    * or reads the blocks right away if there is none.
+    */
+   void submit(ReadAhead ra) {
+      Prefetcher p = prefetcher;
+      if (p == null || !p.submit(ra))
+         ra.read();
+   }
+
+   /**
+    * Reads up to count consecutive blocks of a file, starting
+    * at the specified block, into unpinned buffers, so that a scan
+    * that pins them soon afterwards finds them in the pool.
+    * Blocks already in the pool are skipped, and each run
+    * of the others is read with a single scattering read.
+    * The buffers are taken from the ring if there is one.
+    * Otherwise they are taken from the shared pool, but
+    * from no more than a quarter of its available buffers,
+    * so that the blocks read ahead do not push out
+    * the blocks still in use.
+    * Blocks past the end of the file are not read,
+    * and the method never waits for a buffer.
+    * @param first the first block to read
+    * @param count the number of blocks to read
+    * @param ring the ring to read the blocks into, or null
+    * @return the number of blocks read
+    */
+   public int prefetch(BlockId first, int count, BufferRing ring) {
+      String filename = first.fileName();
+      if (ring == null)
+         count = Math.min(count, numAvailable.get() / 4);
+      int end = Math.min(first.number() + count, fm.length(filename));
+      List<Buffer> run = new ArrayList<>();
+      int read = 0;
+      int n = first.number();
+      while (n < end) {
+         BlockId blk = new BlockId(filename, first.fileId(), n);
+         if (run.size() == MAX_PREWARM_RUN || isResident(blk)) {
+            read += readRun(run);
+            run.clear();
+            if (isResident(blk)) {
+               n++;
+               continue;
+            }
+         }
+         Buffer buff = chooseVictim(ring);
+         if (buff == null)
+            break;
+         if (!evict(buff))
+            continue;
+         if (install(buff, blk))
+            run.add(buff);
+         else {
+            giveBack(buff);
+            read += readRun(run);
+            run.clear();
+         }
+         n++;
+      }
+      read += readRun(run);
+      return read;
+   }
+
+   private boolean isResident(BlockId blk) {
+      BlockMap<Buffer> part = partition(blk);
+      synchronized (part) {
+         return part.containsKey(blk);
+      }
+   }
+
+   /**
+    * Changes the number of buffers in the pool,
+    * without waiting for pinned buffers to be unpinned.
+    * A larger pool first takes back the buffers that earlier
+    * shrinks removed, and then allocates a new slab.
+    * A smaller pool removes unpinned buffers, writing them
+    * if they are dirty; if too few buffers are unpinned,
+    * the pool shrinks as far as it can. The pool never shrinks
+    * below its pinned buffers and the reserved frames
+    * that are not pinned yet.
+    * @param newsize the requested number of buffers
+    * @return the number of buffers in the pool afterwards
+    */
+   public synchronized int resize(int newsize) {
+      if (newsize > numbuffs)
+         grow(newsize - numbuffs);
+      else if (newsize < numbuffs)
+         shrink(numbuffs - newsize);
+      return numbuffs;
+   }
+
+   private void grow(int count) {
+      List<Buffer> added = new ArrayList<>(count);
+      synchronized (victimLatch) {
+         while (added.size() < count && !retired.isEmpty())
+            added.add(retired.poll());
+      }
+      for (Page p : arena.allocate(count - added.size())) {
+         Buffer buff = new Buffer(fm, lm, p, dirty);
+         buff.claim();
+         added.add(buff);
+      }
+      policy.resize(numbuffs + count);
+      synchronized (victimLatch) {
+         for (Buffer buff : added) {
+            buff.unpin();
+            freelist.add(buff);
+         }
+      }
+      numbuffs += count;
+      numAvailable.addAndGet(count);
+      for (int i=0; i<count; i++)
+         wakeWaiter();
+      wakeReservers();
+   }
+
+   private void shrink(int count) {
+      int unused = Math.max(0, reserved.get() - reservedInUse.get());
+      count = Math.min(count, numAvailable.get() - unused);
+      int removed = 0;
+      while (removed < count) {
+         Buffer victim = chooseVictim(null);
+         if (victim == null)
+            break;
+         if (!evict(victim))
+            continue;
+         victim.reset();
+         synchronized (victimLatch) {
+            retired.add(victim);
+         }
+         removed++;
+      }
+      numbuffs -= removed;
+      policy.resize(numbuffs);
+   }
+
+   /**
+    * Starts estimating the hit ratio of other pool sizes,
+    * up to the specified size, from the pins made from now on.
+    * Each pin then also takes the advisor's latch.
+    * @param maxsize the largest pool size to estimate
+    */
+   public void startAdvisor(int maxsize) {
+      advisor = new PoolSizeAdvisor(maxsize);
+   }
+
+   /**
+    * Stops estimating the hit ratio of other pool sizes.
+    */
+   public void stopAdvisor() {
+      advisor = null;
+   }
+
+   /**
+    * Returns the advisor that estimates the hit ratio
+    * of other pool sizes, or null if it is not running.
+    * @return the pool size advisor
+    */
+   public PoolSizeAdvisor advisor() {
+      return advisor;
+   }
+
+   /**
+    * Sets the file that the ids of the resident blocks
+    * are dumped to and prewarmed from.
+    * @param dumpfile the dump file
+    */
+   public void setDumpFile(File dumpfile) {
+      this.dumpfile = dumpfile;
+   }
+
+   /**
+    * Writes the ids of the resident blocks to the dump file.
+    * Does nothing if there is no dump file, or while the pool
+    * is being prewarmed, since the pool is then still cold.
+    */
+   public void dumpResidentBlocks() {
+      if (dumpfile == null || prewarming)
+         return;
+      List<BlockId> blocks = new ArrayList<>();
+      for (BlockMap<Buffer> part : partitions)
+         synchronized (part) {
+            blocks.addAll(part.keys());
+         }
+      BufferPoolDump.write(dumpfile, blocks);
+   }
+
+   /**
+    * Reads the dump file, and starts a background thread
+    * that reads the listed blocks into free buffers.
+    * @return the thread, or null if there is nothing to prewarm
+    */
+   public Thread startPrewarm() {
+      if (dumpfile == null)
+         return null;
+      List<BlockId> blocks = BufferPoolDump.read(dumpfile);
+      if (blocks.isEmpty())
+         return null;
+      prewarming = true;
+      Thread t = new Thread(() -> {
+         try {
+            prewarm(blocks);
+         }
+         finally {
+            // a prewarm stopped early leaves the dump file as it was
+            if (!prewarmStopped)
+               prewarming = false;
+         }
+      }, "buffer prewarm");
+      t.setDaemon(true);
+      prewarmer = t;
+      t.start();
+      return t;
+   }
+
+   /**
+    * Stops the prewarm, if it is running, and waits until it has stopped.
+    */
+   public void stopPrewarm() {
+      Thread t = prewarmer;
+      if (t == null)
+         return;
+      prewarmStopped = true;
+      try {
+         t.join();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
    }
-   
-   
+
+   /**
+    * Reads the specified blocks into free buffers, sorted by file
+    * and block number, so that each run of consecutive blocks
+    * is read with a single large read.
+    * Stops when there are no free buffers left, or when the
+    * prewarm is stopped; blocks already
+    * in the pool, blocks of temporary tables (which are deleted
+    * at startup) and blocks past the end of their file are skipped.
+    * @param blocks the blocks to read
+    * @return the number of blocks read
+    */
+   int prewarm(List<BlockId> blocks) {
+      blocks.sort(Comparator.comparing(BlockId::fileName)
+                            .thenComparingInt(BlockId::number));
+      Map<String,Integer> lengths = new HashMap<>();
+      List<Buffer> run = new ArrayList<>();
+      int count = 0;
+      for (BlockId blk : blocks) {
+         if (prewarmStopped)
+            break;
+         String filename = blk.fileName();
+         if (filename.startsWith("temp")
+               || blk.number() >= lengths.computeIfAbsent(filename, fm::length))
+            continue;
+         if (!run.isEmpty() && (run.size() == MAX_PREWARM_RUN
+               || !follows(run.get(run.size()-1).block(), blk))) {
+            count += readRun(run);
+            run.clear();
+         }
+         Buffer buff = takeFreeBuffer();
+         if (buff == null)
+            break;
+         if (install(buff, blk))
+            run.add(buff);
+         else
+            giveBack(buff);
+      }
+      count += readRun(run);
+      return count;
+   }
+
+   private boolean follows(BlockId prev, BlockId blk) {
+      return prev.fileName().equals(blk.fileName())
+            && prev.number() + 1 == blk.number();
+   }
+
+   private Buffer takeFreeBuffer() {
+      synchronized (victimLatch) {
+         Buffer buff = freelist.poll();
+         if (buff != null)
+            claim(buff);
+         return buff;
+      }
+   }
+
+   /**
+    * Assigns the claimed buffer to the block, unless the block
+    * is already in the pool.
+    */
+   private boolean install(Buffer buff, BlockId blk) {
+      BlockMap<Buffer> part = partition(blk);
+      synchronized (part) {
+         if (part.containsKey(blk))
+            return false;
+         buff.assignToBlock(blk);
+         part.put(blk, buff);
+         return true;
+      }
+   }
+
+   /**
+    * Reads the blocks of the run, which are consecutive,
+    * and unpins their buffers.
+    */
+   private int readRun(List<Buffer> run) {
+      if (run.isEmpty())
+         return 0;
+      Page[] pages = new Page[run.size()];
+      for (int i=0; i<pages.length; i++)
+         pages[i] = run.get(i).contents();
+      try {
+         fm.read(run.get(0).block(), pages);
+      }
+      finally {
+         for (Buffer buff : run) {
+            buff.finishLoad();
+            policy.pinned(buff, false);
+            unpin(buff);
+         }
+      }
+      return run.size();
+   }
+
+   /**
+    * Writes each dirty buffer that is unpinned.
+    * Called by the background writer.
+    * @return the number of buffers written
+    */
+   int cleanDirtyBuffers() {
+      int count = 0;
+      for (Buffer buff : dirty.buffers())
+         if (!buff.isPinned() && clean(buff))
+            count++;
+      return count;
+   }
+
+   /**
+    * Writes the specified buffer if it is unpinned and still
+    * assigned to its block. The buffer is claimed while it is
+    * written, so that it cannot be replaced, and a thread that
+    * pins it meanwhile waits for the write to finish.
+    * @return true if the buffer was written
+    */
+   private boolean clean(Buffer buff) {
+      BlockId blk = buff.block();
+      if (blk == null)
+         return false;
+      BlockMap<Buffer> part = partition(blk);
+      synchronized (part) {
+         if (part.get(blk) != buff || !claim(buff))
+            return false;
+         buff.beginFlush();
+      }
+      try {
+         if (buff.finishFlush())
+            stats.file(blk.fileName()).flushed();
+      }
+      finally {
+         unpin(buff);
+      }
+      return true;
+   }
+
+
    /**
     * Unpins the specified data buffer. If its pin count
-    * goes to zero, then notify any waiting threads.
+    * goes to zero, then wake a waiting thread.
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
+   public void unpin(Buffer buff) {
+      if (buff.unpin() == 0) {
+         numAvailable.incrementAndGet();
+         if (buff.ring() == null)
+            policy.unpinned(buff);
+         wakeWaiter();
       }
    }
-   
+
+   /**
+    * Unpins the specified data buffer, whose frame
+    * may be charged to the specified reservation.
+    * The frame is no longer charged to it.
+    * @param buff the buffer to be unpinned
+    * @param r the reservation, or null
+    */
+   public void unpin(Buffer buff, BufferReservation r) {
+      if (r != null && r.uncharge(buff))
+         reservedInUse.decrementAndGet();
+      unpin(buff);
+   }
+
    /**
     * Pins a buffer to the specified block, potentially
     * waiting until a buffer becomes available.
-    * If no buffer becomes available within a fixed 
+    * If no buffer becomes available within a fixed
     * time period, then a {@link BufferAbortException} is thrown.
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
+   public Buffer pin(BlockId blk) {
+      return pin(blk, null);
+   }
+
+   /**
+    * Pins a buffer to the specified block, using the specified
+    * ring if the block is not already in the pool.
+    * A thread that has to wait registers itself before trying again,
+    * so that an unpin in between cannot be missed.
+    * @param blk a reference to a disk block
+    * @param ring the ring to use, or null to use the shared pool
+    * @return the buffer pinned to that block
+    */
+   public Buffer pin(BlockId blk, BufferRing ring) {
+      return pin(blk, ring, null);
+   }
+
+   /**
+    * Pins a buffer to the specified block, as above;
+    * if the pin takes an unpinned frame, it is charged to the
+    * specified reservation while the reservation has a frame to spare,
+    * until the buffer is unpinned through the reservation.
+    * @param blk a reference to a disk block
+    * @param ring the ring to use, or null to use the shared pool
+    * @param r the reservation of the pinning transaction, or null
+    * @return the buffer pinned to that block
+    */
+   public Buffer pin(BlockId blk, BufferRing ring, BufferReservation r) {
+      long start = System.nanoTime();
+      FileStats fs = stats.file(blk.fileName());
       try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
-         }
-         if (buff == null)
-            throw new BufferAbortException();
+         return waitToPin(blk, ring, r, fs);
+      }
+      finally {
+         fs.pinWait(System.nanoTime() - start);
+      }
+   }
+
+   private Buffer waitToPin(BlockId blk, BufferRing ring, BufferReservation r, FileStats fs) {
+      PoolSizeAdvisor a = advisor;
+      if (a != null)
+         a.pinned(blk);
+      Buffer buff = tryToPin(blk, ring, r, fs);
+      if (buff != null)
          return buff;
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_TIME);
+      Thread me = Thread.currentThread();
+      try {
+         while (true) {
+            waiters.add(me);
+            buff = tryToPin(blk, ring, r, fs);
+            if (buff != null)
+               return buff;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+               // pass on any wake-up that was meant for this thread
+               waiters.remove(me);
+               wakeWaiter();
+               throw new BufferAbortException();
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted())
+               throw new BufferAbortException();
+            waiters.remove(me);
+         }
       }
-      catch(InterruptedException e) {
-         throw new BufferAbortException();
+      finally {
+         waiters.remove(me);
       }
-   }  
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
    }
-   
+
+   private void wakeWaiter() {
+      Thread t = waiters.poll();
+      if (t != null)
+         LockSupport.unpark(t);
+   }
+
+   private void wakeReservers() {
+      Thread t;
+      while ((t = reservers.poll()) != null)
+         LockSupport.unpark(t);
+   }
+
    /**
-    * Tries to pin a buffer to the specified block. 
+    * Tries to pin a buffer to the specified block.
     * If there is already a buffer assigned to that block
-    * then that buffer is used;  
-    * otherwise, an unpinned buffer from the pool is chosen.
-    * Returns a null value if there are no available buffers.
+    * then that buffer is used;
+    * otherwise, an unpinned buffer from the ring or the pool is chosen.
+    * Returns a null value if there are no available buffers,
+    * or if the pin may not take an unpinned frame
+    * and the block's buffer is not pinned already.
     * @param blk a reference to a disk block
+    * @param ring the ring to use, or null
+    * @param r the reservation to charge, or null
+    * @param fs the statistics of the block's file
     * @return the pinned buffer
     */
-   private Buffer tryToPin(BlockId blk) {
-      Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
-         if (buff == null)
+   private Buffer tryToPin(BlockId blk, BufferRing ring, BufferReservation r, FileStats fs) {
+      while (true) {
+         boolean maytake = mayTakeFrame(r);
+         Buffer buff = pinIfResident(blk, maytake, r, fs);
+         if (buff != null)
+            return buff;
+         if (!maytake)
             return null;
-         buff.assignToBlock(blk);
+         Buffer victim = chooseVictim(ring);
+         if (victim == null)
+            return null;
+         if (evict(victim))
+            return assign(victim, blk, r, fs);
       }
-      if (!buff.isPinned())
-         numAvailable--;
-      buff.pin();
+   }
+
+   /**
+    * Returns true if a pin may take an unpinned frame.
+    * A pin that can be charged to a reservation may;
+    * any other pin may only if it leaves unpinned
+    * the frames that the reservations have not used.
+    */
+   private boolean mayTakeFrame(BufferReservation r) {
+      if (r != null && r.unused() > 0)
+         return true;
+      int unused = reserved.get() - reservedInUse.get();
+      return unused <= 0 || numAvailable.get() > unused;
+   }
+
+   /**
+    * Charges the frame that a pin has taken
+    * to the reservation, if it has a frame to spare.
+    */
+   private void charge(BufferReservation r, Buffer buff) {
+      if (r != null && r.charge(buff))
+         reservedInUse.incrementAndGet();
+   }
+
+   /**
+    * Pins the buffer assigned to the specified block, if any,
+    * and waits until the block has been read into it.
+    * If the buffer is unpinned and the pin may not take
+    * its frame, the buffer is not pinned.
+    */
+   private Buffer pinIfResident(BlockId blk, boolean maytake, BufferReservation r, FileStats fs) {
+      BlockMap<Buffer> part = partition(blk);
+      Buffer buff;
+      synchronized (part) {
+         buff = part.get(blk);
+         if (buff == null || (!maytake && !buff.isPinned()))
+            return null;
+         if (buff.pin() == 1) {
+            numAvailable.decrementAndGet();
+            charge(r, buff);
+         }
+      }
+      fs.hit();
+      policy.pinned(buff, true);
+      buff.waitUntilLoaded();
       return buff;
    }
-   
-   private Buffer findExistingBuffer(BlockId blk) {
-      for (Buffer buff : bufferpool) {
-         BlockId b = buff.block();
-         if (b != null && b.equals(blk)) {
-            hits++;
+
+   /**
+    * Removes the victim's current block from the page table,
+    * after writing it to disk if it was modified.
+    * A thread that pins the block during the write
+    * waits for the write to finish.
+    * The removal is abandoned if another thread pinned
+    * or modified the buffer in the meantime.
+    * @return true if the victim is free to be reassigned
+    */
+   private boolean evict(Buffer victim) {
+      BlockId old = victim.block();
+      if (old == null)
+         return true;
+      BlockMap<Buffer> part = partition(old);
+      boolean writing;
+      synchronized (part) {
+         if (removeIfClean(part, old, victim))
+            return true;
+         writing = (victim.pinCount() == 1);
+         if (writing)
+            victim.beginFlush();
+      }
+      if (writing) {
+         if (victim.finishFlush())
+            stats.file(old.fileName()).flushed();
+         synchronized (part) {
+            if (removeIfClean(part, old, victim))
+               return true;
+         }
+      }
+      unpin(victim);
+      return false;
+   }
+
+   private boolean removeIfClean(BlockMap<Buffer> part, BlockId blk, Buffer victim) {
+      if (victim.pinCount() != 1 || victim.isModified())
+         return false;
+      part.remove(blk, victim);
+      stats.file(blk.fileName()).evicted();
+      return true;
+   }
+
+   /**
+    * Assigns the victim to the specified block and reads the block.
+    * If another thread read the block into a different buffer
+    * after this thread looked for it, that buffer is pinned instead
+    * and the victim is given back.
+    */
+   private Buffer assign(Buffer victim, BlockId blk, BufferReservation r, FileStats fs) {
+      BlockMap<Buffer> part = partition(blk);
+      Buffer existing;
+      synchronized (part) {
+         existing = part.get(blk);
+         if (existing == null) {
+            victim.assignToBlock(blk);
+            part.put(blk, victim);
+            charge(r, victim);
+         }
+         else if (existing.pin() == 1) {
+            numAvailable.decrementAndGet();
+            charge(r, existing);
+         }
+      }
+      if (existing != null) {
+         giveBack(victim);
+         fs.hit();
+         policy.pinned(existing, true);
+         existing.waitUntilLoaded();
+         return existing;
+      }
+      victim.load();
+      fs.miss();
+      policy.pinned(victim, false);
+      return victim;
+   }
+
+   /**
+    * Returns an unassigned victim to the free list,
+    * or leaves it in its ring.
+    */
+   private void giveBack(Buffer victim) {
+      victim.reset();
+      synchronized (victimLatch) {
+         victim.unpin();
+         if (victim.ring() == null)
+            freelist.add(victim);
+      }
+      numAvailable.incrementAndGet();
+      wakeWaiter();
+   }
+
+   /**
+    * Chooses and claims a buffer to replace:
+    * the buffer in the ring's next slot if it is unpinned,
+    * and otherwise a buffer from the shared pool,
+    * which is then put in that slot.
+    * A pinned buffer previously in the slot
+    * goes back to the shared pool when it is unpinned.
+    * Returns null if every buffer is pinned.
+    */
+   private Buffer chooseVictim(BufferRing ring) {
+      synchronized (victimLatch) {
+         if (ring == null)
+            return chooseUnpinnedBuffer();
+         Buffer buff = ring.next();
+         if (buff != null && claim(buff)) {
+            ringreuses[ring.kind()]++;
             return buff;
          }
+         buff = chooseUnpinnedBuffer();
+         if (buff == null)
+            return null;
+         Buffer old = ring.replace(buff);
+         if (old != null)
+            detach(old);
+         buff.setRing(ring);
+         rings.add(ring);
+         ringallocs[ring.kind()]++;
+         return buff;
       }
-      return null;
    }
-   
+
+   /**
+    * Returns a buffer that has never been assigned, if any;
+    * otherwise asks the replacement policy to choose one.
+    * As a last resort, an unpinned buffer is taken from a ring.
+    * The buffer is returned claimed, with a pin count of one.
+    * A buffer that the policy chooses may have been pinned since
+    * the policy last heard of it, or may belong to a ring;
+    * such a buffer is skipped, and the policy will hear
+    * of it again when it is unpinned or its ring is released.
+    * Returns null if every buffer is pinned.
+    */
    private Buffer chooseUnpinnedBuffer() {
-      misses++;
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
+      Buffer buff = freelist.poll();
+      if (buff != null && claim(buff))
          return buff;
+      while ((buff = policy.chooseUnpinnedBuffer()) != null)
+         if (buff.ring() == null && claim(buff))
+            return buff;
+      for (BufferRing r : rings) {
+         buff = r.steal();
+         if (buff != null) {
+            numAvailable.decrementAndGet();
+            buff.setRing(null);
+            return buff;
+         }
+      }
       return null;
    }
+
+   private boolean claim(Buffer buff) {
+      if (!buff.claim())
+         return false;
+      numAvailable.decrementAndGet();
+      return true;
+   }
+
+   /**
+    * Takes a buffer out of its ring and returns it to the
+    * shared pool. If the buffer is unpinned, the policy is told so
+    * here; otherwise it is told by the unpin.
+    * Either the unpin sees the cleared ring or this method
+    * sees the zero pin count, and possibly both.
+    */
+   private void detach(Buffer buff) {
+      buff.setRing(null);
+      if (!buff.isPinned()) {
+         policy.unpinned(buff);
+         wakeWaiter();
+      }
+   }
+
+   private BlockMap<Buffer> partition(BlockId blk) {
+      return partitions.get(Math.floorMod(blk.hashCode(), NUM_PARTITIONS));
+   }
 }
@@ -0,0 +1,84 @@
+package simpledb.buffer;
+
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+
+/**
+ * Measures pin/unpin throughput as the buffer pool grows.
+ * For each pool size, the hit test repeatedly pins and unpins
+ * blocks that are already resident, and the miss test cycles
+ * through twice as many blocks as there are buffers,
+ * so that every pin has to replace a buffer.
+ * The scaling test then has several threads pin and unpin
+ * resident blocks at once, and reports their combined rate;
+ * it can only show scaling on a machine with that many cores.
+ */
+public class BufferMgrBenchmark {
+   private static final int[] POOL_SIZES = {100, 1000, 10000, 100000};
+   private static final int OPS = 2000000;
+   private static final int[] THREADS = {1, 2, 4, 8};
+   private static final int SCALING_POOL_SIZE = 10000;
+
+   public static void main(String[] args) {
+      System.out.println("Pool Size,Hit Pins/sec,Miss Pins/sec");
+      for (int size : POOL_SIZES) {
+         SimpleDB db = new SimpleDB("buffermgrbenchmark", 400, size);
+         BufferMgr bm = db.bufferMgr();
+         long hitrate = run(bm, size, OPS);
+         long missrate = run(bm, 2 * size, OPS / 10);
+         System.out.println(size + "," + hitrate + "," + missrate);
+      }
+      System.out.println();
+      System.out.println("Threads,Hit Pins/sec");
+      SimpleDB db = new SimpleDB("buffermgrbenchmark", 400, SCALING_POOL_SIZE);
+      BufferMgr bm = db.bufferMgr();
+      cycle(bm, 0, SCALING_POOL_SIZE, SCALING_POOL_SIZE);
+      for (int n : THREADS)
+         System.out.println(n + "," + runConcurrently(bm, n, OPS));
+   }
+
+   /**
+    * Has the specified number of threads each pin and unpin
+    * the resident blocks, starting at different blocks,
+    * and returns the combined number of pin/unpin pairs per second.
+    */
+   private static long runConcurrently(BufferMgr bm, int numthreads, int ops) {
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         int start = t * SCALING_POOL_SIZE / numthreads;
+         threads[t] = new Thread(() -> cycle(bm, start, SCALING_POOL_SIZE, ops));
+      }
+      long begin = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      try {
+         for (Thread t : threads)
+            t.join();
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+      long elapsed = System.nanoTime() - begin;
+      return (long) ((double) numthreads * ops / (elapsed / 1e9));
+   }
+
+   /**
+    * Pins and unpins the specified number of blocks in turn,
+    * and returns the number of pin/unpin pairs per second.
+    * The first pass is not timed, so that the pool is warm.
+    */
+   private static long run(BufferMgr bm, int numblocks, int ops) {
+      cycle(bm, 0, numblocks, numblocks);
+      long start = System.nanoTime();
+      cycle(bm, 0, numblocks, ops);
+      long elapsed = System.nanoTime() - start;
+      return (long) (ops / (elapsed / 1e9));
+   }
+
+   private static void cycle(BufferMgr bm, int start, int numblocks, int ops) {
+      for (int i=start; i<start+ops; i++) {
+         Buffer buff = bm.pin(new BlockId("benchfile", i % numblocks));
+         bm.unpin(buff);
+      }
+   }
+}
@@ -1,5 +1,7 @@
 package simpledb.buffer;
 
+import java.lang.management.ManagementFactory;
+import javax.management.*;
 import simpledb.server.SimpleDB;
 import simpledb.file.*;
 
@@ -76,8 +78,87 @@ public class BufferMgrTest {
         }
     }
 
+    static void ringTest() {
+        System.out.println("\n\n---- RING TEST ----\n\n");
+        SimpleDB db = new SimpleDB("buffermgrtest", 400, 8);
+        BufferMgr bm = db.bufferMgr();
+        for (int i = 0; i < 4; i++)
+            bm.unpin(bm.pin(new BlockId("hotfile", i)));
+
+        // A scan of 50 blocks through a ring should reuse the ring's 2 buffers
+        BufferRing ring = bm.newRing(BufferRing.BULKREAD);
+        for (int i = 0; i < 50; i++)
+            bm.unpin(bm.pin(new BlockId("scanfile", i), ring));
+        bm.releaseRing(ring);
+        System.out.println("Ring size: " + ring.size());
+        System.out.println("Ring buffers taken from pool: " + bm.ringAllocations(BufferRing.BULKREAD));
+        System.out.println("Ring buffer reuses: " + bm.ringReuses(BufferRing.BULKREAD));
+
+        int hitsBefore = bm.policy().hits();
+        for (int i = 0; i < 4; i++)
+            bm.unpin(bm.pin(new BlockId("hotfile", i)));
+        int hotHits = bm.policy().hits() - hitsBefore;
+        System.out.println("Hot blocks still in pool: " + hotHits + " of 4");
+        assert hotHits == 4;
+    }
+
+    static void writerTest() {
+        System.out.println("\n\n---- WRITER TEST ----\n\n");
+        SimpleDB db = new SimpleDB("buffermgrtest", 400, 8);
+        BufferMgr bm = db.bufferMgr();
+        bm.stopWriter(); // clean by hand, so that the counts are predictable
+        Buffer[] buff = new Buffer[3];
+        for (int i = 0; i < 3; i++) {
+            buff[i] = bm.pin(new BlockId("testfile", i));
+            buff[i].contents().setInt(0, i);
+            buff[i].setModified(1, -1);
+        }
+        bm.unpin(buff[0]);
+        bm.unpin(buff[1]);
+        System.out.println("Dirty buffers: " + bm.numDirty());
+        // only the unpinned buffers are written
+        System.out.println("Buffers cleaned: " + bm.cleanDirtyBuffers());
+        System.out.println("Dirty buffers: " + bm.numDirty());
+        assert bm.numDirty() == 1;
+        bm.flushAll(1);
+        System.out.println("Dirty buffers after commit flush: " + bm.numDirty());
+        assert bm.numDirty() == 0;
+        bm.unpin(buff[2]);
+    }
+
+    static void statsTest() throws Exception {
+        System.out.println("\n\n---- STATS TEST ----\n\n");
+        SimpleDB db = new SimpleDB("buffermgrtest", 400, 3);
+        BufferMgr bm = db.bufferMgr();
+        bm.stopWriter();
+        for (int i = 0; i < 3; i++)
+            bm.unpin(bm.pin(new BlockId("testfile", i)));
+        Buffer buff = bm.pin(new BlockId("testfile", 0)); // a hit
+        buff.setModified(1, -1);
+        bm.unpin(buff);
+        for (int i = 0; i < 3; i++)
+            bm.unpin(bm.pin(new BlockId("otherfile", i))); // evicts all of testfile
+        for (FileStats fs : bm.stats().files())
+            System.out.println(fs.getFileName() + ": " + fs.getHits() + " hits, "
+                    + fs.getMisses() + " misses, " + fs.getEvictions() + " evictions, "
+                    + fs.getFlushes() + " flushes");
+        FileStats fs = bm.stats().file("testfile");
+        assert fs.getHits() == 1 && fs.getMisses() == 3;
+        assert fs.getEvictions() == 3 && fs.getFlushes() == 1;
+
+        BufferPoolMonitor monitor = new BufferPoolMonitor(bm);
+        monitor.register("buffermgrtest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = BufferPoolMonitor.objectName("buffermgrtest");
+        System.out.println("Hits through JMX: " + server.getAttribute(name, "Hits"));
+        System.out.println("Misses through JMX: " + server.getAttribute(name, "Misses"));
+    }
+
     public static void main(String[] args) throws Exception {
         basicTest();
+        ringTest();
+        writerTest();
+        statsTest();
         mruBasicTest();
     }
 }
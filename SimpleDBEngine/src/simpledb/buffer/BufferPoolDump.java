@@ -0,0 +1,62 @@
+package simpledb.buffer;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * Reads and writes the file that lists the blocks
+ * resident in the buffer pool, one "filename blocknumber"
+ * pair per line.
+ * The file is written to a temporary name and then renamed,
+ * so that a crash while dumping leaves the previous dump intact.
+ */
+class BufferPoolDump {
+   /**
+    * Writes the specified blocks to the dump file.
+    * @param dumpfile the dump file
+    * @param blocks the resident blocks
+    */
+   static void write(File dumpfile, Collection<BlockId> blocks) {
+      File tmp = new File(dumpfile.getPath() + ".new");
+      try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)))) {
+         for (BlockId blk : blocks)
+            out.println(blk.fileName() + " " + blk.number());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write " + tmp);
+      }
+      try {
+         Files.move(tmp.toPath(), dumpfile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot replace " + dumpfile);
+      }
+   }
+
+   /**
+    * Reads the blocks listed in the dump file.
+    * @param dumpfile the dump file
+    * @return the listed blocks, or an empty list if there is no dump
+    */
+   static List<BlockId> read(File dumpfile) {
+      List<BlockId> blocks = new ArrayList<>();
+      if (!dumpfile.exists())
+         return blocks;
+      try (BufferedReader in = new BufferedReader(new FileReader(dumpfile))) {
+         String line;
+         while ((line = in.readLine()) != null) {
+            int sep = line.lastIndexOf(' ');
+            if (sep > 0)
+               blocks.add(new BlockId(line.substring(0, sep),
+                                      Integer.parseInt(line.substring(sep + 1))));
+         }
+      }
+      catch (IOException | NumberFormatException e) {
+         throw new RuntimeException("cannot read " + dumpfile);
+      }
+      return blocks;
+   }
+}
@@ -0,0 +1,30 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The management interface of a buffer pool,
+ * as published through JMX by {@link BufferPoolMonitor}.
+ */
+public interface BufferPoolMXBean {
+   int getSize();
+   int getAvailable();
+   int getDirty();
+   long getHits();
+   long getMisses();
+   long getEvictions();
+   long getFlushes();
+   double getHitRatio();
+
+   /**
+    * Returns the statistics of each file whose blocks have been pinned.
+    * @return the statistics of each file
+    */
+   List<FileStats> getFileStats();
+
+   /**
+    * Returns the number of buffers pinned by each active transaction.
+    * @return a map from transaction number to pin count
+    */
+   Map<Integer,Integer> getPinsByTransaction();
+}
@@ -0,0 +1,118 @@
+package simpledb.buffer;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.*;
+
+/**
+ * Publishes the statistics of a buffer pool as an MXBean named
+ * <code>simpledb:type=BufferPool,name=</code><i>dbname</i>.
+ */
+public class BufferPoolMonitor implements BufferPoolMXBean {
+   private static Map<String,BufferPoolMonitor> registered = new HashMap<>();
+   private BufferMgr bm;
+   private BufferStats stats;
+
+   /**
+    * Creates a monitor for the specified buffer manager.
+    * @param bm the buffer manager
+    */
+   public BufferPoolMonitor(BufferMgr bm) {
+      this.bm = bm;
+      this.stats = bm.stats();
+   }
+
+   /**
+    * Registers the monitor with the platform MBean server,
+    * replacing the monitor of an earlier pool of the same database.
+    * @param dbname the name of the database
+    */
+   public void register(String dbname) {
+      synchronized (registered) {
+         registered.put(dbname, this);
+      }
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = objectName(dbname);
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+         server.registerMBean(this, name);
+      }
+      catch (JMException e) {
+         throw new RuntimeException("cannot register the buffer pool of " + dbname, e);
+      }
+   }
+
+   /**
+    * Unregisters the monitor from the platform MBean server,
+    * unless a monitor of a later pool of the database has replaced it,
+    * so that a pool that is shut down is no longer kept alive.
+    * @param dbname the name of the database
+    */
+   public void unregister(String dbname) {
+      synchronized (registered) {
+         if (registered.get(dbname) != this)
+            return;
+         registered.remove(dbname);
+      }
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = objectName(dbname);
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+      }
+      catch (JMException e) {
+         throw new RuntimeException("cannot unregister the buffer pool of " + dbname, e);
+      }
+   }
+
+   /**
+    * Returns the name under which the buffer pool
+    * of the specified database is registered.
+    * @param dbname the name of the database
+    * @return the JMX object name
+    */
+   public static ObjectName objectName(String dbname) throws MalformedObjectNameException {
+      return new ObjectName("simpledb:type=BufferPool,name=" + ObjectName.quote(dbname));
+   }
+
+   public int getSize() {
+      return bm.size();
+   }
+
+   public int getAvailable() {
+      return bm.available();
+   }
+
+   public int getDirty() {
+      return bm.numDirty();
+   }
+
+   public long getHits() {
+      return stats.hits();
+   }
+
+   public long getMisses() {
+      return stats.misses();
+   }
+
+   public long getEvictions() {
+      return stats.evictions();
+   }
+
+   public long getFlushes() {
+      return stats.flushes();
+   }
+
+   public double getHitRatio() {
+      return stats.hitRatio();
+   }
+
+   public List<FileStats> getFileStats() {
+      return new ArrayList<>(stats.files());
+   }
+
+   public Map<Integer,Integer> getPinsByTransaction() {
+      return stats.pinsByTransaction();
+   }
+}
@@ -0,0 +1,51 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Grows and shrinks a pool while some of its buffers are pinned,
+ * and then asks the advisor about a workload that
+ * cycles through twice as many blocks as the pool holds.
+ */
+public class BufferPoolResizeTest {
+   public static void main(String[] args) {
+      resizeTest();
+      advisorTest();
+   }
+
+   private static void resizeTest() {
+      SimpleDB db = new SimpleDB("resizetest", 400, 4);
+      BufferMgr bm = db.bufferMgr();
+      Buffer[] buff = new Buffer[8];
+      for (int i=0; i<4; i++)
+         buff[i] = bm.pin(new BlockId("testfile", i));
+      System.out.println("Grown to " + db.resizeBufferPool(8)
+            + " buffers, " + bm.available() + " available");
+      for (int i=4; i<8; i++)
+         buff[i] = bm.pin(new BlockId("testfile", i));
+      for (int i=0; i<6; i++)
+         bm.unpin(buff[i]);
+      System.out.println("Shrunk to " + db.resizeBufferPool(3)
+            + " buffers, " + bm.available() + " available");
+      // buffers 6 and 7 are still pinned
+      System.out.println("Shrunk to " + db.resizeBufferPool(1)
+            + " buffers, " + bm.available() + " available");
+      assert bm.size() == 2;
+      System.out.println("Grown to " + db.resizeBufferPool(5)
+            + " buffers, " + bm.available() + " available");
+      for (int i=0; i<3; i++)
+         bm.pin(new BlockId("otherfile", i)); // aborts if the pool did not grow
+   }
+
+   private static void advisorTest() {
+      SimpleDB db = new SimpleDB("resizetest", 400, 10);
+      BufferMgr bm = db.bufferMgr();
+      db.startBufferPoolAdvisor();
+      for (int pass=0; pass<5; pass++)
+         for (int i=0; i<20; i++)
+            bm.unpin(bm.pin(new BlockId("testfile", i)));
+      System.out.println("Actual hit ratio: " + bm.policy().hitRatio());
+      System.out.println("Estimated hit ratios: " + db.bufferPoolAdvice());
+   }
+}
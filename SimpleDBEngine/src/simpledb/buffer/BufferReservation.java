@@ -0,0 +1,77 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * A number of buffer frames promised to an operator,
+ * such as a sort or a multibuffer product, for as long as it runs.
+ * The frames are not particular buffers: a reservation keeps
+ * other operators from being promised the same frames,
+ * so that the operators that run at the same time
+ * never plan to use more frames than the pool has.
+ * <P>
+ * A pin that takes an unpinned frame is charged to a reservation
+ * of its transaction that has a frame to spare, until the
+ * transaction unpins the block; the buffer manager keeps the
+ * other pins out of the frames that reservations have not yet used.
+ * Reservations are made and released by the {@link BufferMgr}.
+ */
+public class BufferReservation {
+   private int size;
+   private boolean released = false;
+   private Set<Buffer> charged = new HashSet<>();
+
+   BufferReservation(int size) {
+      this.size = size;
+   }
+
+   /**
+    * Returns the number of frames reserved.
+    * @return the size of the reservation
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns the number of reserved frames that
+    * no pin charged to the reservation is using.
+    * @return the number of unused frames
+    */
+   public synchronized int unused() {
+      return released ? 0 : size - charged.size();
+   }
+
+   /**
+    * Charges the frame of the buffer to the reservation,
+    * if it has a frame to spare.
+    * @return true if the frame was charged
+    */
+   synchronized boolean charge(Buffer buff) {
+      if (released || charged.size() >= size)
+         return false;
+      return charged.add(buff);
+   }
+
+   /**
+    * Stops charging the frame of the buffer to the reservation.
+    * @return true if the frame had been charged
+    */
+   synchronized boolean uncharge(Buffer buff) {
+      return charged.remove(buff);
+   }
+
+   /**
+    * Marks the reservation released, and returns
+    * the number of its frames that were in use,
+    * or -1 if it had been released already.
+    */
+   synchronized int release() {
+      if (released)
+         return -1;
+      released = true;
+      int inuse = charged.size();
+      charged.clear();
+      return inuse;
+   }
+}
@@ -0,0 +1,99 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * A small, private set of buffers that a scan recycles
+ * instead of replacing buffers from the shared pool.
+ * A full scan of a large table, a sort spill, or the copy
+ * made by a materialization reads or writes each block once,
+ * so giving it a ring keeps it from pushing the working set
+ * of other queries out of the pool.
+ * <P>
+ * When a block that is not in the pool is pinned through a ring,
+ * the ring moves to its next slot and reuses that slot's buffer
+ * if it is unpinned; otherwise the slot gets a new buffer
+ * from the shared pool.
+ * Rings are created and released by the {@link BufferMgr}.
+ */
+public class BufferRing {
+   public static final int BULKREAD = 0, BULKWRITE = 1;
+   static final String[] NAMES = {"bulkread", "bulkwrite"};
+
+   private int kind;
+   private Buffer[] slots;
+   private int current = -1;
+
+   BufferRing(int kind, int size) {
+      this.kind = kind;
+      slots = new Buffer[size];
+   }
+
+   /**
+    * Returns the kind of access that the ring is for:
+    * BULKREAD or BULKWRITE.
+    * @return the kind of the ring
+    */
+   public int kind() {
+      return kind;
+   }
+
+   /**
+    * Returns the number of buffers the ring may hold.
+    * @return the size of the ring
+    */
+   public int size() {
+      return slots.length;
+   }
+
+   /**
+    * Moves to the next slot of the ring,
+    * and returns the buffer in it (null if the slot is empty).
+    * @return the buffer in the next slot
+    */
+   Buffer next() {
+      current = (current + 1) % slots.length;
+      return slots[current];
+   }
+
+   /**
+    * Puts the buffer in the current slot, returning
+    * the buffer that was there before (if any).
+    * @param buff the buffer to put in the current slot
+    * @return the buffer previously in the slot, or null
+    */
+   Buffer replace(Buffer buff) {
+      Buffer old = slots[current];
+      slots[current] = buff;
+      return old;
+   }
+
+   /**
+    * Claims an unpinned buffer and takes it out of the ring.
+    * @return a claimed buffer of the ring, or null if there is none
+    */
+   Buffer steal() {
+      for (int i=0; i<slots.length; i++)
+         if (slots[i] != null && slots[i].claim()) {
+            Buffer buff = slots[i];
+            slots[i] = null;
+            return buff;
+         }
+      return null;
+   }
+
+   /**
+    * Empties the ring, returning the buffers it held.
+    * @return the buffers that were in the ring
+    */
+   List<Buffer> clear() {
+      List<Buffer> result = new ArrayList<>();
+      for (int i=0; i<slots.length; i++)
+         if (slots[i] != null) {
+            result.add(slots[i]);
+            slots[i] = null;
+         }
+      current = -1;
+      return result;
+   }
+}
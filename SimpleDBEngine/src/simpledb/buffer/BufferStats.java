@@ -0,0 +1,116 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The statistics of a buffer pool: a {@link FileStats}
+ * for each file whose blocks have been pinned, and the number
+ * of buffers that each active transaction has pinned.
+ * Each buffer manager has its own statistics,
+ * which can be read while the system runs
+ * and are also published through JMX by {@link BufferPoolMonitor}.
+ */
+public class BufferStats {
+   private Map<String,FileStats> files = new ConcurrentHashMap<>();
+   private Map<Integer,AtomicInteger> txpins = new ConcurrentHashMap<>();
+
+   /**
+    * Returns the statistics of the specified file,
+    * creating them if the file has not been seen before.
+    * @param filename the name of the file
+    * @return the statistics of the file
+    */
+   public FileStats file(String filename) {
+      FileStats fs = files.get(filename);
+      if (fs == null)
+         fs = files.computeIfAbsent(filename, FileStats::new);
+      return fs;
+   }
+
+   /**
+    * Returns the statistics of every file seen so far.
+    * @return the statistics of each file
+    */
+   public Collection<FileStats> files() {
+      return files.values();
+   }
+
+   public long hits() {
+      long sum = 0;
+      for (FileStats fs : files.values())
+         sum += fs.getHits();
+      return sum;
+   }
+
+   public long misses() {
+      long sum = 0;
+      for (FileStats fs : files.values())
+         sum += fs.getMisses();
+      return sum;
+   }
+
+   public long evictions() {
+      long sum = 0;
+      for (FileStats fs : files.values())
+         sum += fs.getEvictions();
+      return sum;
+   }
+
+   public long flushes() {
+      long sum = 0;
+      for (FileStats fs : files.values())
+         sum += fs.getFlushes();
+      return sum;
+   }
+
+   /**
+    * Returns the fraction of pins that found their block in the pool.
+    * @return the hit ratio, or 0 if nothing has been pinned
+    */
+   public double hitRatio() {
+      long hits = hits();
+      long total = hits + misses();
+      return (total == 0) ? 0.0 : (double) hits / total;
+   }
+
+   /**
+    * Returns the number of buffers currently pinned by
+    * each active transaction that has pinned any.
+    * @return a map from transaction number to pin count
+    */
+   public Map<Integer,Integer> pinsByTransaction() {
+      Map<Integer,Integer> result = new TreeMap<>();
+      for (Map.Entry<Integer,AtomicInteger> e : txpins.entrySet())
+         result.put(e.getKey(), e.getValue().get());
+      return result;
+   }
+
+   /**
+    * Records that the specified transaction pinned a buffer.
+    * @param txnum the transaction's id number
+    */
+   public void txPinned(int txnum) {
+      txpins.computeIfAbsent(txnum, n -> new AtomicInteger()).incrementAndGet();
+   }
+
+   /**
+    * Records that the specified transaction unpinned a buffer.
+    * @param txnum the transaction's id number
+    */
+   public void txUnpinned(int txnum) {
+      AtomicInteger count = txpins.get(txnum);
+      if (count != null)
+         count.decrementAndGet();
+   }
+
+   /**
+    * Records that the specified transaction has unpinned
+    * all of its buffers and finished.
+    * @param txnum the transaction's id number
+    */
+   public void txFinished(int txnum) {
+      txpins.remove(txnum);
+   }
+}
@@ -0,0 +1,71 @@
+package simpledb.buffer;
+
+/**
+ * The background writer of a buffer manager.
+ * Every few milliseconds, it writes the dirty buffers
+ * that are unpinned, so that a buffer chosen for replacement
+ * is usually clean and the thread that needs it
+ * does not have to wait for the write and the log flush.
+ * The writer runs as a daemon thread,
+ * started by {@link BufferMgr#startWriter(long)}.
+ */
+class BufferWriter implements Runnable {
+   private BufferMgr bm;
+   private long delay;
+   private boolean stopped = false;
+   private boolean done = false;
+
+   /**
+    * Creates a writer for the specified buffer manager.
+    * @param bm the buffer manager
+    * @param delay the number of milliseconds between rounds
+    */
+   BufferWriter(BufferMgr bm, long delay) {
+      this.bm = bm;
+      this.delay = delay;
+   }
+
+   public void run() {
+      try {
+         while (waitForNextRound())
+            bm.cleanDirtyBuffers();
+      }
+      finally {
+         finished();
+      }
+   }
+
+   /**
+    * Asks the writer to stop after its current round,
+    * and waits until it has stopped.
+    * The thread is not interrupted, because interrupting
+    * a thread that is writing to a file channel closes the channel.
+    */
+   synchronized void stop() {
+      stopped = true;
+      notifyAll();
+      try {
+         while (!done)
+            wait();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private synchronized void finished() {
+      done = true;
+      notifyAll();
+   }
+
+   private synchronized boolean waitForNextRound() {
+      try {
+         if (!stopped)
+            wait(delay);
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      return !stopped;
+   }
+}
@@ -0,0 +1,123 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+
+/**
+ * The clock (second-chance) replacement policy.
+ * The buffers form a ring, and each one has a reference bit
+ * that is set whenever it is pinned.
+ * To choose a buffer, the clock hand sweeps the ring,
+ * skipping buffers that are not candidates for replacement
+ * and clearing reference bits, until it finds a candidate
+ * whose bit is already clear.
+ * <P>
+ * The bits are kept in atomic arrays, so recording a pin or
+ * an unpin takes no latch; only the sweep of the hand,
+ * and the first pin of each buffer, are synchronized.
+ * The arrays are allocated in chunks, so that the ring can grow
+ * with the pool without copying bits that other threads may be setting.
+ */
+public class ClockPolicy implements ReplacementPolicy {
+   private static final int CHUNK_SIZE = 1024;
+   private List<Buffer> frames = new ArrayList<>();
+   private Map<Buffer,Integer> slots = new ConcurrentHashMap<>();
+   private volatile AtomicIntegerArray[] referenced = new AtomicIntegerArray[0];
+   private volatile AtomicIntegerArray[] unpinned = new AtomicIntegerArray[0];
+   private int hand = 0;
+   private LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+   /**
+    * Creates a clock policy for a pool of the specified size.
+    * @param numbuffs the number of buffers in the pool
+    */
+   public ClockPolicy(int numbuffs) {
+      resize(numbuffs);
+   }
+
+   public void pinned(Buffer buff, boolean hit) {
+      if (hit)
+         hits.increment();
+      else
+         misses.increment();
+      Integer slot = slots.get(buff);
+      if (slot == null)
+         slot = register(buff);
+      set(referenced, slot, 1);
+      set(unpinned, slot, 0);
+   }
+
+   public void unpinned(Buffer buff) {
+      Integer slot = slots.get(buff);
+      if (slot != null)
+         set(unpinned, slot, 1);
+   }
+
+   /**
+    * Sweeps the ring at most twice: the first pass may
+    * clear every reference bit, and the second pass
+    * will then find any candidate.
+    */
+   public synchronized Buffer chooseUnpinnedBuffer() {
+      int numframes = frames.size();
+      for (int i=0; i<2*numframes; i++) {
+         int slot = hand;
+         hand = (hand + 1) % numframes;
+         if (get(unpinned, slot) == 0)
+            continue;
+         if (get(referenced, slot) == 1)
+            set(referenced, slot, 0);
+         else if (unpinned[slot / CHUNK_SIZE].compareAndSet(slot % CHUNK_SIZE, 1, 0))
+            return frames.get(slot);
+      }
+      return null;
+   }
+
+   /**
+    * Makes room in the ring for the specified number of buffers.
+    * The ring never shrinks; the buffers that leave a smaller pool
+    * stay pinned, and so are never chosen.
+    */
+   public synchronized void resize(int numbuffs) {
+      int numchunks = (numbuffs + CHUNK_SIZE - 1) / CHUNK_SIZE;
+      if (numchunks <= referenced.length)
+         return;
+      referenced = grow(referenced, numchunks);
+      unpinned = grow(unpinned, numchunks);
+   }
+
+   public int hits() {
+      return hits.intValue();
+   }
+
+   public int misses() {
+      return misses.intValue();
+   }
+
+   private synchronized int register(Buffer buff) {
+      Integer slot = slots.get(buff);
+      if (slot == null) {
+         slot = frames.size();
+         resize(slot + 1);
+         frames.add(buff);
+         slots.put(buff, slot);
+      }
+      return slot;
+   }
+
+   private static AtomicIntegerArray[] grow(AtomicIntegerArray[] chunks, int numchunks) {
+      AtomicIntegerArray[] result = Arrays.copyOf(chunks, numchunks);
+      for (int i=chunks.length; i<numchunks; i++)
+         result[i] = new AtomicIntegerArray(CHUNK_SIZE);
+      return result;
+   }
+
+   private static int get(AtomicIntegerArray[] chunks, int slot) {
+      return chunks[slot / CHUNK_SIZE].get(slot % CHUNK_SIZE);
+   }
+
+   private static void set(AtomicIntegerArray[] chunks, int slot, int val) {
+      chunks[slot / CHUNK_SIZE].set(slot % CHUNK_SIZE, val);
+   }
+}
@@ -0,0 +1,59 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The buffers whose pages have been modified but not yet written,
+ * each with the LSN of the log record that first made it dirty.
+ * A buffer adds itself when it becomes dirty and removes itself
+ * when it is written, so that the buffer manager can find
+ * the pages to write without scanning the whole pool.
+ */
+class DirtyPageTable {
+   private Map<Buffer,Long> table = new ConcurrentHashMap<>();
+
+   /**
+    * Records that the specified buffer has become dirty.
+    * @param buff the modified buffer
+    * @param lsn the LSN of the first modification, or -1 if it was not logged
+    */
+   void add(Buffer buff, long lsn) {
+      table.putIfAbsent(buff, lsn);
+   }
+
+   /**
+    * Records that the specified buffer has been written.
+    * @param buff the written buffer
+    */
+   void remove(Buffer buff) {
+      table.remove(buff);
+   }
+
+   /**
+    * Returns the dirty buffers.
+    * The collection is a live view, which can change while it is iterated.
+    * @return the dirty buffers
+    */
+   Collection<Buffer> buffers() {
+      return table.keySet();
+   }
+
+   /**
+    * Returns the dirty buffers, each with the LSN
+    * of its first modification.
+    * The set is a live view, which can change while it is iterated.
+    * @return the dirty buffers and their LSNs
+    */
+   Set<Map.Entry<Buffer,Long>> entries() {
+      return table.entrySet();
+   }
+
+   /**
+    * Returns the number of dirty buffers.
+    * @return the number of dirty buffers
+    */
+   int size() {
+      return table.size();
+   }
+}
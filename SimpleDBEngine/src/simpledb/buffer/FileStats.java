@@ -0,0 +1,90 @@
+package simpledb.buffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The buffer statistics of a single file:
+ * the number of pins that hit and missed,
+ * the number of its blocks evicted from the pool and written,
+ * and a histogram of the time that pins of its blocks took.
+ * The counters are LongAdders, so that threads pinning
+ * blocks of the same file do not contend on them.
+ * <P>
+ * Bucket 0 of the histogram counts the pins that took less than
+ * a microsecond; bucket i counts those that took between
+ * 2<sup>i-1</sup> and 2<sup>i</sup> microseconds,
+ * and the last bucket also counts anything longer.
+ */
+public class FileStats {
+   public static final int NUM_BUCKETS = 32;
+   private String filename;
+   private LongAdder hits = new LongAdder();
+   private LongAdder misses = new LongAdder();
+   private LongAdder evictions = new LongAdder();
+   private LongAdder flushes = new LongAdder();
+   private LongAdder[] pinwaits = new LongAdder[NUM_BUCKETS];
+
+   FileStats(String filename) {
+      this.filename = filename;
+      for (int i=0; i<NUM_BUCKETS; i++)
+         pinwaits[i] = new LongAdder();
+   }
+
+   public String getFileName() {
+      return filename;
+   }
+
+   public long getHits() {
+      return hits.sum();
+   }
+
+   public long getMisses() {
+      return misses.sum();
+   }
+
+   public long getEvictions() {
+      return evictions.sum();
+   }
+
+   public long getFlushes() {
+      return flushes.sum();
+   }
+
+   /**
+    * Returns the number of pins that fell into each bucket
+    * of the pin time histogram.
+    * @return the histogram
+    */
+   public long[] getPinWaitHistogram() {
+      long[] result = new long[NUM_BUCKETS];
+      for (int i=0; i<NUM_BUCKETS; i++)
+         result[i] = pinwaits[i].sum();
+      return result;
+   }
+
+   void hit() {
+      hits.increment();
+   }
+
+   void miss() {
+      misses.increment();
+   }
+
+   void evicted() {
+      evictions.increment();
+   }
+
+   void flushed() {
+      flushes.increment();
+   }
+
+   /**
+    * Records a pin that took the specified time.
+    * @param nanos the time of the pin, in nanoseconds
+    */
+   void pinWait(long nanos) {
+      long micros = nanos / 1000;
+      int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+      pinwaits[bucket].increment();
+   }
+}
@@ -0,0 +1,102 @@
+package simpledb.buffer;
+
+import java.io.File;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Modifies a block in each of several threads, committing every
+ * few changes, while another thread flushes the buffer pool
+ * over and over. Each change stores its own number in the block.
+ * The file manager notes, for every page of the blocks it writes,
+ * the number in the page and how far the log had been forced;
+ * the log record of that change must have been forced
+ * before the page was written.
+ */
+public class FlushRaceTest {
+   private static final int NUM_THREADS = 4;
+   private static final int NUM_CHANGES = 1000;
+   private static final int CHANGES_PER_TX = 50;
+   private static final String FILENAME = "racefile";
+
+   private static List<long[]> writes = Collections.synchronizedList(new ArrayList<>());
+   private static LogMgr lm;
+   private static volatile boolean done = false;
+
+   public static void main(String[] args) throws Exception {
+      FileMgr fm = new FileMgr(new File("flushracetest"), 400) {
+         public void write(BlockId blk, Page p) {
+            noteWrite(blk, p);
+            super.write(blk, p);
+         }
+         public void write(BlockId blk, Page[] pages) {
+            for (int i=0; i<pages.length; i++)
+               noteWrite(new BlockId(blk.fileName(), blk.number() + i), pages[i]);
+            super.write(blk, pages);
+         }
+      };
+      lm = new LogMgr(fm, "simpledb.log");
+      BufferMgr bm = new BufferMgr(fm, lm, 20);
+      Transaction tx = new Transaction(fm, lm, bm);
+      while (tx.size(FILENAME) < NUM_THREADS)
+         tx.append(FILENAME);
+      tx.commit();
+
+      long[][] lsns = new long[NUM_THREADS][NUM_CHANGES + 1];
+      Thread[] modifiers = new Thread[NUM_THREADS];
+      for (int t=0; t<NUM_THREADS; t++) {
+         BlockId blk = new BlockId(FILENAME, t);
+         long[] blklsns = lsns[t];
+         modifiers[t] = new Thread(() -> modify(fm, bm, blk, blklsns));
+         modifiers[t].start();
+      }
+      Thread flusher = new Thread(() -> {
+         while (!done)
+            bm.flushAll();
+      });
+      flusher.start();
+      for (Thread t : modifiers)
+         t.join();
+      done = true;
+      flusher.join();
+
+      int checked = 0, early = 0;
+      synchronized (writes) {
+         for (long[] w : writes) {
+            int val = (int) w[1];
+            if (val <= 0 || val > NUM_CHANGES)
+               continue;
+            checked++;
+            if (lsns[(int) w[0]][val] > w[2])
+               early++;
+         }
+      }
+      System.out.println("Wrote " + checked + " modified pages; "
+                         + early + " were written before the log record of their change");
+   }
+
+   private static void modify(FileMgr fm, BufferMgr bm, BlockId blk, long[] lsns) {
+      Buffer buff = bm.pin(blk);
+      bm.unpin(buff);
+      Transaction tx = new Transaction(fm, lm, bm);
+      for (int i=1; i<=NUM_CHANGES; i++) {
+         tx.pin(blk);
+         tx.setInt(blk, 0, i, true);
+         lsns[i] = buff.lsn();
+         tx.unpin(blk);
+         Thread.yield(); // lets the flusher find the buffer unpinned
+         if (i % CHANGES_PER_TX == 0) {
+            tx.commit();
+            tx = new Transaction(fm, lm, bm);
+         }
+      }
+      tx.commit();
+   }
+
+   private static void noteWrite(BlockId blk, Page p) {
+      if (blk.fileName().equals(FILENAME))
+         writes.add(new long[] {blk.number(), p.getInt(0), lm.flushedLSN()});
+   }
+}
@@ -0,0 +1,58 @@
+package simpledb.buffer;
+
+import java.io.File;
+import simpledb.file.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Modifies runs of adjacent blocks in two files, and a few blocks
+ * between the runs, in no particular order, and commits.
+ * The commit writes the runs with gathering writes;
+ * the blocks are then read back by a separate file manager.
+ */
+public class FlushRunTest {
+   private static final int NUM_BLOCKS = 40;
+
+   public static void main(String[] args) {
+      String dirname = "flushruntest";
+      SimpleDB db = new SimpleDB(dirname, 400, 100);
+      BufferMgr bm = db.bufferMgr();
+      bm.stopWriter();
+      String[] files = {"file1", "file2"};
+      Transaction tx = db.newTx();
+      for (String filename : files)
+         while (tx.size(filename) < NUM_BLOCKS)
+            tx.append(filename);
+      tx.commit();
+
+      Transaction tx2 = db.newTx();
+      int modified = 0;
+      for (int i=NUM_BLOCKS-1; i>=0; i--)
+         for (String filename : files)
+            if (i < 10 || (i >= 20 && i < 35) || i % 7 == 0) {
+               BlockId blk = new BlockId(filename, i);
+               tx2.pin(blk);
+               tx2.setInt(blk, 0, 1000 + i, true);
+               tx2.unpin(blk);
+               modified++;
+            }
+      System.out.println("Dirty buffers before commit: " + bm.numDirty()
+            + " of " + modified + " modified");
+      tx2.commit();
+      System.out.println("Dirty buffers after commit: " + bm.numDirty());
+
+      FileMgr fm = new FileMgr(new File(dirname), 400);
+      Page p = new Page(fm.blockSize());
+      int errors = 0;
+      for (String filename : files)
+         for (int i=0; i<NUM_BLOCKS; i++) {
+            fm.read(new BlockId(filename, i), p);
+            boolean wasmodified = (i < 10 || (i >= 20 && i < 35) || i % 7 == 0);
+            if (p.getInt(0) != (wasmodified ? 1000 + i : 0))
+               errors++;
+         }
+      System.out.println(errors == 0 ? "All blocks read back correctly"
+                                     : errors + " blocks read back wrong");
+   }
+}
@@ -0,0 +1,123 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * The LRU-K replacement policy of O'Neil, O'Neil and Weikum.
+ * The policy remembers the times of the last K pins of each block,
+ * and replaces the unpinned buffer whose K-th most recent pin
+ * is the oldest.
+ * A block that has been pinned fewer than K times is replaced first,
+ * so a block that is read once by a scan cannot push out
+ * a block that is used repeatedly, such as a catalog or index page.
+ * The history of a block is kept for a while after it leaves the pool,
+ * so that a block which is re-read soon afterwards is recognized.
+ */
+public class LRUKPolicy implements ReplacementPolicy {
+   private int k;
+   private long clock = 0;
+   private Map<BlockId,long[]> history;
+   private int maxhistory;
+   private NavigableSet<Candidate> candidates = new TreeSet<>();
+   private Map<Buffer,Candidate> entries = new HashMap<>();
+   private int hits, misses;
+
+   /**
+    * Creates an LRU-K policy for a pool of the specified size.
+    * The pin history is retained for twice as many blocks
+    * as there are buffers.
+    * @param k the number of pins to remember for each block
+    * @param numbuffs the number of buffers in the pool
+    */
+   public LRUKPolicy(int k, int numbuffs) {
+      this.k = k;
+      maxhistory = 2 * numbuffs;
+      history = new LinkedHashMap<>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<BlockId,long[]> eldest) {
+            return size() > maxhistory;
+         }
+      };
+   }
+
+   public synchronized void pinned(Buffer buff, boolean hit) {
+      if (hit)
+         hits++;
+      else
+         misses++;
+      clock++;
+      long[] times = history.get(buff.block());
+      if (times == null) {
+         times = new long[k];
+         Arrays.fill(times, -1);
+         history.put(buff.block(), times);
+      }
+      System.arraycopy(times, 0, times, 1, k-1);
+      times[0] = clock;
+      Candidate c = entries.remove(buff);
+      if (c != null)
+         candidates.remove(c);
+   }
+
+   public synchronized void unpinned(Buffer buff) {
+      long[] times = history.get(buff.block());
+      long kth  = (times == null) ? -1 : times[k-1];
+      long last = (times == null) ? -1 : times[0];
+      Candidate c = new Candidate(buff, kth, last, ++clock);
+      candidates.add(c);
+      Candidate old = entries.put(buff, c);
+      if (old != null)
+         candidates.remove(old);
+   }
+
+   public synchronized Buffer chooseUnpinnedBuffer() {
+      Candidate c = candidates.pollFirst();
+      if (c == null)
+         return null;
+      entries.remove(c.buff);
+      return c.buff;
+   }
+
+   /**
+    * Retains the pin history of twice as many blocks
+    * as the new size of the pool.
+    * A smaller history is trimmed as new blocks are pinned.
+    */
+   public synchronized void resize(int numbuffs) {
+      maxhistory = 2 * numbuffs;
+   }
+
+   public synchronized int hits() {
+      return hits;
+   }
+
+   public synchronized int misses() {
+      return misses;
+   }
+
+   /**
+    * An unpinned buffer, ordered by the time of its block's
+    * K-th most recent pin (-1 if there have been fewer than K pins),
+    * then by the time of the most recent pin, and finally
+    * by the time it was unpinned, which is unique.
+    */
+   private static class Candidate implements Comparable<Candidate> {
+      Buffer buff;
+      long kth, last, seq;
+
+      Candidate(Buffer buff, long kth, long last, long seq) {
+         this.buff = buff;
+         this.kth  = kth;
+         this.last = last;
+         this.seq  = seq;
+      }
+
+      public int compareTo(Candidate c) {
+         if (kth != c.kth)
+            return Long.compare(kth, c.kth);
+         if (last != c.last)
+            return Long.compare(last, c.last);
+         return Long.compare(seq, c.seq);
+      }
+   }
+}
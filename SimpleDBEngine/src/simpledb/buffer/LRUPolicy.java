@@ -0,0 +1,43 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The least-recently-used replacement policy.
+ * The candidates are kept in the order they were unpinned,
+ * and the one that has been unpinned the longest is replaced.
+ * Its methods are synchronized, so every pin takes the policy's latch.
+ */
+public class LRUPolicy implements ReplacementPolicy {
+   private Set<Buffer> unpinned = new LinkedHashSet<>();
+   private int hits, misses;
+
+   public synchronized void pinned(Buffer buff, boolean hit) {
+      if (hit)
+         hits++;
+      else
+         misses++;
+      unpinned.remove(buff);
+   }
+
+   public synchronized void unpinned(Buffer buff) {
+      unpinned.add(buff);
+   }
+
+   public synchronized Buffer chooseUnpinnedBuffer() {
+      Iterator<Buffer> iter = unpinned.iterator();
+      if (!iter.hasNext())
+         return null;
+      Buffer buff = iter.next();
+      iter.remove();
+      return buff;
+   }
+
+   public synchronized int hits() {
+      return hits;
+   }
+
+   public synchronized int misses() {
+      return misses;
+   }
+}
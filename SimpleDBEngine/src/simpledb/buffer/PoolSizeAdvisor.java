@@ -0,0 +1,162 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * Estimates the hit ratio that the buffer pool would have
+ * at other sizes, by computing the miss-ratio curve of the pins.
+ * <P>
+ * For each pin, the advisor computes the stack distance of the block:
+ * the number of distinct blocks pinned since the block was last pinned.
+ * An LRU pool of n buffers would have found the block
+ * exactly when its stack distance is less than n,
+ * so a histogram of the distances gives the hit ratio of every
+ * pool size up to the largest one tracked (Mattson et al.).
+ * <P>
+ * The most recent pin of each tracked block is a bit in a
+ * Fenwick tree indexed by time, so a distance is the number of bits
+ * set after the block's previous pin, computed in logarithmic time.
+ * Only the most recently pinned blocks are tracked;
+ * older blocks are forgotten, and their next pin counts as a miss
+ * at every tracked size. When the time index runs out,
+ * the live pins are renumbered in order.
+ */
+public class PoolSizeAdvisor {
+   private int maxsize;
+   private Map<BlockId,Integer> lastpin = new HashMap<>();
+   private BlockId[] blockAt;
+   private int[] tree;
+   private int now = 0;
+   private long[] histogram;
+   private long pins = 0;
+
+   /**
+    * Creates an advisor that tracks pool sizes
+    * up to the specified number of buffers.
+    * @param maxsize the largest pool size to estimate
+    */
+   public PoolSizeAdvisor(int maxsize) {
+      this.maxsize = maxsize;
+      histogram = new long[maxsize];
+      blockAt = new BlockId[2 * maxsize];
+      tree = new int[2 * maxsize + 1];
+   }
+
+   /**
+    * Records a pin of the specified block.
+    * @param blk the pinned block
+    */
+   public synchronized void pinned(BlockId blk) {
+      pins++;
+      Integer t = lastpin.get(blk);
+      if (t != null) {
+         int distance = lastpin.size() - prefixCount(t);
+         histogram[distance]++;
+         clear(t);
+      }
+      else if (lastpin.size() == maxsize)
+         clear(oldest());
+      if (now == blockAt.length)
+         renumber();
+      blockAt[now] = blk;
+      add(now, 1);
+      lastpin.put(blk, now);
+      now++;
+   }
+
+   /**
+    * Returns the largest pool size that can be estimated.
+    * @return the largest tracked pool size
+    */
+   public int maxSize() {
+      return maxsize;
+   }
+
+   /**
+    * Estimates the hit ratio of an LRU pool of the specified size
+    * over the pins recorded so far.
+    * Sizes beyond {@link #maxSize()} get the estimate for that size.
+    * @param poolsize the number of buffers
+    * @return the estimated hit ratio, or 0 if nothing has been pinned
+    */
+   public synchronized double estimatedHitRatio(int poolsize) {
+      if (pins == 0)
+         return 0.0;
+      long hits = 0;
+      for (int d=0; d<Math.min(poolsize, maxsize); d++)
+         hits += histogram[d];
+      return (double) hits / pins;
+   }
+
+   /**
+    * Estimates the hit ratio at each of the specified pool sizes.
+    * @param sizes the pool sizes
+    * @return a map from each size to its estimated hit ratio
+    */
+   public SortedMap<Integer,Double> estimate(int... sizes) {
+      SortedMap<Integer,Double> result = new TreeMap<>();
+      for (int size : sizes)
+         result.put(size, estimatedHitRatio(size));
+      return result;
+   }
+
+   /**
+    * Forgets the pin at time t.
+    */
+   private void clear(int t) {
+      BlockId blk = blockAt[t];
+      blockAt[t] = null;
+      add(t, -1);
+      if (lastpin.get(blk) == t)
+         lastpin.remove(blk);
+   }
+
+   /**
+    * Returns the time of the least recent live pin.
+    */
+   private int oldest() {
+      // the smallest index whose prefix count is 1
+      int pos = 0;
+      int remaining = 1;
+      for (int step=Integer.highestOneBit(tree.length - 1); step>0; step>>=1)
+         if (pos + step < tree.length && tree[pos + step] < remaining) {
+            pos += step;
+            remaining -= tree[pos];
+         }
+      return pos;
+   }
+
+   /**
+    * Moves the live pins to the start of the time index,
+    * keeping their order.
+    */
+   private void renumber() {
+      BlockId[] old = blockAt;
+      blockAt = new BlockId[old.length];
+      Arrays.fill(tree, 0);
+      now = 0;
+      for (BlockId blk : old)
+         if (blk != null) {
+            blockAt[now] = blk;
+            add(now, 1);
+            lastpin.put(blk, now);
+            now++;
+         }
+   }
+
+   /**
+    * Returns the number of live pins at times 0 through t.
+    */
+   private int prefixCount(int t) {
+      int count = 0;
+      for (int i=t+1; i>0; i-=(i & -i))
+         count += tree[i];
+      return count;
+   }
+
+   private void add(int t, int delta) {
+      for (int i=t+1; i<tree.length; i+=(i & -i))
+         tree[i] += delta;
+   }
+}
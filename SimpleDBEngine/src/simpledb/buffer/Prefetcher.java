@@ -0,0 +1,83 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The background prefetcher of a buffer manager.
+ * It reads the blocks that each {@link ReadAhead} asks for,
+ * in the order asked, so that a scan can go on with the block
+ * it has pinned while the next blocks are being read.
+ * A failed read is dropped; the scan then reads
+ * the blocks itself when it pins them.
+ * The prefetcher runs as a daemon thread,
+ * started by {@link BufferMgr#startPrefetcher()}.
+ */
+class Prefetcher implements Runnable {
+   private Queue<ReadAhead> requests = new ArrayDeque<>();
+   private boolean stopped = false;
+   private boolean done = false;
+
+   public void run() {
+      try {
+         ReadAhead ra;
+         while ((ra = nextRequest()) != null) {
+            try {
+               ra.read();
+            }
+            catch (RuntimeException e) {
+               // the scan will read the blocks when it pins them
+            }
+         }
+      }
+      finally {
+         finished();
+      }
+   }
+
+   /**
+    * Adds a request, unless the prefetcher has been stopped.
+    * @param ra the read-ahead that asks for blocks
+    * @return false if the request was not added
+    */
+   synchronized boolean submit(ReadAhead ra) {
+      if (stopped)
+         return false;
+      requests.add(ra);
+      notifyAll();
+      return true;
+   }
+
+   /**
+    * Asks the prefetcher to stop once the requests
+    * already added have been read, and waits until it has stopped.
+    * The thread is not interrupted, because interrupting
+    * a thread that is reading from a file channel closes the channel.
+    */
+   synchronized void stop() {
+      stopped = true;
+      notifyAll();
+      try {
+         while (!done)
+            wait();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private synchronized void finished() {
+      done = true;
+      notifyAll();
+   }
+
+   private synchronized ReadAhead nextRequest() {
+      try {
+         while (!stopped && requests.isEmpty())
+            wait();
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      return requests.poll();
+   }
+}
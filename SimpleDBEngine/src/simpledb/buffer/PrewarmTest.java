@@ -0,0 +1,39 @@
+package simpledb.buffer;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Dumps the blocks of a warm pool, and checks that a new pool
+ * prewarmed from the dump finds all of them.
+ */
+public class PrewarmTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("prewarmtest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      BufferMgr bm = db.bufferMgr();
+      File dumpfile = new File("prewarmtest", "bufferpool.dump");
+      while (fm.length("testfile") < 10)
+         fm.append("testfile");
+      // blocks 0-2 and 5-7 are in the pool afterwards
+      int[] blknums = {5, 6, 1, 7, 0, 2};
+      for (int n : blknums)
+         bm.unpin(bm.pin(new BlockId("testfile", n)));
+      bm.setDumpFile(dumpfile);
+      bm.dumpResidentBlocks();
+
+      SimpleDB db2 = new SimpleDB("prewarmtest", 400, 8);
+      BufferMgr bm2 = db2.bufferMgr();
+      bm2.setDumpFile(dumpfile);
+      Thread t = bm2.startPrewarm();
+      t.join();
+      System.out.println("Available after prewarm: " + bm2.available());
+      int hitsBefore = bm2.policy().hits();
+      for (int n : blknums)
+         bm2.unpin(bm2.pin(new BlockId("testfile", n)));
+      int hits = bm2.policy().hits() - hitsBefore;
+      System.out.println("Prewarmed blocks found: " + hits + " of " + blknums.length);
+      assert hits == blknums.length;
+   }
+}
@@ -0,0 +1,124 @@
+package simpledb.buffer;
+
+import simpledb.file.BlockId;
+
+/**
+ * Reads the blocks of a file into the buffer pool ahead of a scan
+ * that moves through them in order.
+ * The scan tells the read-ahead each block it moves to.
+ * Once it has moved to consecutive blocks a few times in a row,
+ * or from the start if the plan gave it a bulk read ring,
+ * the read-ahead keeps a window of the following blocks in the pool,
+ * asking for the next part of the window whenever the scan
+ * is halfway through the part already asked for.
+ * A scan that jumps to another block starts over.
+ * <P>
+ * The blocks are read by the buffer manager's prefetcher thread
+ * if it is running, and otherwise by the scan's own thread;
+ * either way, each part of the window is read with one large read.
+ * Read-ahead through a ring never asks for more blocks
+ * than the ring can hold besides the scan's current block.
+ */
+public class ReadAhead {
+   private static final int SEQUENTIAL = 2;
+   private BufferMgr bm;
+   private String filename;
+   private BufferRing ring;
+   private int window;
+   private int threshold;
+   private int last = -1, runlength = 0, requested = -1;
+   private int nextblk, count = 0; // the blocks asked for but not yet read
+   private boolean queued = false, reading = false, closed = false;
+
+   /**
+    * Creates a read-ahead for a scan of the specified file.
+    * @param bm the buffer manager
+    * @param filename the name of the file
+    * @param ring the ring the scan pins blocks through, or null
+    * @param window the number of blocks to keep ahead of the scan
+    */
+   ReadAhead(BufferMgr bm, String filename, BufferRing ring, int window) {
+      this.bm = bm;
+      this.filename = filename;
+      this.ring = ring;
+      this.window = (ring == null) ? window : Math.min(window, ring.size() - 1);
+      boolean bulk = (ring != null && ring.kind() == BufferRing.BULKREAD);
+      threshold = bulk ? 0 : SEQUENTIAL;
+   }
+
+   /**
+    * Tells the read-ahead that the scan has moved to
+    * the specified block, and asks for the next part of
+    * the window if the scan is sequential and has used up
+    * half of what was asked for before.
+    * @param blknum the number of the block the scan moved to
+    */
+   public void moved(int blknum) {
+      synchronized (this) {
+         if (closed || blknum == last)
+            return;
+         if (blknum == last + 1)
+            runlength++;
+         else {
+            runlength = 0;
+            requested = blknum;
+            count = 0;
+         }
+         last = blknum;
+         if (window <= 0 || runlength < threshold
+               || requested - blknum > window / 2)
+            return;
+         int start = Math.max(requested, blknum) + 1;
+         requested = blknum + window;
+         if (count == 0)
+            nextblk = start;
+         count = requested - nextblk + 1;
+         if (queued)
+            return;
+         queued = true;
+      }
+      bm.submit(this);
+   }
+
+   /**
+    * Stops the read-ahead, waiting for a read in progress
+    * to finish, so that the scan can then release its ring.
+    */
+   public synchronized void close() {
+      closed = true;
+      count = 0;
+      try {
+         while (reading)
+            wait();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Reads the blocks that have been asked for.
+    * Called by the prefetcher thread, or by the scan's own thread.
+    */
+   void read() {
+      int start, n;
+      synchronized (this) {
+         queued = false;
+         if (closed || count == 0)
+            return;
+         start = nextblk;
+         n = count;
+         count = 0;
+         reading = true;
+      }
+      try {
+         bm.prefetch(new BlockId(filename, start), n, ring);
+      }
+      finally {
+         synchronized (this) {
+            reading = false;
+            notifyAll();
+         }
+      }
+   }
+}
@@ -0,0 +1,79 @@
+package simpledb.buffer;
+
+import java.io.File;
+import simpledb.file.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Pins the blocks of files that are not in the buffer pool,
+ * with read-ahead, and counts the pins that had to read a block.
+ * A scan through a bulk read ring is read ahead from the start,
+ * a scan in the shared pool once it is seen to be sequential,
+ * and a scan that jumps around is not read ahead at all.
+ * The last file is read ahead by the prefetcher thread.
+ */
+public class ReadAheadTest {
+   private static final int NUM_BLOCKS = 200;
+
+   public static void main(String[] args) {
+      String dirname = "readaheadtest";
+      FileMgr fm = new FileMgr(new File(dirname), 400);
+      String[] files = {"bulkfile", "seqfile", "skipfile", "asyncfile"};
+      for (String filename : files)
+         if (fm.length(filename) == 0)
+            write(fm, filename);
+
+      SimpleDB db = new SimpleDB(dirname, 400, 64);
+      BufferMgr bm = db.bufferMgr();
+      bm.stopPrefetcher();
+      Transaction tx = db.newTx();
+
+      BufferRing ring = tx.newBufferRing(BufferRing.BULKREAD);
+      scan(tx, "bulkfile", ring, 1);
+      tx.releaseBufferRing(ring);
+      scan(tx, "seqfile", null, 1);
+      scan(tx, "skipfile", null, 2);
+      for (String filename : new String[] {"bulkfile", "seqfile", "skipfile"})
+         System.out.println(filename + ": "
+               + bm.stats().file(filename).getMisses() + " misses");
+
+      bm.startPrefetcher();
+      ring = tx.newBufferRing(BufferRing.BULKREAD);
+      int errors = scan(tx, "asyncfile", ring, 1);
+      tx.releaseBufferRing(ring);
+      tx.commit();
+      System.out.println(errors == 0 ? "All blocks read back correctly"
+                                     : errors + " blocks read back wrong");
+      db.shutdown();
+   }
+
+   private static void write(FileMgr fm, String filename) {
+      Page p = new Page(fm.blockSize());
+      for (int i=0; i<NUM_BLOCKS; i++) {
+         BlockId blk = fm.append(filename);
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+   }
+
+   /**
+    * Pins every block of the file whose number is a multiple
+    * of the stride, in order, and checks its contents.
+    * @return the number of blocks with the wrong contents
+    */
+   private static int scan(Transaction tx, String filename, BufferRing ring, int stride) {
+      ReadAhead ra = tx.newReadAhead(filename, ring);
+      int errors = 0;
+      for (int i=0; i<NUM_BLOCKS; i+=stride) {
+         BlockId blk = new BlockId(filename, i);
+         tx.pin(blk, ring);
+         ra.moved(i);
+         if (tx.getInt(blk, 0) != i)
+            errors++;
+         tx.unpin(blk);
+      }
+      ra.close();
+      return errors;
+   }
+}
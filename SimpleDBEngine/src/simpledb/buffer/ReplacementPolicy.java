@@ -0,0 +1,96 @@
+package simpledb.buffer;
+
+/**
+ * The interface implemented by each buffer replacement policy.
+ * The buffer manager tells the policy each time a buffer
+ * is pinned or becomes unpinned, and asks it to choose
+ * a buffer to replace whenever a block that is not
+ * in the pool needs to be pinned.
+ * Buffers that have never been assigned to a block are
+ * handed out by the buffer manager itself, and so a policy
+ * only sees a buffer once that buffer has been pinned.
+ * <P>
+ * The buffer manager calls a policy from many threads
+ * without holding a latch of its own, so each policy
+ * does its own synchronization.
+ * Since the calls for concurrent pins and unpins can arrive
+ * out of order, a policy may choose a buffer that has since been
+ * pinned again; the buffer manager skips such a buffer.
+ */
+public interface ReplacementPolicy {
+   /**
+    * Records a pin of the specified buffer, which is
+    * already assigned to the pinned block.
+    * A pinned buffer is not a candidate for replacement.
+    * @param buff the pinned buffer
+    * @param hit true if the block was already in the pool
+    */
+   void pinned(Buffer buff, boolean hit);
+
+   /**
+    * Records that the pin count of the specified buffer
+    * has dropped to zero, making it a candidate for replacement.
+    * @param buff the unpinned buffer
+    */
+   void unpinned(Buffer buff);
+
+   /**
+    * Chooses an unpinned buffer to be replaced, and
+    * stops considering it as a candidate.
+    * Returns null if every buffer known to the policy is pinned.
+    * @return the buffer to replace, or null
+    */
+   Buffer chooseUnpinnedBuffer();
+
+   /**
+    * Tells the policy that the pool has been resized.
+    * A buffer that leaves the pool stays pinned from then on,
+    * so the policy never needs to forget it.
+    * @param numbuffs the new number of buffers in the pool
+    */
+   default void resize(int numbuffs) {}
+
+   /**
+    * Returns the number of pins that found their block in the pool.
+    * @return the number of hits
+    */
+   int hits();
+
+   /**
+    * Returns the number of pins that had to read their block from disk.
+    * @return the number of misses
+    */
+   int misses();
+
+   /**
+    * Returns the fraction of pins that found their block in the pool.
+    * @return the hit ratio, or 0 if nothing has been pinned
+    */
+   default double hitRatio() {
+      int total = hits() + misses();
+      return (total == 0) ? 0.0 : (double) hits() / total;
+   }
+
+   /**
+    * Creates the policy having the specified name,
+    * for a pool of the specified size.
+    * The known names are "lru", "clock", "lru-k" and "2q".
+    * @param name the name of the policy
+    * @param numbuffs the number of buffers in the pool
+    * @return the new policy
+    */
+   static ReplacementPolicy create(String name, int numbuffs) {
+      switch (name.toLowerCase()) {
+      case "lru":
+         return new LRUPolicy();
+      case "clock":
+         return new ClockPolicy(numbuffs);
+      case "lru-k":
+         return new LRUKPolicy(2, numbuffs);
+      case "2q":
+         return new TwoQPolicy(numbuffs);
+      default:
+         throw new IllegalArgumentException("unknown replacement policy " + name);
+      }
+   }
+}
@@ -0,0 +1,58 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Runs the same workload under each replacement policy
+ * and prints the resulting hit ratios.
+ * The workload repeatedly scans a table that is larger than the pool,
+ * touching a few "catalog" blocks after every ten scanned blocks.
+ * A scan-resistant policy keeps the catalog blocks resident.
+ * Then scans a table through a buffer ring under 2Q, and checks
+ * that the buffers the ring reuses are each in one queue only.
+ */
+public class ReplacementPolicyTest {
+   private static final String[] POLICIES = {"lru", "clock", "lru-k", "2q"};
+
+   public static void main(String[] args) {
+      for (String policy : POLICIES) {
+         SimpleDB db = new SimpleDB("policytest", 400, 10, policy);
+         BufferMgr bm = db.bufferMgr();
+         for (int pass=0; pass<5; pass++)
+            for (int i=0; i<50; i++) {
+               pinAndUnpin(bm, new BlockId("scanfile", i));
+               if (i % 10 == 0)
+                  for (int j=0; j<3; j++)
+                     pinAndUnpin(bm, new BlockId("catfile", j));
+            }
+         ReplacementPolicy p = bm.policy();
+         System.out.println(policy + ": " + p.hits() + " hits, "
+               + p.misses() + " misses, hit ratio " + p.hitRatio());
+      }
+      ringTest();
+   }
+
+   private static void ringTest() {
+      SimpleDB db = new SimpleDB("policytest", 400, 10, "2q");
+      BufferMgr bm = db.bufferMgr();
+      // the catalog blocks are read twice, and so go into Am
+      for (int pass=0; pass<2; pass++)
+         for (int i=0; i<10; i++)
+            pinAndUnpin(bm, new BlockId(pass == 0 ? "catfile" : "scanfile", i));
+      for (int j=0; j<3; j++)
+         pinAndUnpin(bm, new BlockId("catfile", j));
+      BufferRing ring = bm.newRing(BufferRing.BULKREAD);
+      for (int i=0; i<50; i++)
+         bm.unpin(bm.pin(new BlockId("scanfile", i), ring));
+      bm.releaseRing(ring);
+      TwoQPolicy p = (TwoQPolicy) bm.policy();
+      System.out.println("After a ring scan, 2q has " + p.queued()
+                         + " buffers in its queues; at most " + bm.size());
+   }
+
+   private static void pinAndUnpin(BufferMgr bm, BlockId blk) {
+      Buffer buff = bm.pin(blk);
+      bm.unpin(buff);
+   }
+}
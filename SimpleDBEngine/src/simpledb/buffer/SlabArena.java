@@ -0,0 +1,54 @@
+package simpledb.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import simpledb.file.Page;
+
+/**
+ * Allocates the pages of the buffer pool as slices of a few
+ * large direct byte buffers, called slabs,
+ * instead of allocating a direct buffer for each page.
+ * A direct buffer is limited to 2GB, so a large pool is
+ * split into slabs of at most {@link #MAX_SLAB_SIZE} bytes.
+ * The slabs can be aligned, as direct I/O needs;
+ * the pages are then aligned too if the page size
+ * is a multiple of the alignment.
+ * Slabs are never freed individually; they go away with the arena.
+ */
+class SlabArena {
+   static final int MAX_SLAB_SIZE = 1 << 30; // 1GB
+   private int pagesize;
+   private int alignment;
+   private List<ByteBuffer> slabs = new ArrayList<>();
+
+   /**
+    * Creates an arena for pages of the specified size.
+    * @param pagesize the size of a page, in bytes
+    * @param alignment the alignment of the slabs, a power of 2
+    */
+   SlabArena(int pagesize, int alignment) {
+      this.pagesize = pagesize;
+      this.alignment = alignment;
+   }
+
+   /**
+    * Allocates the specified number of pages,
+    * in as few new slabs as possible.
+    * @param count the number of pages
+    * @return the new pages
+    */
+   List<Page> allocate(int count) {
+      List<Page> pages = new ArrayList<>(count);
+      int perslab = Math.max(1, MAX_SLAB_SIZE / pagesize);
+      while (count > 0) {
+         int n = Math.min(count, perslab);
+         ByteBuffer slab = ByteBuffer.allocateDirect(n * pagesize + alignment - 1)
+                                     .alignedSlice(alignment);
+         slabs.add(slab);
+         for (int i=0; i<n; i++)
+            pages.add(new Page(slab.slice(i * pagesize, pagesize)));
+         count -= n;
+      }
+      return pages;
+   }
+}
@@ -0,0 +1,132 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * The 2Q replacement policy of Johnson and Shasha.
+ * A block read into the pool for the first time goes into
+ * the A1in queue, which is managed first-in first-out.
+ * When a buffer is replaced from A1in, the id of its block is
+ * remembered in the A1out ghost queue; if the block is read again
+ * while it is still remembered there, it goes into the Am queue,
+ * which is managed least-recently-used.
+ * Buffers are replaced from A1in while it holds more than
+ * a quarter of the pool, and from Am otherwise.
+ * Blocks read once by a scan therefore pass through A1in
+ * without disturbing the frequently used blocks in Am.
+ * A buffer that the buffer manager reuses without asking the
+ * policy, as a buffer ring does, leaves its old queue when it
+ * is pinned for its new block.
+ */
+public class TwoQPolicy implements ReplacementPolicy {
+   private int kin, kout;
+   private long nextseq = 0;
+   private Map<Buffer,Long> a1in = new HashMap<>();
+   private NavigableMap<Long,Buffer> a1inUnpinned = new TreeMap<>();
+   private Set<Buffer> am = new HashSet<>();
+   private Set<Buffer> amUnpinned = new LinkedHashSet<>();
+   private Set<BlockId> a1out = new LinkedHashSet<>();
+   private int hits, misses;
+
+   /**
+    * Creates a 2Q policy for a pool of the specified size.
+    * A1in is allowed a quarter of the pool, and A1out
+    * remembers as many blocks as half the pool.
+    * @param numbuffs the number of buffers in the pool
+    */
+   public TwoQPolicy(int numbuffs) {
+      resize(numbuffs);
+   }
+
+   public synchronized void pinned(Buffer buff, boolean hit) {
+      if (hit) {
+         hits++;
+         Long seq = a1in.get(buff);
+         if (seq != null)
+            a1inUnpinned.remove(seq);
+         else
+            amUnpinned.remove(buff);
+      }
+      else {
+         misses++;
+         forget(buff);
+         if (a1out.remove(buff.block()))
+            am.add(buff);
+         else
+            a1in.put(buff, nextseq++);
+      }
+   }
+
+   public synchronized void unpinned(Buffer buff) {
+      Long seq = a1in.get(buff);
+      if (seq != null)
+         a1inUnpinned.put(seq, buff);
+      else
+         amUnpinned.add(buff);
+   }
+
+   public synchronized Buffer chooseUnpinnedBuffer() {
+      boolean useA1in = (a1in.size() > kin && !a1inUnpinned.isEmpty())
+                        || amUnpinned.isEmpty();
+      if (useA1in) {
+         Map.Entry<Long,Buffer> e = a1inUnpinned.pollFirstEntry();
+         if (e == null)
+            return null;
+         Buffer buff = e.getValue();
+         a1in.remove(buff);
+         remember(buff.block());
+         return buff;
+      }
+      Iterator<Buffer> iter = amUnpinned.iterator();
+      Buffer buff = iter.next();
+      iter.remove();
+      am.remove(buff);
+      return buff;
+   }
+
+   /**
+    * Recomputes the sizes of A1in and A1out for the new size of the pool.
+    * A smaller A1out is trimmed as blocks are added to it.
+    */
+   public synchronized void resize(int numbuffs) {
+      kin  = Math.max(1, numbuffs / 4);
+      kout = Math.max(1, numbuffs / 2);
+   }
+
+   public synchronized int hits() {
+      return hits;
+   }
+
+   public synchronized int misses() {
+      return misses;
+   }
+
+   /**
+    * Returns the number of buffers in A1in and Am.
+    * @return the number of buffers in the queues
+    */
+   synchronized int queued() {
+      return a1in.size() + am.size();
+   }
+
+   /**
+    * Removes the buffer from the queue it is in, if any.
+    */
+   private void forget(Buffer buff) {
+      Long seq = a1in.remove(buff);
+      if (seq != null)
+         a1inUnpinned.remove(seq);
+      else if (am.remove(buff))
+         amUnpinned.remove(buff);
+   }
+
+   private void remember(BlockId blk) {
+      a1out.add(blk);
+      Iterator<BlockId> iter = a1out.iterator();
+      while (a1out.size() > kout) {
+         iter.next();
+         iter.remove();
+      }
+   }
+}
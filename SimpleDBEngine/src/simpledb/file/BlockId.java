@@ -1,32 +1,80 @@
 package simpledb.file;
 
+/**
+ * Identifies a block by the id of its file in the
+ * {@link FileRegistry} and its block number,
+ * packed together into a single long key.
+ * Comparing and hashing block ids compares and hashes the keys,
+ * and a {@link BlockMap} keys its entries by them.
+ * The block id also keeps the name of its file, so that
+ * the name is known even after the file's id has been freed.
+ */
 public class BlockId {
-   private String filename;
-   private int blknum;
+   private final String filename;
+   private final long key;
 
    public BlockId(String filename, int blknum) {
+      this(filename, FileRegistry.id(filename), blknum);
+   }
+
+   /**
+    * Creates the id of a block of the file with the specified id,
+    * without looking up the id of the file.
+    * @param filename the name of the file
+    * @param fileid the id of the file in the file registry
+    * @param blknum the block number
+    */
+   public BlockId(String filename, int fileid, int blknum) {
       this.filename = filename;
-      this.blknum   = blknum;
+      this.key = key(fileid, blknum);
+   }
+
+   /**
+    * Returns the key of the block with the specified
+    * file id and block number.
+    */
+   static long key(int fileid, int blknum) {
+      return ((long) fileid << 32) | (blknum & 0xFFFFFFFFL);
    }
 
    public String fileName() {
       return filename;
    }
 
+   public int fileId() {
+      return (int) (key >>> 32);
+   }
+
    public int number() {
-      return blknum;
+      return (int) key;
+   }
+
+   /**
+    * Returns the file id and block number packed into a long.
+    * @return the key of the block
+    */
+   public long key() {
+      return key;
    }
    
    public boolean equals(Object obj) {
-      BlockId blk = (BlockId) obj;
-      return filename.equals(blk.filename) && blknum == blk.blknum;
+      return (obj instanceof BlockId) && ((BlockId) obj).key == key;
    }
    
    public String toString() {
-      return "[file " + filename + ", block " + blknum + "]";
+      return "[file " + fileName() + ", block " + number() + "]";
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return hash(key);
+   }
+
+   /**
+    * Spreads the bits of a key, so that the blocks of one file
+    * are not all hashed near each other.
+    */
+   static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
    }
 }
@@ -0,0 +1,194 @@
+package simpledb.file;
+
+import java.util.*;
+
+/**
+ * A hash map from blocks to values, kept in arrays of
+ * block keys and values with open addressing,
+ * so that looking up, adding and removing a block
+ * compares longs and allocates nothing.
+ * The values cannot be null. Like a HashMap,
+ * the map is not safe for use by several threads at once.
+ */
+public class BlockMap<V> {
+   private long[] keys;
+   private BlockId[] blks;
+   private Object[] vals;
+   private int size = 0;
+   private int mask;
+
+   public BlockMap() {
+      this(16);
+   }
+
+   /**
+    * Creates a map with room for the specified number
+    * of blocks before it grows.
+    * @param capacity the expected number of blocks
+    */
+   public BlockMap(int capacity) {
+      int n = Integer.highestOneBit(Math.max(4, capacity + capacity / 2) - 1) << 1;
+      keys = new long[n];
+      blks = new BlockId[n];
+      vals = new Object[n];
+      mask = n - 1;
+   }
+
+   @SuppressWarnings("unchecked")
+   public V get(BlockId blk) {
+      int i = find(blk.key());
+      return (i < 0) ? null : (V) vals[i];
+   }
+
+   public boolean containsKey(BlockId blk) {
+      return find(blk.key()) >= 0;
+   }
+
+   /**
+    * Maps the block to the value.
+    * @return the previous value of the block, or null
+    */
+   @SuppressWarnings("unchecked")
+   public V put(BlockId blk, V val) {
+      long key = blk.key();
+      int i = BlockId.hash(key) & mask;
+      while (vals[i] != null) {
+         if (keys[i] == key) {
+            V old = (V) vals[i];
+            vals[i] = val;
+            return old;
+         }
+         i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      blks[i] = blk;
+      vals[i] = val;
+      if (++size > (keys.length * 2) / 3)
+         grow();
+      return null;
+   }
+
+   /**
+    * Removes the block from the map.
+    * @return the value of the block, or null if there was none
+    */
+   @SuppressWarnings("unchecked")
+   public V remove(BlockId blk) {
+      int i = find(blk.key());
+      if (i < 0)
+         return null;
+      V old = (V) vals[i];
+      delete(i);
+      return old;
+   }
+
+   /**
+    * Removes the block from the map
+    * only if it maps to the specified value.
+    * @return true if the block was removed
+    */
+   public boolean remove(BlockId blk, V val) {
+      int i = find(blk.key());
+      if (i < 0 || vals[i] != val)
+         return false;
+      delete(i);
+      return true;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public boolean isEmpty() {
+      return size == 0;
+   }
+
+   public void clear() {
+      if (size > 0) {
+         Arrays.fill(blks, null);
+         Arrays.fill(vals, null);
+         size = 0;
+      }
+   }
+
+   /**
+    * Returns a new list of the blocks in the map.
+    * @return the blocks in the map
+    */
+   public List<BlockId> keys() {
+      List<BlockId> result = new ArrayList<>(size);
+      for (int i=0; i<vals.length; i++)
+         if (vals[i] != null)
+            result.add(blks[i]);
+      return result;
+   }
+
+   /**
+    * Returns a new list of the values in the map.
+    * @return the values in the map
+    */
+   @SuppressWarnings("unchecked")
+   public List<V> values() {
+      List<V> result = new ArrayList<>(size);
+      for (Object val : vals)
+         if (val != null)
+            result.add((V) val);
+      return result;
+   }
+
+   private int find(long key) {
+      int i = BlockId.hash(key) & mask;
+      while (vals[i] != null) {
+         if (keys[i] == key)
+            return i;
+         i = (i + 1) & mask;
+      }
+      return -1;
+   }
+
+   /**
+    * Empties slot i, and moves back any entry after it
+    * that could otherwise no longer be found.
+    */
+   private void delete(int i) {
+      blks[i] = null;
+      vals[i] = null;
+      size--;
+      int j = i;
+      while (true) {
+         j = (j + 1) & mask;
+         if (vals[j] == null)
+            return;
+         int home = BlockId.hash(keys[j]) & mask;
+         // the entry at j stays unless its home is cyclically in (i, j]
+         boolean stays = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+         if (!stays) {
+            keys[i] = keys[j];
+            blks[i] = blks[j];
+            vals[i] = vals[j];
+            blks[j] = null;
+            vals[j] = null;
+            i = j;
+         }
+      }
+   }
+
+   private void grow() {
+      long[] oldkeys = keys;
+      BlockId[] oldblks = blks;
+      Object[] oldvals = vals;
+      keys = new long[2 * oldkeys.length];
+      blks = new BlockId[2 * oldkeys.length];
+      vals = new Object[2 * oldkeys.length];
+      mask = keys.length - 1;
+      for (int k=0; k<oldvals.length; k++)
+         if (oldvals[k] != null) {
+            int i = BlockId.hash(oldkeys[k]) & mask;
+            while (vals[i] != null)
+               i = (i + 1) & mask;
+            keys[i] = oldkeys[k];
+            blks[i] = oldblks[k];
+            vals[i] = oldvals[k];
+         }
+   }
+}
@@ -0,0 +1,42 @@
+package simpledb.file;
+
+import java.util.*;
+
+/**
+ * Applies the same random puts and removes to a {@link BlockMap}
+ * and a HashMap, and checks that the two always agree.
+ * The block numbers include the negative ones that
+ * transactions use to lock the end of a file.
+ */
+public class BlockMapTest {
+   public static void main(String[] args) {
+      Random rand = new Random(42);
+      BlockMap<Integer> map = new BlockMap<>(4);
+      Map<BlockId,Integer> expected = new HashMap<>();
+      String[] files = {"tblcat.tbl", "student.tbl", "temp1.tbl", "simpledb.log"};
+      int errors = 0;
+      for (int i=0; i<200000; i++) {
+         BlockId blk = new BlockId(files[rand.nextInt(files.length)], rand.nextInt(300) - 1);
+         int op = rand.nextInt(4);
+         if (op < 2) {
+            if (!Objects.equals(map.put(blk, i), expected.put(blk, i)))
+               errors++;
+         }
+         else if (op == 2) {
+            if (!Objects.equals(map.remove(blk), expected.remove(blk)))
+               errors++;
+         }
+         else if (!Objects.equals(map.get(blk), expected.get(blk)))
+            errors++;
+         if (map.size() != expected.size())
+            errors++;
+      }
+      if (!new HashSet<>(map.keys()).equals(expected.keySet()))
+         errors++;
+      for (BlockId blk : map.keys())
+         if (!map.get(blk).equals(expected.get(blk)) || FileRegistry.id(blk.fileName()) != blk.fileId())
+            errors++;
+      System.out.println(errors == 0 ? "The block map agrees with a HashMap"
+                                     : errors + " disagreements with a HashMap");
+   }
+}
@@ -0,0 +1,213 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Stores a file as an ordinary file, whose blocks are read
+ * and written with positional I/O on the file's channel.
+ * Positional I/O does not use the file pointer,
+ * so any number of threads can read and write blocks at once.
+ * Only the operations that do move the file pointer,
+ * appending a block, a scattering read and a gathering write,
+ * hold the latch of the file.
+ * The file is not opened for synchronous writes;
+ * it remembers whether it has been written since it was last forced,
+ * so that forcing an unchanged file costs nothing.
+ * <P>
+ * The number of blocks in the file is kept in memory.
+ * The file grows on disk an extent of blocks at a time,
+ * with a single write of zeros, and an append within the extent
+ * just counts the block, so neither an append nor a length
+ * makes a system call.
+ * Since the unused blocks of the last extent cannot be told
+ * from appended blocks that hold zeros, the number of blocks
+ * is kept in a length file beside the file. The length file is
+ * created when the file is first forced or closed with unused blocks,
+ * and the length is written to it whenever the file is forced or closed.
+ * When the file is opened again, its length is read from there.
+ * A file without a length file never grew past its blocks, and its
+ * length is its size on disk; a crash before the length file was
+ * first forced leaves the unused blocks of the extent in the file,
+ * where they read as blocks of zeros.
+ * A block past the end of the file reads as zeros.
+ */
+class ChannelFileStore implements FileStore {
+   protected FileChannel fc;
+   protected int blocksize;
+   protected volatile boolean unforced = false;
+   private int extentblocks;
+   private volatile int length;
+   private int capacity;
+   private File lengthfile;
+   private int recordedLength = -1; // -1 if there is no length file
+
+   ChannelFileStore(File file, int blocksize, int extentblocks) throws IOException {
+      this(file, FileChannel.open(file.toPath(), READ, WRITE, CREATE), blocksize, extentblocks);
+   }
+
+   /**
+    * Creates the storage of the specified file, which
+    * has been opened as the specified channel.
+    */
+   protected ChannelFileStore(File file, FileChannel fc, int blocksize, int extentblocks) throws IOException {
+      this.fc = fc;
+      this.blocksize = blocksize;
+      this.extentblocks = extentblocks;
+      capacity = (int)(fc.size() / blocksize);
+      lengthfile = lengthFile(file);
+      length = capacity;
+      if (lengthfile.exists()) {
+         try (DataInputStream in = new DataInputStream(new FileInputStream(lengthfile))) {
+            recordedLength = in.readInt();
+            length = recordedLength;
+         }
+         catch (EOFException e) {
+            // a crash emptied the length file before it was written
+         }
+      }
+   }
+
+   /**
+    * Returns the length file of the specified data file.
+    * @param file the data file
+    * @return its length file
+    */
+   static File lengthFile(File file) {
+      return new File(file.getPath() + ".len");
+   }
+
+   public void read(int blknum, ByteBuffer bb) throws IOException {
+      readBlock(blknum, bb);
+   }
+
+   /**
+    * Reads the blocks with a single scattering read,
+    * repeated until the pages are full or the end of the file
+    * is reached; the rest of the pages is then filled with zeros.
+    */
+   public void read(int blknum, ByteBuffer[] bbs) throws IOException {
+      ByteBuffer last = bbs[bbs.length - 1];
+      synchronized (fc) {
+         fc.position((long) blknum * blocksize);
+         while (last.hasRemaining() && fc.read(bbs) >= 0)
+            ;
+      }
+      for (ByteBuffer bb : bbs)
+         zeroFill(bb);
+   }
+
+   /**
+    * Writes the block, counting it in the length of the file
+    * if it is past the end.
+    */
+   public void write(int blknum, ByteBuffer bb) throws IOException {
+      long pos = (long) blknum * blocksize;
+      while (bb.hasRemaining())
+         pos += fc.write(bb, pos);
+      unforced = true;
+      if (blknum >= length)
+         synchronized (fc) {
+            extendTo(blknum + 1);
+         }
+   }
+
+   public void write(int blknum, ByteBuffer[] bbs) throws IOException {
+      ByteBuffer last = bbs[bbs.length - 1];
+      synchronized (fc) {
+         fc.position((long) blknum * blocksize);
+         while (last.hasRemaining())
+            fc.write(bbs);
+         unforced = true;
+         extendTo(blknum + bbs.length);
+      }
+   }
+
+   public int append() throws IOException {
+      synchronized (fc) {
+         int newblknum = length;
+         if (newblknum == capacity) {
+            int newcapacity = capacity + extentblocks;
+            ByteBuffer zeros = ByteBuffer.allocate((newcapacity - capacity) * blocksize);
+            long pos = (long) capacity * blocksize;
+            while (zeros.hasRemaining())
+               pos += fc.write(zeros, pos);
+            capacity = newcapacity;
+            unforced = true;
+         }
+         length = newblknum + 1;
+         return newblknum;
+      }
+   }
+
+   /**
+    * Clears the flag before forcing, so that a write that
+    * finishes during the force will be forced the next time.
+    * The length is then written to the length file, if the file
+    * has one, so that every forced block is counted after a crash.
+    */
+   public void force() throws IOException {
+      if (unforced) {
+         unforced = false;
+         fc.force(true);
+      }
+      synchronized (fc) {
+         recordLength();
+      }
+   }
+
+   public int length() {
+      return length;
+   }
+
+   public ByteBuffer view(int blknum) {
+      return null;
+   }
+
+   public void close() throws IOException {
+      synchronized (fc) {
+         recordLength();
+      }
+      fc.close();
+   }
+
+   private void extendTo(int numblocks) {
+      capacity = Math.max(capacity, numblocks);
+      length = Math.max(length, numblocks);
+   }
+
+   /**
+    * Writes the length to the length file and forces it,
+    * if the length has changed since it was last written
+    * and the file has a length file or unused blocks.
+    * The caller holds the latch of the file.
+    */
+   private void recordLength() throws IOException {
+      int numblocks = length;
+      if (numblocks == recordedLength || (recordedLength < 0 && numblocks == capacity))
+         return;
+      try (FileOutputStream out = new FileOutputStream(lengthfile)) {
+         out.write(ByteBuffer.allocate(Integer.BYTES).putInt(numblocks).array());
+         out.getFD().sync();
+      }
+      recordedLength = numblocks;
+   }
+
+   private void readBlock(int blknum, ByteBuffer bb) throws IOException {
+      long pos = (long) blknum * blocksize;
+      while (bb.hasRemaining()) {
+         int n = fc.read(bb, pos);
+         if (n < 0)
+            break;
+         pos += n;
+      }
+      zeroFill(bb);
+   }
+
+   private static void zeroFill(ByteBuffer bb) {
+      while (bb.hasRemaining())
+         bb.put((byte) 0);
+   }
+}
@@ -0,0 +1,281 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Stores a file with each block compressed by the {@link LZCodec}.
+ * The compressed blocks have different sizes, so the data file
+ * is divided into sectors of SECTOR_SIZE bytes, and each block
+ * is stored in a run of sectors, headed by the length of its
+ * compressed data (or by the block size, if the block did not
+ * compress and is stored as it is).
+ * A separate map file, named after the data file with ".map"
+ * appended, translates each block number to its run of sectors,
+ * so that block numbers stay the same whatever the blocks' sizes,
+ * and the length of the file is the number of entries in the map.
+ * A block that has been appended but never written
+ * has no sectors, and reads as zeros.
+ * <P>
+ * A block is never written over its run: each write goes to
+ * a new run, and the old run is freed only once the map that
+ * no longer refers to it has been forced, so that after a crash
+ * every entry of the map on disk refers to a run holding a whole
+ * version of its block, even if the crash tore a write.
+ * A run that no forced map has referred to yet
+ * is freed right away, together with its unforced entry.
+ * The map is written when the file is forced, after the data.
+ * The free runs are found again when the file is opened,
+ * and the sectors past the last run in use are cut off.
+ */
+class CompressedFileStore implements FileStore {
+   static final int SECTOR_SIZE = 32;
+   private static final int ENTRY_SIZE = 8;
+   private static final int HEADER_SIZE = Integer.BYTES;
+   private FileChannel fc, mapfc;
+   private int blocksize;
+   private int[] starts = new int[16], counts = new int[16];
+   private volatile int length = 0;
+   private int end = 0; // the number of sectors in the data file
+   private TreeMap<Integer,Integer> free = new TreeMap<>();
+   private List<int[]> freeAfterForce = new ArrayList<>();
+   private Set<Integer> fresh = new HashSet<>(); // runs not yet in a forced map
+   private Map<Integer,int[]> dirtyEntries = new HashMap<>();
+   private volatile boolean unforced = false;
+
+   CompressedFileStore(File file, int blocksize) throws IOException {
+      this.blocksize = blocksize;
+      fc = FileChannel.open(file.toPath(), READ, WRITE, CREATE);
+      mapfc = FileChannel.open(mapFile(file).toPath(), READ, WRITE, CREATE);
+      readMap();
+   }
+
+   /**
+    * Returns the map file of the specified data file.
+    * @param file the data file
+    * @return its map file
+    */
+   static File mapFile(File file) {
+      return new File(file.getPath() + ".map");
+   }
+
+   public void read(int blknum, ByteBuffer bb) throws IOException {
+      int start, count;
+      synchronized (this) {
+         start = (blknum < length) ? starts[blknum] : 0;
+         count = (blknum < length) ? counts[blknum] : 0;
+      }
+      if (count == 0) {
+         while (bb.hasRemaining())
+            bb.put((byte) 0);
+         return;
+      }
+      ByteBuffer stored = ByteBuffer.allocate(count * SECTOR_SIZE);
+      long pos = (long) start * SECTOR_SIZE;
+      while (stored.hasRemaining() && fc.read(stored, pos + stored.position()) >= 0)
+         ;
+      byte[] b = stored.array();
+      int n = stored.getInt(0);
+      if (n == blocksize)
+         bb.put(b, HEADER_SIZE, blocksize);
+      else {
+         byte[] page = new byte[blocksize];
+         LZCodec.decompress(b, HEADER_SIZE, n, page);
+         bb.put(page);
+      }
+   }
+
+   public void read(int blknum, ByteBuffer[] bbs) throws IOException {
+      for (int i=0; i<bbs.length; i++)
+         read(blknum + i, bbs[i]);
+   }
+
+   public void write(int blknum, ByteBuffer bb) throws IOException {
+      byte[] page = new byte[blocksize];
+      bb.get(page);
+      byte[] stored = new byte[HEADER_SIZE + LZCodec.maxCompressedLength(blocksize)];
+      int n = LZCodec.compress(page, blocksize, stored, HEADER_SIZE);
+      if (n >= blocksize) {
+         System.arraycopy(page, 0, stored, HEADER_SIZE, blocksize);
+         n = blocksize;
+      }
+      ByteBuffer.wrap(stored).putInt(0, n);
+      int needed = (HEADER_SIZE + n + SECTOR_SIZE - 1) / SECTOR_SIZE;
+      int start;
+      int[] old = null;
+      synchronized (this) {
+         while (blknum >= length)
+            addEntry(0, 0);
+         if (counts[blknum] > 0) {
+            if (fresh.remove(starts[blknum])) {
+               dirtyEntries.remove(blknum);
+               release(starts[blknum], counts[blknum]);
+            }
+            else
+               old = new int[] {starts[blknum], counts[blknum]};
+         }
+         start = allocate(needed);
+         fresh.add(start);
+         starts[blknum] = start;
+         counts[blknum] = needed;
+      }
+      ByteBuffer out = ByteBuffer.wrap(stored, 0, needed * SECTOR_SIZE);
+      long pos = (long) start * SECTOR_SIZE;
+      while (out.hasRemaining())
+         fc.write(out, pos + out.position());
+      synchronized (this) {
+         dirtyEntries.put(blknum, new int[] {start, needed});
+         if (old != null)
+            freeAfterForce.add(old);
+      }
+      unforced = true;
+   }
+
+   public void write(int blknum, ByteBuffer[] bbs) throws IOException {
+      for (int i=0; i<bbs.length; i++)
+         write(blknum + i, bbs[i]);
+   }
+
+   /**
+    * Appends an entry with no sectors to the map.
+    */
+   public synchronized int append() throws IOException {
+      addEntry(0, 0);
+      unforced = true;
+      return length - 1;
+   }
+
+   /**
+    * Takes the entries of the map that have changed,
+    * forces the data file, so that the runs the entries refer to
+    * are on disk, and then writes the entries and forces the map.
+    * Only then are the runs that the map on disk
+    * no longer refers to freed.
+    * An entry changes only after its block has been written,
+    * so a write in progress is left for the next force.
+    */
+   public void force() throws IOException {
+      if (!unforced)
+         return;
+      unforced = false;
+      Map<Integer,int[]> entries;
+      List<int[]> freed;
+      synchronized (this) {
+         entries = dirtyEntries;
+         dirtyEntries = new HashMap<>();
+         for (int[] entry : entries.values())
+            fresh.remove(entry[0]);
+         freed = freeAfterForce;
+         freeAfterForce = new ArrayList<>();
+      }
+      fc.force(true);
+      ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+      for (Map.Entry<Integer,int[]> e : entries.entrySet()) {
+         entry.clear();
+         entry.putInt(e.getValue()[0]).putInt(e.getValue()[1]).flip();
+         long pos = (long) e.getKey() * ENTRY_SIZE;
+         while (entry.hasRemaining())
+            mapfc.write(entry, pos + entry.position());
+      }
+      mapfc.force(true);
+      synchronized (this) {
+         for (int[] run : freed)
+            release(run[0], run[1]);
+      }
+   }
+
+   public int length() {
+      return length;
+   }
+
+   public ByteBuffer view(int blknum) {
+      return null;
+   }
+
+   public void close() throws IOException {
+      fc.close();
+      mapfc.close();
+   }
+
+   /**
+    * Returns the number of sectors in the data file,
+    * which is what the file takes on disk.
+    * @return the size of the data file in sectors
+    */
+   synchronized int sectors() {
+      return end;
+   }
+
+   private void addEntry(int start, int count) {
+      if (length == starts.length) {
+         starts = Arrays.copyOf(starts, 2 * length);
+         counts = Arrays.copyOf(counts, 2 * length);
+      }
+      starts[length] = start;
+      counts[length] = count;
+      dirtyEntries.put(length, new int[] {start, count});
+      length++;
+   }
+
+   /**
+    * Allocates a run of sectors from the first free run
+    * that is large enough, or else from the end of the file.
+    */
+   private int allocate(int count) {
+      for (Map.Entry<Integer,Integer> e : free.entrySet())
+         if (e.getValue() >= count) {
+            int start = e.getKey();
+            free.remove(start);
+            if (e.getValue() > count)
+               free.put(start + count, e.getValue() - count);
+            return start;
+         }
+      int start = end;
+      end += count;
+      return start;
+   }
+
+   /**
+    * Returns a run of sectors to the free runs,
+    * merging it with the free runs next to it.
+    */
+   private void release(int start, int count) {
+      Map.Entry<Integer,Integer> before = free.floorEntry(start);
+      if (before != null && before.getKey() + before.getValue() == start) {
+         start = before.getKey();
+         count += before.getValue();
+      }
+      Integer after = free.remove(start + count);
+      if (after != null)
+         count += after;
+      free.put(start, count);
+   }
+
+   /**
+    * Reads the map, and finds the free runs
+    * between the runs that the map refers to.
+    */
+   private void readMap() throws IOException {
+      ByteBuffer bb = ByteBuffer.allocate((int) mapfc.size());
+      while (bb.hasRemaining() && mapfc.read(bb, bb.position()) >= 0)
+         ;
+      bb.flip();
+      TreeMap<Integer,Integer> used = new TreeMap<>();
+      while (bb.remaining() >= ENTRY_SIZE) {
+         int start = bb.getInt(), count = bb.getInt();
+         addEntry(start, count);
+         if (count > 0)
+            used.put(start, count);
+      }
+      dirtyEntries.clear();
+      for (Map.Entry<Integer,Integer> e : used.entrySet()) {
+         if (e.getKey() > end)
+            free.put(end, e.getKey() - end);
+         end = Math.max(end, e.getKey() + e.getValue());
+      }
+      fc.truncate((long) end * SECTOR_SIZE);
+   }
+}
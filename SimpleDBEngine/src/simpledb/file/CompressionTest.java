@@ -0,0 +1,121 @@
+package simpledb.file;
+
+import java.io.*;
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+
+/**
+ * Checks that the LZ codec gives back what it compressed, and then
+ * loads the same records into a compressed and an ordinary table,
+ * compares the space they take on disk, and reads the compressed
+ * table back after updates, a rollback, and a restart.
+ * Last, it names a field "compressed", since the word
+ * is a keyword only where the grammar expects it.
+ */
+public class CompressionTest {
+   private static final int NUM_RECORDS = 500;
+
+   public static void main(String[] args) {
+      codecTest();
+      String dirname = "compressiontest";
+      SimpleDB db = new SimpleDB(dirname);
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      if (db.fileMgr().length("plain.tbl") == 0) {
+         planner.executeUpdate("create table plain(A int, B varchar(20))", tx);
+         planner.executeUpdate("create table packed(A int, B varchar(20)) compressed", tx);
+         for (int i=0; i<NUM_RECORDS; i++)
+            for (String tblname : new String[] {"plain", "packed"})
+               planner.executeUpdate("insert into " + tblname + "(A,B) values("
+                                     + i + ", 'name" + i + "')", tx);
+      }
+      tx.commit();
+
+      tx = db.newTx();
+      for (int i=0; i<NUM_RECORDS; i+=5)
+         planner.executeUpdate("update packed set B = 'a much longer name' where A = " + i, tx);
+      tx.commit();
+      tx = db.newTx();
+      for (int i=1; i<NUM_RECORDS; i+=5)
+         planner.executeUpdate("update packed set B = 'rolled back' where A = " + i, tx);
+      tx.rollback();
+      db.shutdown();
+
+      SimpleDB db2 = new SimpleDB(dirname);
+      Transaction tx2 = db2.newTx();
+      Plan p = db2.planner().createQueryPlan("select A, B from packed", tx2);
+      Scan s = p.open();
+      int count = 0, errors = 0;
+      while (s.next()) {
+         int a = s.getInt("a");
+         String expected = (a % 5 == 0) ? "a much longer name" : "name" + a;
+         if (!s.getString("b").equals(expected))
+            errors++;
+         count++;
+      }
+      s.close();
+      tx2.commit();
+      System.out.println(count + " records read back, " + errors + " wrong");
+
+      long plainsize = db2.fileMgr().length("plain.tbl") * 400;
+      long packedsize = storedSize(new File(dirname, "packed.tbl.map"));
+      System.out.println("The blocks of the compressed table take "
+            + (3 * packedsize < 2 * plainsize ? "less" : "more")
+            + " than two thirds of the space of the ordinary table");
+
+      tx2 = db2.newTx();
+      if (db2.fileMgr().length("flags.tbl") == 0)
+         db2.planner().executeUpdate("create table flags(compressed int) compressed", tx2);
+      db2.planner().executeUpdate("insert into flags(compressed) values(1)", tx2);
+      s = db2.planner().createQueryPlan("select compressed from flags "
+                                        + "where compressed = 1", tx2).open();
+      System.out.println("A field named compressed was "
+                         + (s.next() ? "" : "not ") + "read back");
+      s.close();
+      tx2.commit();
+   }
+
+   /**
+    * Returns the number of bytes that the runs
+    * in the specified map take in the data file.
+    */
+   private static long storedSize(File mapfile) {
+      try (DataInputStream in = new DataInputStream(new FileInputStream(mapfile))) {
+         long size = 0;
+         for (long i=0; i<mapfile.length(); i+=8) {
+            in.readInt();
+            size += in.readInt() * CompressedFileStore.SECTOR_SIZE;
+         }
+         return size;
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + mapfile);
+      }
+   }
+
+   private static void codecTest() {
+      Random rand = new Random(17);
+      byte[][] inputs = new byte[4][];
+      inputs[0] = new byte[400];
+      inputs[1] = new byte[400];
+      rand.nextBytes(inputs[1]);
+      inputs[2] = "record1 record2 record3 record4 record5 record6".repeat(20).getBytes();
+      inputs[3] = new byte[4096];
+      for (int i=0; i<inputs[3].length; i++)
+         inputs[3][i] = (byte) (i % 300 < 40 ? rand.nextInt(4) : 0);
+      int errors = 0;
+      for (byte[] in : inputs) {
+         byte[] packed = new byte[LZCodec.maxCompressedLength(in.length)];
+         int n = LZCodec.compress(in, in.length, packed, 0);
+         byte[] out = new byte[in.length];
+         int m = LZCodec.decompress(packed, 0, n, out);
+         if (m != in.length || !java.util.Arrays.equals(in, out))
+            errors++;
+      }
+      System.out.println(errors == 0 ? "The codec gives back every input"
+                                     : errors + " inputs came back wrong");
+   }
+}
@@ -0,0 +1,75 @@
+package simpledb.file;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+
+/**
+ * Several threads append blocks to the same file,
+ * each writing its own number into its blocks,
+ * and then read all of the blocks back at once.
+ */
+public class ConcurrentFileTest {
+   private static final int NUM_THREADS = 4, BLOCKS_PER_THREAD = 50;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("concurrentfiletest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      String filename = "testfile";
+      int start = fm.length(filename);
+      Set<Integer> appended = Collections.synchronizedSet(new HashSet<>());
+
+      Thread[] writers = new Thread[NUM_THREADS];
+      for (int t=0; t<NUM_THREADS; t++) {
+         int id = t;
+         writers[t] = new Thread(() -> {
+            Page p = new Page(fm.blockSize());
+            for (int i=0; i<BLOCKS_PER_THREAD; i++) {
+               BlockId blk = fm.append(filename);
+               if (!appended.add(blk.number()))
+                  System.out.println("block " + blk.number() + " was appended twice");
+               p.setInt(0, id);
+               p.setInt(4, blk.number());
+               fm.write(blk, p);
+            }
+         });
+      }
+      for (Thread t : writers)
+         t.start();
+      for (Thread t : writers)
+         t.join();
+      int total = fm.length(filename) - start;
+      System.out.println("Appended " + total + " blocks, expected "
+            + NUM_THREADS * BLOCKS_PER_THREAD);
+
+      int[] errors = new int[NUM_THREADS];
+      int[][] counts = new int[NUM_THREADS][NUM_THREADS];
+      Thread[] readers = new Thread[NUM_THREADS];
+      for (int t=0; t<NUM_THREADS; t++) {
+         int id = t;
+         readers[t] = new Thread(() -> {
+            Page p = new Page(fm.blockSize());
+            for (int n=start+id; n<start+total; n+=NUM_THREADS) {
+               fm.read(new BlockId(filename, n), p);
+               if (p.getInt(4) != n)
+                  errors[id]++;
+               else
+                  counts[id][p.getInt(0)]++;
+            }
+         });
+      }
+      for (Thread t : readers)
+         t.start();
+      for (Thread t : readers)
+         t.join();
+      int errs = 0;
+      int[] written = new int[NUM_THREADS];
+      for (int t=0; t<NUM_THREADS; t++) {
+         errs += errors[t];
+         for (int w=0; w<NUM_THREADS; w++)
+            written[w] += counts[t][w];
+      }
+      System.out.println("Blocks written by each thread: " + Arrays.toString(written));
+      System.out.println(errs == 0 ? "All blocks read back correctly"
+                                   : errs + " blocks read back wrong");
+   }
+}
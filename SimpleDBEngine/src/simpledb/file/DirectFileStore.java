@@ -0,0 +1,113 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import com.sun.nio.file.ExtendedOpenOption;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Stores a file as an ordinary file that is opened for direct I/O,
+ * so that its blocks are read and written without being cached
+ * by the operating system as well as by the buffer pool.
+ * Direct I/O needs the block size to be a multiple of the
+ * alignment of the file system, and the pages to start at
+ * aligned addresses. The pages of the buffer pool do,
+ * when the pool is told the alignment by {@link FileMgr#alignment()};
+ * any other page is copied through an aligned buffer.
+ * <P>
+ * Apart from that, the file is kept as by a {@link ChannelFileStore}.
+ * {@link #supported(File, int)} tells whether direct I/O can be
+ * used in a directory at all.
+ */
+class DirectFileStore extends ChannelFileStore {
+   private int alignment;
+
+   DirectFileStore(File file, int blocksize, int extentblocks, int alignment) throws IOException {
+      super(file, open(file), blocksize, extentblocks);
+      this.alignment = alignment;
+   }
+
+   public void read(int blknum, ByteBuffer bb) throws IOException {
+      if (isAligned(bb))
+         super.read(blknum, bb);
+      else {
+         ByteBuffer tmp = alignedBuffer();
+         super.read(blknum, tmp);
+         bb.put(tmp.flip());
+      }
+   }
+
+   public void read(int blknum, ByteBuffer[] bbs) throws IOException {
+      ByteBuffer[] tmps = new ByteBuffer[bbs.length];
+      for (int i=0; i<bbs.length; i++)
+         tmps[i] = isAligned(bbs[i]) ? bbs[i] : alignedBuffer();
+      super.read(blknum, tmps);
+      for (int i=0; i<bbs.length; i++)
+         if (tmps[i] != bbs[i])
+            bbs[i].put(tmps[i].flip());
+   }
+
+   public void write(int blknum, ByteBuffer bb) throws IOException {
+      super.write(blknum, isAligned(bb) ? bb : alignedCopy(bb));
+   }
+
+   public void write(int blknum, ByteBuffer[] bbs) throws IOException {
+      ByteBuffer[] tmps = new ByteBuffer[bbs.length];
+      for (int i=0; i<bbs.length; i++)
+         tmps[i] = isAligned(bbs[i]) ? bbs[i] : alignedCopy(bbs[i]);
+      super.write(blknum, tmps);
+   }
+
+   /**
+    * Returns the alignment that direct I/O needs in the
+    * specified directory, if a file of blocks of the specified
+    * size can be opened there for direct I/O, and 0 otherwise.
+    * Direct I/O is not supported by every file system
+    * (tmpfs, for one), nor by every platform.
+    * @param dir the database directory
+    * @param blocksize the block size
+    * @return the alignment, or 0 if direct I/O cannot be used
+    */
+   static int supported(File dir, int blocksize) {
+      File probe = new File(dir, "tempdirectprobe");
+      try {
+         int alignment = (int) Files.getFileStore(dir.toPath()).getBlockSize();
+         if (Integer.bitCount(alignment) != 1 || blocksize % alignment != 0)
+            return 0;
+         open(probe).close();
+         return alignment;
+      }
+      catch (IOException | UnsupportedOperationException e) {
+         return 0;
+      }
+      finally {
+         probe.delete();
+      }
+   }
+
+   private static FileChannel open(File file) throws IOException {
+      return FileChannel.open(file.toPath(), READ, WRITE, CREATE,
+                              ExtendedOpenOption.DIRECT);
+   }
+
+   /**
+    * A heap buffer is copied through an aligned buffer
+    * by the channel itself; a direct buffer must be aligned.
+    */
+   private boolean isAligned(ByteBuffer bb) {
+      return !bb.isDirect() || bb.alignmentOffset(bb.position(), alignment) == 0;
+   }
+
+   private ByteBuffer alignedBuffer() {
+      return ByteBuffer.allocateDirect(blocksize + alignment)
+                       .alignedSlice(alignment).limit(blocksize);
+   }
+
+   private ByteBuffer alignedCopy(ByteBuffer bb) {
+      ByteBuffer tmp = alignedBuffer();
+      tmp.put(bb);
+      return tmp.flip();
+   }
+}
@@ -0,0 +1,59 @@
+package simpledb.file;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Writes blocks through transactions on a database with
+ * direct I/O, reads them back, and then reads them again
+ * through a separate file manager, whose pages are not aligned.
+ * A block size that is not a multiple of the file system's
+ * alignment falls back to ordinary file storage.
+ */
+public class DirectIOTest {
+   private static final int NUM_BLOCKS = 50;
+
+   public static void main(String[] args) {
+      SimpleDB.STORAGE = "direct";
+      SimpleDB db = new SimpleDB("directtest", 4096, 8);
+      SimpleDB db2 = new SimpleDB("directtest400", 400, 8);
+      SimpleDB.STORAGE = "file";
+      System.out.println("Storage with 4096-byte blocks: " + db.fileMgr().storage());
+      System.out.println("Storage with 400-byte blocks: " + db2.fileMgr().storage());
+
+      String filename = "testfile";
+      Transaction tx = db.newTx();
+      for (int i=tx.size(filename); i<NUM_BLOCKS; i++)
+         tx.append(filename);
+      for (int i=0; i<NUM_BLOCKS; i++) {
+         BlockId blk = new BlockId(filename, i);
+         tx.pin(blk);
+         tx.setInt(blk, 100, i, true);
+         tx.setString(blk, 4000, "block" + i, true);
+         tx.unpin(blk);
+      }
+      tx.commit();
+
+      int errors = 0;
+      Transaction tx2 = db.newTx();
+      for (int i=0; i<NUM_BLOCKS; i++) {
+         BlockId blk = new BlockId(filename, i);
+         tx2.pin(blk);
+         if (tx2.getInt(blk, 100) != i || !tx2.getString(blk, 4000).equals("block" + i))
+            errors++;
+         tx2.unpin(blk);
+      }
+      tx2.commit();
+
+      FileMgr fm = new FileMgr(new File("directtest"), 4096, "direct", 1);
+      Page p = new Page(fm.blockSize());
+      for (int i=0; i<NUM_BLOCKS; i++) {
+         fm.read(new BlockId(filename, i), p);
+         if (p.getInt(100) != i || !p.getString(4000).equals("block" + i))
+            errors++;
+      }
+      System.out.println(errors == 0 ? "All blocks read back correctly"
+                                     : errors + " blocks read back wrong");
+   }
+}
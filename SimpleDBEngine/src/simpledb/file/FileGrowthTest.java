@@ -0,0 +1,37 @@
+package simpledb.file;
+
+import java.io.File;
+
+/**
+ * Appends blocks to a file that grows in extents,
+ * and checks the length of the file before and after
+ * it is opened again, as it would be after a crash.
+ * The last block appended is written with zeros, and must
+ * still be counted once the file has been forced.
+ */
+public class FileGrowthTest {
+   public static void main(String[] args) {
+      File dir = new File("filegrowthtest");
+      String filename = "testfile";
+      FileMgr fm = new FileMgr(dir, 400, "file", 8);
+      int start = fm.length(filename);
+      Page p = new Page(fm.blockSize());
+      for (int i=0; i<10; i++) {
+         BlockId blk = fm.append(filename);
+         p.setInt(0, blk.number() + 1);
+         fm.write(blk, p);
+      }
+      fm.write(fm.append(filename), new Page(fm.blockSize())); // formatted as zeros
+      fm.force(filename); // as a commit does
+      long ondisk = new File(dir, filename).length() / fm.blockSize();
+      System.out.println("Length " + (fm.length(filename) - start)
+            + " blocks, " + (ondisk - start) + " on disk");
+
+      FileMgr fm2 = new FileMgr(dir, 400, "file", 8);
+      System.out.println("Length after reopening: "
+            + (fm2.length(filename) - start) + " blocks");
+      p.setInt(0, -1);
+      fm2.read(new BlockId(filename, fm2.length(filename) + 3), p);
+      System.out.println("A block past the end reads as " + p.getInt(0));
+   }
+}
@@ -1,76 +1,209 @@
 package simpledb.file;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Reads and writes blocks of the database files.
+ * Each file is kept by a {@link FileStore} of the kind chosen
+ * for the database: "file", which reads and writes blocks
+ * with positional I/O, "mapped", which also maps the file
+ * into memory so that blocks can be read in place, or "direct",
+ * which uses direct I/O so that blocks are cached only
+ * in the buffer pool. Where direct I/O cannot be used,
+ * "direct" falls back to "file".
+ * A file can be given its own kind of storage before it is opened:
+ * a file that is not read through the buffer pool, such as the log,
+ * is kept in "file" storage whatever the kind chosen, and
+ * a table can be kept in "compressed" storage.
+ * A compressed file stays compressed when it is opened again.
+ * <P>
+ * The files are kept in the database directory, except that
+ * a file can be given its own directory before it is opened,
+ * and the temporary files can be given a directory of their own,
+ * so that the log, the temporary files and chosen tables and
+ * indexes can be on different devices.
+ * Neither kind serializes reads and writes of blocks,
+ * of the same file or of different files;
+ * only appends to the same file are serialized.
+ * <P>
+ * Writes are not synchronous. A block is durable only once
+ * its file is forced, which follows this policy:
+ * the log is forced whenever it is flushed, and so at every commit;
+ * the data files are forced when a transaction completes
+ * and at a checkpoint, which is what undo-only recovery needs;
+ * temporary files are never forced, since they do not survive a restart.
+ */
 public class FileMgr {
    private File dbDirectory;
+   private File tempDirectory;
    private int blocksize;
+   private String storage;
+   private int extentblocks;
+   private int alignment = 1;
    private boolean isNew;
-   private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private Map<String,String> filestorage = new ConcurrentHashMap<>();
+   private Map<String,File> filedirs = new ConcurrentHashMap<>();
+   private Map<String,FileStore> openFiles = new ConcurrentHashMap<>();
+   private volatile OpenFile[] filesBySlot = new OpenFile[64]; // indexed by FileRegistry slot
 
    public FileMgr(File dbDirectory, int blocksize) {
+      this(dbDirectory, blocksize, "file", 1);
+   }
+
+   /**
+    * Creates a file manager whose files are kept
+    * in the specified kind of storage.
+    * @param dbDirectory the database directory
+    * @param blocksize the block size
+    * @param storage "file", "mapped" or "direct"
+    * @param extentblocks the number of blocks a file grows by at a time
+    */
+   public FileMgr(File dbDirectory, int blocksize, String storage, int extentblocks) {
       this.dbDirectory = dbDirectory;
       this.blocksize = blocksize;
+      this.storage = storage;
+      this.extentblocks = Math.max(1, extentblocks);
+      this.tempDirectory = dbDirectory;
       isNew = !dbDirectory.exists();
 
       // create the directory if the database is new
       if (isNew)
          dbDirectory.mkdirs();
 
-      // remove any leftover temporary tables
-      for (String filename : dbDirectory.list())
-         if (filename.startsWith("temp"))
-         		new File(dbDirectory, filename).delete();
+      removeTempFiles(dbDirectory);
+
+      if (storage.equals("direct")) {
+         alignment = DirectFileStore.supported(dbDirectory, blocksize);
+         if (alignment == 0) {
+            alignment = 1;
+            this.storage = "file";
+         }
+      }
+   }
+
+   public void read(BlockId blk, Page p) {
+      try {
+         getFile(blk).read(blk.number(), p.contents());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read block " + blk);
+      }
+   }
+
+   /**
+    * Reads consecutive blocks, starting at blk,
+    * into the pages with a single scattering read.
+    */
+   public void read(BlockId blk, Page[] pages) {
+      try {
+         ByteBuffer[] bbs = new ByteBuffer[pages.length];
+         for (int i=0; i<pages.length; i++)
+            bbs[i] = pages[i].contents();
+         getFile(blk).read(blk.number(), bbs);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read block " + blk);
+      }
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   /**
+    * Returns a read-only page that shows the specified block
+    * in place, or null if the block can only be read by copying it.
+    * Only mapped storage shows blocks in place.
+    * @param blk a reference to a disk block
+    * @return a read-only page of the block, or null
+    */
+   public Page view(BlockId blk) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         ByteBuffer bb = getFile(blk).view(blk.number());
+         return (bb == null) ? null : new Page(bb);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         getFile(blk).write(blk.number(), p.contents());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   /**
+    * Writes the pages to consecutive blocks, starting at blk,
+    * with a single gathering write.
+    * The pages are written through their own views of their
+    * contents, so a page can be written by several threads at once.
+    */
+   public void write(BlockId blk, Page[] pages) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         ByteBuffer[] bbs = new ByteBuffer[pages.length];
+         for (int i=0; i<pages.length; i++)
+            bbs[i] = pages[i].duplicate();
+         getFile(blk).write(blk.number(), bbs);
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new RuntimeException("cannot write block " + blk);
       }
-      return blk;
    }
 
+   public BlockId append(String filename) {
+      try {
+         return new BlockId(filename, getFile(filename).append());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot append block to " + filename);
+      }
+   }
+
+   /**
+    * Returns the number of blocks in the file,
+    * which is kept in memory once the file is open.
+    * @param filename the name of the file
+    * @return the length of the file in blocks
+    */
    public int length(String filename) {
       try {
-         RandomAccessFile f = getFile(filename);
-         return (int)(f.length() / blocksize);
+         return getFile(filename).length();
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
 
+   /**
+    * Forces the writes of the specified file to the disk,
+    * unless it is a temporary file.
+    * @param filename the name of the file
+    */
+   public void force(String filename) {
+      if (isTemp(filename))
+         return;
+      try {
+         getFile(filename).force();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot force " + filename);
+      }
+   }
+
+   /**
+    * Forces the writes of every open file to the disk,
+    * except the temporary files.
+    * Files that have not been written since they were last forced
+    * are skipped.
+    */
+   public void forceAll() {
+      for (String filename : openFiles.keySet())
+         force(filename);
+   }
+
    public boolean isNew() {
       return isNew;
    }
@@ -79,13 +212,200 @@ public class FileMgr {
       return blocksize;
    }
 
-   private RandomAccessFile getFile(String filename) throws IOException {
-      RandomAccessFile f = openFiles.get(filename);
+   /**
+    * Returns the kind of storage of the database's files.
+    * If direct I/O was asked for but cannot be used,
+    * the storage is "file".
+    * @return "file", "mapped" or "direct"
+    */
+   public String storage() {
+      return storage;
+   }
+
+   /**
+    * Returns the alignment, in bytes, that the pages
+    * read and written by the file manager should have.
+    * Only direct I/O needs aligned pages; other pages
+    * are copied through an aligned buffer.
+    * @return the alignment, which is 1 unless the storage is direct
+    */
+   public int alignment() {
+      return alignment;
+   }
+
+   /**
+    * Keeps the specified file in the specified kind of storage,
+    * whatever the kind of storage of the other files.
+    * Has no effect on a file that is already open,
+    * or on a file that is already compressed.
+    * @param filename the name of the file
+    * @param storage "file", "mapped", "direct" or "compressed"
+    */
+   public void setStorage(String filename, String storage) {
+      if (storage.equals("direct") && alignment == 1)
+         storage = "file";
+      filestorage.put(filename, storage);
+   }
+
+   /**
+    * Keeps the specified file in the specified directory
+    * instead of the database directory, creating the directory
+    * if need be. A null directory puts the file back in the
+    * database directory.
+    * Has no effect on a file that is already open.
+    * @param filename the name of the file
+    * @param dir the directory of the file, or null
+    */
+   public void setDirectory(String filename, File dir) {
+      if (dir == null)
+         filedirs.remove(filename);
+      else {
+         dir.mkdirs();
+         filedirs.put(filename, dir);
+      }
+   }
+
+   /**
+    * Returns the directory in which the specified file is kept.
+    * @param filename the name of the file
+    * @return the directory of the file
+    */
+   public File directory(String filename) {
+      return filedirs.getOrDefault(filename,
+                                   isTemp(filename) ? tempDirectory : dbDirectory);
+   }
+
+   /**
+    * Closes the specified file, if it is open, and deletes it,
+    * together with its map if it is compressed,
+    * and its length file if it has one.
+    * The file should no longer be in use by any thread,
+    * and no block of it may be in the buffer pool;
+    * its writes are not forced.
+    * @param filename the name of the file
+    */
+   public synchronized void delete(String filename) {
+      File f = new File(directory(filename), filename);
+      closeFile(filename);
+      f.delete();
+      CompressedFileStore.mapFile(f).delete();
+      ChannelFileStore.lengthFile(f).delete();
+      filedirs.remove(filename);
+      filestorage.remove(filename);
+   }
+
+   /**
+    * Closes every open file, once the database is shut down.
+    * The writes of the files are not forced.
+    */
+   public synchronized void close() {
+      for (String filename : new ArrayList<>(openFiles.keySet()))
+         closeFile(filename);
+   }
+
+   /**
+    * Closes the file, if it is open, and tells the
+    * {@link FileRegistry} that this file manager no longer
+    * has it open, so that its id can be freed.
+    */
+   private void closeFile(String filename) {
+      FileStore store = openFiles.remove(filename);
+      if (store == null)
+         return;
+      OpenFile[] files = filesBySlot;
+      int slot = FileRegistry.slot(FileRegistry.id(filename));
+      if (slot < files.length && files[slot] != null && files[slot].store == store)
+         files[slot] = null;
+      FileRegistry.close(filename);
+      try {
+         store.close();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot close " + filename);
+      }
+   }
+
+   /**
+    * Keeps the temporary files in the specified directory,
+    * removing the temporary files left there by an earlier run.
+    * The directory should not be shared with another database.
+    * @param dir the directory of the temporary files
+    */
+   public void setTempDirectory(File dir) {
+      dir.mkdirs();
+      removeTempFiles(dir);
+      tempDirectory = dir;
+   }
+
+   private void removeTempFiles(File dir) {
+      for (String filename : dir.list())
+         if (isTemp(filename))
+            new File(dir, filename).delete();
+   }
+
+   private boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+
+   /**
+    * Finds the file of the block by its id, without
+    * looking up the name of the file. A block whose id
+    * is not the one the file was opened with is found by name.
+    */
+   private FileStore getFile(BlockId blk) throws IOException {
+      OpenFile[] files = filesBySlot;
+      int id = blk.fileId();
+      int slot = FileRegistry.slot(id);
+      OpenFile f = (slot < files.length) ? files[slot] : null;
+      return (f != null && f.id == id) ? f.store : getFile(blk.fileName());
+   }
+
+   private FileStore getFile(String filename) throws IOException {
+      FileStore f = openFiles.get(filename);
+      if (f == null)
+         f = openFile(filename);
+      return f;
+   }
+
+   /**
+    * Opens the file, unless another thread has just opened it.
+    */
+   private synchronized FileStore openFile(String filename) throws IOException {
+      FileStore f = openFiles.get(filename);
       if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
+         File dir = directory(filename);
+         File dbTable = new File(dir, filename);
+         String kind = CompressedFileStore.mapFile(dbTable).exists() ? "compressed"
+                     : filestorage.getOrDefault(filename, storage);
+         // another device may not take direct I/O
+         if (kind.equals("direct") && !dir.equals(dbDirectory)) {
+            int a = DirectFileStore.supported(dir, blocksize);
+            if (a == 0 || alignment % a != 0)
+               kind = "file";
+         }
+         f = FileStore.create(kind, dbTable, blocksize, extentblocks, alignment);
          openFiles.put(filename, f);
+         int id = FileRegistry.open(filename);
+         int slot = FileRegistry.slot(id);
+         OpenFile[] files = filesBySlot;
+         if (slot >= files.length)
+            files = Arrays.copyOf(files, Math.max(2 * files.length, slot + 1));
+         files[slot] = new OpenFile(id, f);
+         filesBySlot = files;
       }
       return f;
    }
+
+   /**
+    * An open file and the id it was opened with.
+    */
+   private static class OpenFile {
+      final int id;
+      final FileStore store;
+
+      OpenFile(int id, FileStore store) {
+         this.id = id;
+         this.store = store;
+      }
+   }
 }
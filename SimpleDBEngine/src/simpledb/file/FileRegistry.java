@@ -0,0 +1,109 @@
+package simpledb.file;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives each file name an integer id, the first time
+ * the name is seen, and keeps it until the file is deleted.
+ * A {@link BlockId} holds the id of its file as well as the name,
+ * so that comparing and hashing block ids does not touch strings.
+ * The ids are not stored on disk, and may differ from one run to the next.
+ * <P>
+ * The registry is shared by every database in the JVM,
+ * and a name has the same id in all of them.
+ * The registry counts the file managers that have each file open,
+ * and frees the id only once the last of them deletes or closes
+ * the file; no buffer of any database can then hold a block of it.
+ * The low bits of an id are a dense slot number, which a file
+ * manager uses to index its open files. The slot of a freed id
+ * is given to the next new name together with a new generation
+ * in the high bits, so that files that come and go, such as the
+ * segments of the log, do not make the registry grow, and a block
+ * id left over from a deleted file is not equal to any block id
+ * of the file that gets its slot.
+ */
+public class FileRegistry {
+   private static final int SLOT_BITS = 20;
+   private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+   private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+   private static Map<String,Integer> ids = new ConcurrentHashMap<>();
+   private static int[] generations = new int[64];
+   private static int[] users = new int[64]; // file managers having the file open
+   private static int count = 0;
+   private static Deque<Integer> freeSlots = new ArrayDeque<>();
+
+   /**
+    * Returns the id of the specified file,
+    * registering the file if it has no id yet.
+    * @param filename the name of the file
+    * @return the id of the file
+    */
+   public static int id(String filename) {
+      Integer id = ids.get(filename);
+      return (id != null) ? id : register(filename);
+   }
+
+   /**
+    * Returns the slot of the specified id, which is
+    * not shared with any other file registered at the same time.
+    * @param id the id of a file
+    * @return the slot of the id
+    */
+   public static int slot(int id) {
+      return id & SLOT_MASK;
+   }
+
+   /**
+    * Notes that a file manager has opened the specified file,
+    * so that its id is kept until the file manager deletes
+    * or closes the file.
+    * @param filename the name of the file
+    * @return the id of the file
+    */
+   static synchronized int open(String filename) {
+      int id = id(filename);
+      users[slot(id)]++;
+      return id;
+   }
+
+   /**
+    * Notes that a file manager that had the specified file open
+    * has deleted or closed it. Once no file manager has the file
+    * open, its id is freed, and its slot can be given to a new file.
+    * @param filename the name of the file
+    */
+   static synchronized void close(String filename) {
+      Integer id = ids.get(filename);
+      if (id == null)
+         return;
+      int slot = slot(id);
+      if (users[slot] > 0 && --users[slot] == 0) {
+         ids.remove(filename);
+         generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+         freeSlots.push(slot);
+      }
+   }
+
+   private static synchronized int register(String filename) {
+      Integer id = ids.get(filename);
+      if (id != null)
+         return id;
+      int slot;
+      if (!freeSlots.isEmpty())
+         slot = freeSlots.pop();
+      else {
+         if (count == users.length) {
+            users = Arrays.copyOf(users, 2 * count);
+            generations = Arrays.copyOf(generations, 2 * count);
+         }
+         if (count > SLOT_MASK)
+            throw new RuntimeException("too many files");
+         slot = count++;
+      }
+      id = (generations[slot] << SLOT_BITS) | slot;
+      ids.put(filename, id);
+      return id;
+   }
+}
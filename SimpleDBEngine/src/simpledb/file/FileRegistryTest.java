@@ -0,0 +1,59 @@
+package simpledb.file;
+
+import java.io.File;
+import java.util.*;
+import simpledb.log.LogMgr;
+import simpledb.buffer.*;
+
+/**
+ * Creates and deletes many files, one after another, as the log
+ * does with its segments, and checks that the slots of the deleted
+ * files are reused under new ids, and that each block is written
+ * to and read from its own file and not to one that had the same slot.
+ * Then deletes a file in one database while another database
+ * has a block of a file of the same name in its buffer pool,
+ * and checks that the id is kept, so that a new file of
+ * the other database is not given the cached block.
+ */
+public class FileRegistryTest {
+   private static final int NUM_FILES = 1000;
+
+   public static void main(String[] args) {
+      FileMgr fm = new FileMgr(new File("fileregistrytest"), 400);
+      Set<Integer> slots = new HashSet<>();
+      Set<Integer> ids = new HashSet<>();
+      int errors = 0;
+      for (int i=0; i<NUM_FILES; i++) {
+         String filename = "segment" + i;
+         BlockId blk = new BlockId(filename, 0);
+         slots.add(FileRegistry.slot(blk.fileId()));
+         ids.add(blk.fileId());
+         Page p = new Page(fm.blockSize());
+         p.setInt(0, i);
+         fm.write(blk, p);
+         Page q = new Page(fm.blockSize());
+         fm.read(blk, q);
+         if (q.getInt(0) != i || !blk.fileName().equals(filename) || fm.length(filename) != 1)
+            errors++;
+         fm.delete(filename);
+      }
+      System.out.println(NUM_FILES + " files created and deleted used " + slots.size()
+                         + " slots and " + ids.size() + " ids; expected 1 and " + NUM_FILES);
+      System.out.println(errors + " blocks were not in their own file");
+
+      FileMgr fm1 = new FileMgr(new File("fileregistrytest1"), 400);
+      BufferMgr bm1 = new BufferMgr(fm1, new LogMgr(fm1, "simpledb.log"), 8);
+      FileMgr fm2 = new FileMgr(new File("fileregistrytest2"), 400);
+      Buffer buff = bm1.pin(fm1.append("a.tbl"));
+      buff.contents().setInt(0, 111);
+      buff.setModified(1, -1);
+      bm1.unpin(buff);
+      fm2.append("a.tbl");
+      fm2.delete("a.tbl");
+      BlockId newblk = fm1.append("b.tbl");
+      buff = bm1.pin(new BlockId("b.tbl", newblk.number()));
+      System.out.println("A new block of the first database holds "
+                         + buff.contents().getInt(0) + "; expected 0");
+      bm1.unpin(buff);
+   }
+}
@@ -0,0 +1,104 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The storage of a single database file, as used by the {@link FileMgr}.
+ * A file can be stored in one of four ways:
+ * "file", in which blocks are copied to and from the pages
+ * with positional reads and writes of the file's channel,
+ * "mapped", in which the file is also mapped into memory in extents,
+ * so that a block can be copied from memory or read in place, or
+ * "direct", in which the file is read and written with direct I/O,
+ * bypassing the operating system's cache, or
+ * "compressed", in which each block is compressed and a map
+ * translates block numbers to where the blocks are stored.
+ * The first three produce the same file, so a database can be
+ * reopened with another of them; a compressed file is
+ * recognized by its map.
+ */
+interface FileStore {
+   /**
+    * Reads the specified block into the buffer.
+    * @param blknum the block number
+    * @param bb the buffer, positioned at 0
+    */
+   void read(int blknum, ByteBuffer bb) throws IOException;
+
+   /**
+    * Reads consecutive blocks, starting at the specified block,
+    * into the buffers.
+    * @param blknum the number of the first block
+    * @param bbs the buffers, positioned at 0
+    */
+   void read(int blknum, ByteBuffer[] bbs) throws IOException;
+
+   /**
+    * Writes the buffer to the specified block.
+    * @param blknum the block number
+    * @param bb the buffer, positioned at 0
+    */
+   void write(int blknum, ByteBuffer bb) throws IOException;
+
+   /**
+    * Writes the buffers to consecutive blocks,
+    * starting at the specified block.
+    * @param blknum the number of the first block
+    * @param bbs the buffers, positioned at 0
+    */
+   void write(int blknum, ByteBuffer[] bbs) throws IOException;
+
+   /**
+    * Appends a block of zeros to the file.
+    * @return the number of the new block
+    */
+   int append() throws IOException;
+
+   /**
+    * Forces the blocks written since the last force to the disk,
+    * together with the length of the file.
+    * Writes are not synchronous, so a block is only durable
+    * once its file has been forced.
+    */
+   void force() throws IOException;
+
+   /**
+    * Returns the number of blocks in the file.
+    * @return the length of the file in blocks
+    */
+   int length();
+
+   /**
+    * Returns a read-only view of the specified block,
+    * if the block can be read in place, and null otherwise.
+    * @param blknum the block number
+    * @return a view of the block, or null
+    */
+   ByteBuffer view(int blknum);
+
+   /**
+    * Closes the file, without forcing it.
+    */
+   void close() throws IOException;
+
+   /**
+    * Creates the storage of the specified kind for a file.
+    * @param storage "file", "mapped", "direct" or "compressed"
+    * @param f the file
+    * @param blocksize the block size
+    * @param extentblocks the number of blocks the file grows by at a time
+    * @param alignment the alignment that direct I/O needs
+    * @return the storage of the file
+    */
+   static FileStore create(String storage, File f, int blocksize, int extentblocks,
+                           int alignment) throws IOException {
+      switch (storage) {
+         case "file":   return new ChannelFileStore(f, blocksize, extentblocks);
+         case "mapped": return new MappedFileStore(f, blocksize, extentblocks);
+         case "direct": return new DirectFileStore(f, blocksize, extentblocks, alignment);
+         case "compressed": return new CompressedFileStore(f, blocksize);
+         default: throw new IllegalArgumentException("unknown storage: " + storage);
+      }
+   }
+}
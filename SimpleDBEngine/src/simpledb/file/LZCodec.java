@@ -0,0 +1,148 @@
+package simpledb.file;
+
+import java.util.Arrays;
+
+/**
+ * A small LZ77 codec in the style of LZ4, used to compress pages.
+ * The compressed data is a series of sequences, each a token byte,
+ * a run of literal bytes, and a match: a 2-byte offset back into
+ * the bytes already produced and a length of at least 4.
+ * The high half of the token holds the number of literals and
+ * the low half the match length less 4; a half of 15 means that
+ * more length bytes follow, each adding up to 255.
+ * The last sequence has literals only.
+ * <P>
+ * The compressor is greedy and finds matches through a hash table
+ * of 4-byte prefixes, so it is fast rather than thorough;
+ * pages of short strings padded with zeros compress well.
+ */
+class LZCodec {
+   private static final int MIN_MATCH = 4;
+   private static final int HASH_BITS = 12;
+   private static final int MAX_OFFSET = 65535;
+
+   /**
+    * Returns the largest size that compressing
+    * the specified number of bytes can produce.
+    * @param len the number of bytes to compress
+    * @return the size of a large enough output array
+    */
+   static int maxCompressedLength(int len) {
+      return len + len / 255 + 16;
+   }
+
+   /**
+    * Compresses the bytes of the source array into the
+    * destination array, which must have room for
+    * {@link #maxCompressedLength(int)} bytes at the offset.
+    * @param src the bytes to compress
+    * @param srclen the number of bytes to compress
+    * @param dst the destination array
+    * @param dstoff the offset of the compressed data in dst
+    * @return the length of the compressed data
+    */
+   static int compress(byte[] src, int srclen, byte[] dst, int dstoff) {
+      int[] table = new int[1 << HASH_BITS];
+      Arrays.fill(table, -1);
+      int anchor = 0, i = 0, d = dstoff;
+      while (i <= srclen - MIN_MATCH) {
+         int h = hash(src, i);
+         int ref = table[h];
+         table[h] = i;
+         if (ref < 0 || i - ref > MAX_OFFSET || !prefixMatches(src, ref, i)) {
+            i++;
+            continue;
+         }
+         int len = MIN_MATCH;
+         while (i + len < srclen && src[ref + len] == src[i + len])
+            len++;
+         int token = d;
+         d = writeSequence(src, anchor, i - anchor, dst, d);
+         dst[token] |= (byte) Math.min(len - MIN_MATCH, 15);
+         dst[d++] = (byte) (i - ref);
+         dst[d++] = (byte) ((i - ref) >>> 8);
+         d = writeLength(dst, d, len - MIN_MATCH);
+         i += len;
+         anchor = i;
+      }
+      d = writeSequence(src, anchor, srclen - anchor, dst, d);
+      return d - dstoff;
+   }
+
+   /**
+    * Decompresses the source bytes into the destination array.
+    * @param src the array holding the compressed data
+    * @param srcoff the offset of the compressed data
+    * @param srclen the length of the compressed data
+    * @param dst the destination array, large enough for the result
+    * @return the number of bytes produced
+    */
+   static int decompress(byte[] src, int srcoff, int srclen, byte[] dst) {
+      int s = srcoff, end = srcoff + srclen, d = 0;
+      while (s < end) {
+         int token = src[s++] & 0xFF;
+         int litlen = token >>> 4;
+         if (litlen == 15) {
+            int b;
+            do {
+               b = src[s++] & 0xFF;
+               litlen += b;
+            } while (b == 255);
+         }
+         System.arraycopy(src, s, dst, d, litlen);
+         s += litlen;
+         d += litlen;
+         if (s >= end)
+            break;
+         int offset = (src[s++] & 0xFF) | ((src[s++] & 0xFF) << 8);
+         int matchlen = token & 0x0F;
+         if (matchlen == 15) {
+            int b;
+            do {
+               b = src[s++] & 0xFF;
+               matchlen += b;
+            } while (b == 255);
+         }
+         matchlen += MIN_MATCH;
+         // the match may overlap the bytes it produces
+         for (int k=0; k<matchlen; k++)
+            dst[d + k] = dst[d - offset + k];
+         d += matchlen;
+      }
+      return d;
+   }
+
+   /**
+    * Writes the token and the literals of a sequence;
+    * the match half of the token is filled in by the caller.
+    */
+   private static int writeSequence(byte[] src, int start, int litlen, byte[] dst, int d) {
+      dst[d++] = (byte) (Math.min(litlen, 15) << 4);
+      d = writeLength(dst, d, litlen);
+      System.arraycopy(src, start, dst, d, litlen);
+      return d + litlen;
+   }
+
+   private static int writeLength(byte[] dst, int d, int len) {
+      if (len < 15)
+         return d;
+      len -= 15;
+      while (len >= 255) {
+         dst[d++] = (byte) 255;
+         len -= 255;
+      }
+      dst[d++] = (byte) len;
+      return d;
+   }
+
+   private static int hash(byte[] b, int i) {
+      int v = (b[i] & 0xFF) | (b[i+1] & 0xFF) << 8
+            | (b[i+2] & 0xFF) << 16 | (b[i+3] & 0xFF) << 24;
+      return (v * -1640531535) >>> (32 - HASH_BITS);
+   }
+
+   private static boolean prefixMatches(byte[] b, int ref, int i) {
+      return b[ref] == b[i] && b[ref+1] == b[i+1]
+            && b[ref+2] == b[i+2] && b[ref+3] == b[i+3];
+   }
+}
@@ -0,0 +1,107 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * Stores a file as an ordinary file that is also mapped into memory,
+ * one extent of EXTENT_BLOCKS blocks at a time.
+ * An extent is mapped once the file holds all of its blocks,
+ * so mapping never changes the length of the file;
+ * the blocks past the last full extent are read and written
+ * through the file's channel, as in a {@link ChannelFileStore}.
+ * <P>
+ * A block in a mapped extent is copied to and from memory
+ * without a system call, and can be read in place through a view.
+ * Forcing the file also forces its mapped extents.
+ */
+class MappedFileStore extends ChannelFileStore {
+   static final int EXTENT_BLOCKS = 256;
+   private volatile MappedByteBuffer[] extents = new MappedByteBuffer[0];
+
+   MappedFileStore(File file, int blocksize, int extentblocks) throws IOException {
+      super(file, blocksize, extentblocks);
+      mapExtents(length() / EXTENT_BLOCKS);
+   }
+
+   public void read(int blknum, ByteBuffer bb) throws IOException {
+      ByteBuffer src = block(blknum);
+      if (src == null)
+         super.read(blknum, bb);
+      else
+         bb.put(src);
+   }
+
+   public void read(int blknum, ByteBuffer[] bbs) throws IOException {
+      for (int i=0; i<bbs.length; i++)
+         read(blknum + i, bbs[i]);
+   }
+
+   public void write(int blknum, ByteBuffer bb) throws IOException {
+      MappedByteBuffer extent = extent(blknum);
+      if (extent == null)
+         super.write(blknum, bb);
+      else {
+         int offset = (blknum % EXTENT_BLOCKS) * blocksize;
+         extent.slice(offset, blocksize).put(bb);
+         unforced = true;
+      }
+   }
+
+   public void write(int blknum, ByteBuffer[] bbs) throws IOException {
+      for (int i=0; i<bbs.length; i++)
+         write(blknum + i, bbs[i]);
+   }
+
+   /**
+    * Appends the block, and maps its extent
+    * if the block is the last one of the extent.
+    */
+   public int append() throws IOException {
+      int blknum = super.append();
+      if ((blknum + 1) % EXTENT_BLOCKS == 0)
+         mapExtents((blknum + 1) / EXTENT_BLOCKS);
+      return blknum;
+   }
+
+   public void force() throws IOException {
+      if (unforced)
+         for (MappedByteBuffer extent : extents)
+            extent.force();
+      super.force();
+   }
+
+   public ByteBuffer view(int blknum) {
+      ByteBuffer bb = block(blknum);
+      return (bb == null) ? null : bb.asReadOnlyBuffer();
+   }
+
+   private ByteBuffer block(int blknum) {
+      MappedByteBuffer extent = extent(blknum);
+      if (extent == null)
+         return null;
+      return extent.slice((blknum % EXTENT_BLOCKS) * blocksize, blocksize);
+   }
+
+   private MappedByteBuffer extent(int blknum) {
+      MappedByteBuffer[] e = extents;
+      int i = blknum / EXTENT_BLOCKS;
+      return (i < e.length) ? e[i] : null;
+   }
+
+   /**
+    * Maps the extents that are not yet mapped,
+    * up to the specified number of extents.
+    */
+   private synchronized void mapExtents(int numextents) throws IOException {
+      if (numextents <= extents.length)
+         return;
+      MappedByteBuffer[] e = Arrays.copyOf(extents, numextents);
+      long extentsize = (long) EXTENT_BLOCKS * blocksize;
+      for (int i=extents.length; i<numextents; i++)
+         e[i] = fc.map(MapMode.READ_WRITE, i * extentsize, extentsize);
+      extents = e;
+   }
+}
@@ -0,0 +1,54 @@
+package simpledb.file;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Writes a file large enough to have mapped extents,
+ * through transactions on a database with mapped storage,
+ * and checks that committed changes are read back
+ * and rolled-back changes are not.
+ */
+public class MappedStorageTest {
+   public static void main(String[] args) {
+      SimpleDB.STORAGE = "mapped";
+      SimpleDB db = new SimpleDB("mappedtest", 400, 8);
+      SimpleDB.STORAGE = "file";
+      String filename = "testfile";
+      int numblocks = 2 * MappedFileStore.EXTENT_BLOCKS + 10;
+
+      Transaction tx1 = db.newTx();
+      for (int i=tx1.size(filename); i<numblocks; i++)
+         tx1.append(filename);
+      for (int i=0; i<numblocks; i++)
+         write(tx1, new BlockId(filename, i), i);
+      tx1.commit();
+
+      Transaction tx2 = db.newTx();
+      for (int i=0; i<numblocks; i+=7)
+         write(tx2, new BlockId(filename, i), -1);
+      tx2.rollback();
+
+      Transaction tx3 = db.newTx();
+      int errors = 0, views = 0;
+      for (int i=0; i<numblocks; i++) {
+         BlockId blk = new BlockId(filename, i);
+         tx3.pin(blk);
+         if (tx3.getInt(blk, 80) != i)
+            errors++;
+         tx3.unpin(blk);
+         if (db.fileMgr().view(blk) != null)
+            views++;
+      }
+      tx3.commit();
+      System.out.println(views + " of " + numblocks + " blocks can be read in place");
+      System.out.println(errors == 0 ? "All blocks read back correctly"
+                                     : errors + " blocks read back wrong");
+   }
+
+   private static void write(Transaction tx, BlockId blk, int val) {
+      tx.pin(blk);
+      tx.setInt(blk, 80, val, true);
+      tx.unpin(blk);
+   }
+}
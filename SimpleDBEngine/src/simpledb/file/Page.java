@@ -17,6 +17,11 @@ public class Page {
       bb = ByteBuffer.wrap(b);
    }
 
+   // For creating data buffers on a slice of a larger region
+   public Page(ByteBuffer bb) {
+      this.bb = bb;
+   }
+
    public int getInt(int offset) {
       return bb.getInt(offset);
    }
@@ -25,6 +30,14 @@ public class Page {
       bb.putInt(offset, n);
    }
 
+   public long getLong(int offset) {
+      return bb.getLong(offset);
+   }
+
+   public void setLong(int offset, long n) {
+      bb.putLong(offset, n);
+   }
+
    public byte[] getBytes(int offset) {
       bb.position(offset);
       int length = bb.getInt();
@@ -59,4 +72,11 @@ public class Page {
       bb.position(0);
       return bb;
    }
+
+   // a package private method, needed by FileMgr for gathering writes
+   ByteBuffer duplicate() {
+      ByteBuffer dup = bb.duplicate();
+      dup.position(0);
+      return dup;
+   }
 }
@@ -0,0 +1,95 @@
+package simpledb.file;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.metadata.*;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.index.planner.IndexSelectPlan;
+
+/**
+ * Compares the two kinds of storage of the file manager.
+ * For each kind, it builds the same indexed table, much larger
+ * than the buffer pool, and then times full table scans
+ * and point lookups through the index,
+ * so that most pins have to read a block from storage.
+ * The databases are kept, so later runs only time the queries.
+ */
+public class StorageBenchmark {
+   private static final String[] STORAGES = {"file", "mapped"};
+   private static final int NUM_RECORDS = 10000;
+   private static final int NUM_SCANS = 50;
+   private static final int NUM_LOOKUPS = 5000;
+
+   public static void main(String[] args) {
+      System.out.println("Storage,Scan Records/sec,Lookups/sec");
+      for (String storage : STORAGES) {
+         SimpleDB.STORAGE = storage;
+         SimpleDB db = new SimpleDB("storagebenchmark-" + storage);
+         MetadataMgr mdm = db.mdMgr();
+         load(db);
+         Transaction tx = db.newTx();
+         Plan p = new TablePlan(tx, "bench", mdm);
+         IndexInfo ii = mdm.getIndexInfo("bench", tx).get("a");
+         scan(p, 5);  // warm up the page cache and the JIT
+         lookup(p, ii, NUM_LOOKUPS / 10);
+         long scanrate = scan(p, NUM_SCANS);
+         long lookuprate = lookup(p, ii, NUM_LOOKUPS);
+         System.out.println(storage + "," + scanrate + "," + lookuprate);
+         tx.commit();
+      }
+      SimpleDB.STORAGE = "file";
+   }
+
+   private static void load(SimpleDB db) {
+      Transaction tx = db.newTx();
+      if (!db.mdMgr().getIndexInfo("bench", tx).isEmpty()) {
+         tx.commit();
+         return;
+      }
+      Planner planner = db.planner();
+      planner.executeUpdate("create table bench(A int, B varchar(20))", tx);
+      planner.executeUpdate("create index benchidx on bench(A)", tx);
+      for (int i=0; i<NUM_RECORDS; i++)
+         planner.executeUpdate("insert into bench(A,B) values(" + i + ", 'record" + i + "')", tx);
+      tx.commit();
+   }
+
+   /**
+    * Scans the whole table the specified number of times,
+    * and returns the number of records read per second.
+    */
+   private static long scan(Plan p, int numscans) {
+      long count = 0;
+      long start = System.nanoTime();
+      for (int i=0; i<numscans; i++) {
+         Scan s = p.open();
+         while (s.next()) {
+            s.getString("b");
+            count++;
+         }
+         s.close();
+      }
+      long elapsed = System.nanoTime() - start;
+      return (long) (count / (elapsed / 1e9));
+   }
+
+   /**
+    * Looks up the specified number of random keys through the index,
+    * and returns the number of lookups per second.
+    */
+   private static long lookup(Plan p, IndexInfo ii, int numlookups) {
+      Random rand = new Random(448);
+      long start = System.nanoTime();
+      for (int i=0; i<numlookups; i++) {
+         Constant key = new Constant(rand.nextInt(NUM_RECORDS));
+         Scan s = new IndexSelectPlan(p, ii, key).open();
+         while (s.next())
+            s.getString("b");
+         s.close();
+      }
+      long elapsed = System.nanoTime() - start;
+      return (long) (numlookups / (elapsed / 1e9));
+   }
+}
@@ -1,6 +1,7 @@
 package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
@@ -155,4 +156,14 @@ public class BTreeIndex implements Index {
    public static int searchCost(int numblocks, int rpb) {
       return 1 + (int)(Math.log(numblocks) / Math.log(rpb));
    }
+
+   /**
+    * Returns the names of the files of the specified index:
+    * the leaf file and the directory file.
+    * @param idxname the name of the index
+    * @return the names of the index's files
+    */
+   public static List<String> fileNames(String idxname) {
+      return Arrays.asList(idxname + "leaf", idxname + "dir");
+   }
 }
@@ -105,7 +105,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.isCompressed(),
+                      data.tablespace(), tx);
       return 0;
    }
    
@@ -115,7 +116,13 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateIndex(CreateIndexData data, Transaction tx) {
-      mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), tx);
+      mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(),
+                      data.tablespace(), tx);
+      return 0;
+   }
+   
+   public int executeCreateTablespace(CreateTablespaceData data, Transaction tx) {
+      mdm.createTablespace(data.tablespaceName(), data.location(), tx);
       return 0;
    }
 }
@@ -13,6 +13,8 @@ import simpledb.jdbc.ConnectionAdapter;
 
 class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
+   private String dbname;
+   private boolean closed = false;
    private Transaction currentTx;
    private Planner planner;
 
@@ -21,8 +23,9 @@ class EmbeddedConnection extends ConnectionAdapter {
     * and begins a new transaction for it.
     * @throws RemoteException
     */
-   public EmbeddedConnection(SimpleDB db) {
+   public EmbeddedConnection(SimpleDB db, String dbname) {
       this.db = db;
+      this.dbname = dbname;
       currentTx = db.newTx();
       planner = db.planner();
    }
@@ -36,9 +39,14 @@ class EmbeddedConnection extends ConnectionAdapter {
 
    /**
     * Closes the connection by committing the current transaction.
+    * The database is shut down when its last connection is closed.
     */
    public void close() throws SQLException {
+      if (closed)
+         return;
+      closed = true;
       currentTx.commit();
+      EmbeddedDriver.disconnect(dbname);
    }
 
    /**
@@ -1,6 +1,6 @@
 package simpledb.jdbc.embedded;
 
-import java.util.Properties;
+import java.util.*;
 import java.sql.SQLException;
 import simpledb.server.SimpleDB;
 import simpledb.jdbc.DriverAdapter;
@@ -11,15 +11,44 @@ import simpledb.jdbc.DriverAdapter;
  */
 
 public class EmbeddedDriver extends DriverAdapter {   
+   // the open databases, shared by the connections to each of them
+   private static Map<String,SimpleDB> databases = new HashMap<>();
+   private static Map<String,Integer> connections = new HashMap<>();
+
    /**
     * Creates a new RemoteConnectionImpl object and 
     * returns it.
+    * The connections to a database share one instance of it,
+    * which is started by the first of them.
     * @see simpledb.jdbc.network.RemoteDriver#connect()
     */
    public EmbeddedConnection connect(String url, Properties p) throws SQLException {
       String dbname = url.replace("jdbc:simpledb:", "");
-      SimpleDB db = new SimpleDB(dbname);
-      return new EmbeddedConnection(db);
+      return new EmbeddedConnection(open(dbname), dbname);
+   }
+
+   private static synchronized SimpleDB open(String dbname) {
+      SimpleDB db = databases.get(dbname);
+      if (db == null) {
+         db = new SimpleDB(dbname);
+         databases.put(dbname, db);
+      }
+      connections.merge(dbname, 1, Integer::sum);
+      return db;
+   }
+
+   /**
+    * Notes that a connection to the database has been closed,
+    * and shuts the database down once no connection is left.
+    * Called by {@link EmbeddedConnection#close()}.
+    * @param dbname the name of the database
+    */
+   static synchronized void disconnect(String dbname) {
+      int left = connections.merge(dbname, -1, Integer::sum);
+      if (left == 0) {
+         connections.remove(dbname);
+         databases.remove(dbname).shutdown();
+      }
    }
 }
 
@@ -0,0 +1,55 @@
+package simpledb.jdbc.embedded;
+
+import java.io.File;
+import java.sql.*;
+import simpledb.server.SimpleDB;
+
+/**
+ * Opens two connections to a database, and checks that they
+ * share one instance of it, which keeps running until the second
+ * connection is closed. Once both are closed, the background threads
+ * of the database must be stopped and its buffer pool dumped.
+ */
+public class EmbeddedDriverTest {
+   private static final String DIRNAME = "embeddeddrivertest";
+   private static final String[] THREADS = {"checkpointer", "buffer writer",
+         "buffer prefetcher", "buffer prewarm", "log writer"};
+
+   public static void main(String[] args) throws SQLException {
+      Driver d = new EmbeddedDriver();
+      Connection conn1 = d.connect("jdbc:simpledb:" + DIRNAME, null);
+      Connection conn2 = d.connect("jdbc:simpledb:" + DIRNAME, null);
+      Statement stmt1 = conn1.createStatement();
+      stmt1.executeUpdate("create table t(A int)");
+      conn1.close();
+      Statement stmt2 = conn2.createStatement();
+      for (int i=0; i<10; i++)
+         stmt2.executeUpdate("insert into t(A) values(" + i + ")");
+      System.out.println("After the first connection is closed, "
+                         + threads() + " background threads are running");
+      conn2.close();
+      System.out.println("After the second connection is closed, "
+                         + threads() + " background threads are running; expected 0");
+      System.out.println("The buffer pool was "
+                         + (new File(DIRNAME, SimpleDB.BUFFER_DUMP_FILE).exists() ? "" : "not ")
+                         + "dumped");
+
+      Connection conn3 = d.connect("jdbc:simpledb:" + DIRNAME, null);
+      ResultSet rs = conn3.createStatement().executeQuery("select A from t");
+      int count = 0;
+      while (rs.next())
+         count++;
+      rs.close();
+      conn3.close();
+      System.out.println("A new connection finds " + count + " records; expected 10");
+   }
+
+   private static int threads() {
+      int count = 0;
+      for (Thread t : Thread.getAllStackTraces().keySet())
+         for (String name : THREADS)
+            if (t.getName().equals(name) && t.isAlive())
+               count++;
+      return count;
+   }
+}
@@ -0,0 +1,74 @@
+package simpledb.log;
+
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures commit throughput as the number of clients grows,
+ * with and without a commit delay.
+ * Each client runs small transactions that each update
+ * one block of a file of its own, so the clients never wait
+ * for each other's locks, only for the disk.
+ * The number of commits per force of the log shows
+ * how many commits shared each force.
+ */
+public class GroupCommitBenchmark {
+   private static final int[] CLIENTS = {1, 2, 4, 8, 16};
+   private static final int[] DELAYS = {0, 2}; // milliseconds
+   private static final int TXS_PER_CLIENT = 200;
+
+   public static void main(String[] args) {
+      SimpleDB.BUFFER_WRITER_DELAY = 0;
+      SimpleDB.READ_AHEAD_BLOCKS = 0;
+      SimpleDB db = new SimpleDB("groupcommitbenchmark", 400, 64);
+      LogMgr lm = db.logMgr();
+      for (int c=0; c<CLIENTS[CLIENTS.length-1]; c++) {
+         Transaction tx = db.newTx();
+         if (tx.size(fileName(c)) == 0)
+            tx.append(fileName(c));
+         tx.commit();
+      }
+      System.out.println("Clients,Delay (ms),Commits/sec,Commits per log force");
+      for (int delay : DELAYS)
+         for (int n : CLIENTS) {
+            lm.setCommitDelay(delay, n);
+            long forces = lm.forces();
+            long begin = System.nanoTime();
+            runClients(db, n);
+            long elapsed = System.nanoTime() - begin;
+            int commits = n * TXS_PER_CLIENT;
+            forces = lm.forces() - forces;
+            System.out.printf("%d,%d,%d,%.1f%n", n, delay,
+                  commits * 1000000000L / elapsed, (double) commits / forces);
+         }
+   }
+
+   private static void runClients(SimpleDB db, int numclients) {
+      Thread[] threads = new Thread[numclients];
+      for (int c=0; c<numclients; c++) {
+         BlockId blk = new BlockId(fileName(c), 0);
+         threads[c] = new Thread(() -> {
+            for (int i=0; i<TXS_PER_CLIENT; i++) {
+               Transaction tx = db.newTx();
+               tx.pin(blk);
+               tx.setInt(blk, 80, i, true);
+               tx.commit();
+            }
+         });
+      }
+      for (Thread t : threads)
+         t.start();
+      try {
+         for (Thread t : threads)
+            t.join();
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static String fileName(int client) {
+      return "client" + client;
+   }
+}
@@ -0,0 +1,84 @@
+package simpledb.log;
+
+import java.io.File;
+import java.util.*;
+import simpledb.file.*;
+
+/**
+ * Appends records to a log of small segments and flushes
+ * part of it, then writes the rest without forcing it, and
+ * simulates a crash in which the block after the forced ones
+ * did not reach the disk although later blocks did.
+ * The log is opened again by a new log manager, which must end
+ * the log before the hole, and keep it ending there once
+ * more records are appended and it is opened once more.
+ */
+public class LogHoleTest {
+   private static final String DIRNAME = "logholetest";
+   private static final int BLOCKSIZE = 400;
+   private static final int NUM_RECORDS = 100;
+   private static final int FORCED_RECORDS = 20;
+   private static final int SEGMENT_BLOCKS = 4;
+
+   public static void main(String[] args) {
+      LogMgr lm = openLog();
+      long[] lsns = new long[NUM_RECORDS + 1];
+      for (int i=1; i<=NUM_RECORDS; i++) {
+         lsns[i] = lm.append(createLogRecord("record" + i, i));
+         if (i == FORCED_RECORDS)
+            lm.flush(lsns[i]);
+      }
+      lm.iterator(); // writes every block, without forcing them
+
+      long hole = (lsns[FORCED_RECORDS] >>> LogMgr.OFFSET_BITS) + 1;
+      int expected = 0;
+      for (int i=1; i<=NUM_RECORDS; i++)
+         if ((lsns[i] >>> LogMgr.OFFSET_BITS) < hole)
+            expected = i;
+      FileMgr fm = new FileMgr(new File(DIRNAME), BLOCKSIZE);
+      fm.write(lm.block(hole), new Page(BLOCKSIZE));
+      System.out.println("Block " + hole + " of " + (lsns[NUM_RECORDS] >>> LogMgr.OFFSET_BITS)
+                         + " was lost in the crash");
+
+      lm = openLog();
+      List<Integer> recs = records(lm);
+      System.out.println("After the crash the log holds records " + recs.get(recs.size()-1)
+                         + " to " + recs.get(0) + "; expected 1 to " + expected);
+
+      for (int i=NUM_RECORDS+1; i<=NUM_RECORDS+10; i++)
+         lm.flush(lm.append(createLogRecord("record" + i, i)));
+      recs = records(openLog());
+      boolean inOrder = recs.size() == expected + 10;
+      for (int i=0; i<recs.size() && inOrder; i++) {
+         int n = recs.get(recs.size() - 1 - i);
+         inOrder = (i < expected) ? n == i + 1 : n == NUM_RECORDS + 1 + i - expected;
+      }
+      System.out.println("After 10 more records it holds " + recs.size() + " records, "
+                         + (inOrder ? "in order" : "not in order"));
+   }
+
+   private static LogMgr openLog() {
+      FileMgr fm = new FileMgr(new File(DIRNAME), BLOCKSIZE);
+      return new LogMgr(fm, "simpledb.log", 2, SEGMENT_BLOCKS);
+   }
+
+   private static List<Integer> records(LogMgr lm) {
+      List<Integer> recs = new ArrayList<>();
+      Iterator<byte[]> iter = lm.iterator();
+      while (iter.hasNext()) {
+         Page p = new Page(iter.next());
+         String s = p.getString(0);
+         recs.add(p.getInt(Page.maxLength(s.length())));
+      }
+      return recs;
+   }
+
+   private static byte[] createLogRecord(String s, int n) {
+      int npos = Page.maxLength(s.length());
+      byte[] b = new byte[npos + Integer.BYTES];
+      Page p = new Page(b);
+      p.setString(0, s);
+      p.setInt(npos, n);
+      return b;
+   }
+}
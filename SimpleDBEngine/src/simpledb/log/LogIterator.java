@@ -1,31 +1,47 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
 import simpledb.file.*;
 
 /**
  * A class that provides the ability to move through the
  * records of the log file in reverse order.
+ * The first block is read by itself; after that,
+ * the iterator reads the blocks before it in batches,
+ * each with a single scattering read, so that a long
+ * backward pass such as recovery reads the log in large pieces.
+ * A batch does not reach past the start of a segment file,
+ * or past the first block that had not been truncated
+ * when the iterator was created.
  * 
  * @author Edward Sciore
  */
 class LogIterator implements Iterator<byte[]> {
+   private static final int READ_AHEAD_BLOCKS = 16;
+   private LogMgr lm;
    private FileMgr fm;
-   private BlockId blk;
+   private long blknum;
+   private long firstBlock;
    private Page p;
+   private Page[] batch = new Page[0];
+   private long batchstart;
    private int currentpos;
    private int boundary;
 
    /**
     * Creates an iterator for the records in the log file,
     * positioned after the last log record.
+    * @param lm the log manager, which locates the blocks
+    * @param fm the file manager
+    * @param blknum the number of the last block of the log
+    * @param firstBlock the number of the first block of the log
     */
-   public LogIterator(FileMgr fm, BlockId blk) {
+   public LogIterator(LogMgr lm, FileMgr fm, long blknum, long firstBlock) {
+      this.lm = lm;
       this.fm = fm;
-      this.blk = blk;
-      byte[] b = new byte[fm.blockSize()];
-      p = new Page(b);
-      moveToBlock(blk);
+      this.blknum = blknum;
+      this.firstBlock = firstBlock;
+      moveToBlock(blknum);
    }
 
    /**
@@ -34,7 +50,7 @@ class LogIterator implements Iterator<byte[]> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentpos<fm.blockSize() || blk.number()>0;
+      return currentpos<fm.blockSize() || blknum>firstBlock;
    }
 
    /**
@@ -46,8 +62,8 @@ class LogIterator implements Iterator<byte[]> {
     */
    public byte[] next() {
       if (currentpos == fm.blockSize()) {
-         blk = new BlockId(blk.fileName(), blk.number()-1);
-         moveToBlock(blk);
+         blknum--;
+         moveToBlock(blknum);
       }
       byte[] rec = p.getBytes(currentpos);
       currentpos += Integer.BYTES + rec.length;
@@ -58,10 +74,23 @@ class LogIterator implements Iterator<byte[]> {
     * Moves to the specified log block
     * and positions it at the first record in that block
     * (i.e., the most recent one).
+    * If the block is not in the current batch, the block
+    * is read along with the batch of blocks before it.
     */
-   private void moveToBlock(BlockId blk) {
-      fm.read(blk, p);
+   private void moveToBlock(long n) {
+      if (n < batchstart || n >= batchstart + batch.length)
+         readBatch(n);
+      p = batch[(int) (n - batchstart)];
       boundary = p.getInt(0);
       currentpos = boundary;
    }
+
+   private void readBatch(long n) {
+      int size = (batch.length == 0) ? 1 : READ_AHEAD_BLOCKS;
+      batchstart = Math.max(Math.max(firstBlock, lm.segmentStart(n)), n - size + 1);
+      batch = new Page[(int) (n - batchstart + 1)];
+      for (int i=0; i<batch.length; i++)
+         batch[i] = new Page(new byte[fm.blockSize()]);
+      fm.read(lm.block(batchstart), batch);
+   }
 }
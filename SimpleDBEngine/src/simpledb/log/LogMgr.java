@@ -1,104 +1,721 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.*;
 import simpledb.file.*;
 
 /**
  * The log manager, which is responsible for 
  * writing log records into a log file. The tail of 
- * the log is kept in a bytebuffer, which is flushed
- * to disk when needed. 
+ * the log is kept in a ring of pages, one for each
+ * of the latest blocks of the log, which are written
+ * to disk when needed.
+ * <P>
+ * An appender reserves the space of its record, and with it
+ * the record's LSN, by a compare-and-set of the tail of the log,
+ * and then copies the record into its page without a latch,
+ * alongside the other appenders.
+ * The LSN of a record is its position in the log:
+ * the number of its block, shifted left by OFFSET_BITS,
+ * plus the number of bytes of the block used up to and
+ * including the record. So LSNs increase along the log,
+ * and a record can be found from its LSN.
+ * <P>
+ * A record that does not fit in the current block closes it
+ * and starts the next block, in the next page of the ring.
+ * The closed blocks are written to the log file in a single
+ * gathering write, which frees their pages.
+ * An optional {@link LogWriter} thread writes them as they close;
+ * otherwise, or if it falls behind, the appender that needs a page
+ * writes them. A flush writes the closed blocks and the filled
+ * part of the current block. Writes wait only for the copies
+ * into the pages they write, and are serialized by a latch.
+ * <P>
+ * Flushes are grouped. The log is forced outside the latches,
+ * so records can be appended during the force, and a thread
+ * that needs the log forced while another thread is forcing it
+ * waits for that force to end.
+ * Then one of the waiting threads forces the log for all of them.
+ * Before forcing, a thread can also wait a short commit delay
+ * for more threads to join its force, unless enough have already.
+ * <P>
+ * The log is kept in segment files of a fixed number of blocks,
+ * named after the log file with the number of the segment appended,
+ * all in the directory of the log file. Block numbers, and so LSNs,
+ * run on across the segments, as if the log were a single file.
+ * The log before a point that the recovery manager no longer
+ * needs can be truncated; the segments wholly before that point
+ * are then deleted by the next thread that forces the log,
+ * which is the only thread that forces the log at that time.
+ * A log file from before there were segments is copied
+ * into segments when it is opened.
+ * <P>
+ * Blocks are written in order, but a crash can leave a
+ * block on disk without some block before it, since neither
+ * was forced. When the log is opened, it therefore ends at
+ * the first block that is not well formed, and the blocks
+ * after that one are cleared.
+ * <P>
+ * A single record can be read by its LSN, as a rollback does
+ * when it follows its transaction's chain of records.
+ * The blocks read this way are kept in a small cache,
+ * so that the records of a transaction that are in the same
+ * block, or in the last few blocks, are not read again.
  * @author Edward Sciore
  */
 public class LogMgr {
+   static final int OFFSET_BITS = 20;
+   private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+   private static final int DEFAULT_PAGES = 8;
+   private static final int DEFAULT_SEGMENT_BLOCKS = 1024;
+   private static final int DEFAULT_CACHE_BLOCKS = 16;
    private FileMgr fm;
    private String logfile;
-   private Page logpage;
-   private BlockId currentblk;
-   private int latestLSN = 0;
-   private int lastSavedLSN = 0;
+   private File logdir;
+   private int blocksize;
+   private int segmentblocks;
+   private long lastSegment = -1;   // the last segment given its directory and storage
+   private volatile long firstBlock; // the first block not truncated
+   private byte[][] bytes;
+   private Page[] pages;
+   private AtomicInteger[] copying; // the appenders copying into each page
+   private AtomicInteger[] used;    // the bytes copied into each page
+   private AtomicLong tail;         // the current block and its boundary
+   private volatile long written;   // the blocks before this one are written
+   private final Object writeLatch = new Object();
+   private LogWriter writer;
+   private long lastSavedLSN; // the LSN up to which the log is forced
+   private long truncateLSN = 0; // the log before this LSN is no longer needed
+   private boolean forcing = false;
+   private int flushers = 0; // the threads waiting for the log to be forced
+   private long commitDelay = 0;
+   private int commitBatch = 1;
+   private long forces = 0;
+   private int cacheBlocks = DEFAULT_CACHE_BLOCKS;
+   private long reads = 0;
+   private Map<Long,byte[]> cache = new LinkedHashMap<>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Long,byte[]> eldest) {
+         return size() > cacheBlocks;
+      }
+   };
+
+   public LogMgr(FileMgr fm, String logfile) {
+      this(fm, logfile, DEFAULT_PAGES, DEFAULT_SEGMENT_BLOCKS);
+   }
+
+   public LogMgr(FileMgr fm, String logfile, int numpages) {
+      this(fm, logfile, numpages, DEFAULT_SEGMENT_BLOCKS);
+   }
 
    /**
-    * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
-    * with an empty first block.
+    * Creates the manager for the specified log file,
+    * with a ring of the specified number of pages
+    * and segments of the specified number of blocks.
+    * The segments are found in the directory of the log file.
+    * The log ends at the last block before the first one
+    * that is not well formed; that block, if there is one,
+    * is read into the ring and becomes the current block.
     * @param FileMgr the file manager
     * @param logfile the name of the log file
+    * @param numpages the number of pages in the ring, at least 2
+    * @param segmentblocks the number of blocks in a segment
     */
-   public LogMgr(FileMgr fm, String logfile) {
+   public LogMgr(FileMgr fm, String logfile, int numpages, int segmentblocks) {
       this.fm = fm;
       this.logfile = logfile;
-      byte[] b = new byte[fm.blockSize()];
-      logpage = new Page(b);
-      int logsize = fm.length(logfile);
-      if (logsize == 0)
-         currentblk = appendNewBlock();
-      else {
-         currentblk = new BlockId(logfile, logsize-1);
-         fm.read(currentblk, logpage);
+      this.segmentblocks = Math.max(1, segmentblocks);
+      logdir = fm.directory(logfile);
+      blocksize = fm.blockSize();
+      numpages = Math.max(2, numpages);
+      bytes = new byte[numpages][];
+      pages = new Page[numpages];
+      copying = new AtomicInteger[numpages];
+      used = new AtomicInteger[numpages];
+      for (int i=0; i<numpages; i++) {
+         bytes[i] = new byte[blocksize];
+         pages[i] = new Page(bytes[i]);
+         copying[i] = new AtomicInteger();
+         used[i] = new AtomicInteger();
+      }
+      long first = -1, last = -1;
+      for (String filename : logdir.list()) {
+         long segnum = segmentNumber(filename);
+         if (segnum >= 0) {
+            first = (first < 0) ? segnum : Math.min(first, segnum);
+            last = Math.max(last, segnum);
+         }
+      }
+      if (last < 0) {
+         first = 0;
+         last = copyUnsegmentedLog();
       }
+      addSegments(last);
+      firstBlock = first * this.segmentblocks;
+
+      long end = last * this.segmentblocks + fm.length(segmentFile(last));
+      long valid = firstInvalidBlock(end);
+      if (valid < end)
+         discardBlocks(valid, last);
+      long blknum = firstBlock;
+      int boundary = blocksize;
+      if (valid > firstBlock) {
+         blknum = valid - 1;
+         Page p = pages[slot(blknum)];
+         fm.read(block(blknum), p);
+         boundary = p.getInt(0);
+         used[slot(blknum)].set(blocksize - boundary);
+      }
+      written = blknum;
+      tail = new AtomicLong((blknum << OFFSET_BITS) | boundary);
+      lastSavedLSN = lsn(blknum, boundary);
+   }
+
+   /**
+    * Sets how long a thread about to force the log waits
+    * for other threads that need it forced, and how many
+    * waiting threads end the wait early.
+    * @param delay the commit delay in milliseconds; 0 disables it
+    * @param batch the number of threads that is enough for one force
+    */
+   public synchronized void setCommitDelay(long delay, int batch) {
+      commitDelay = delay;
+      commitBatch = Math.max(1, batch);
    }
 
    /**
     * Ensures that the log record corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * If another thread is forcing the log, the method waits
+    * for it, since the record may be part of its force;
+    * otherwise the thread forces the log itself,
+    * for every thread waiting with it.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
-         flush();
+   public void flush(long lsn) {
+      long forcedLSN = -1, fromLSN, keepLSN;
+      boolean interrupted = false;
+      synchronized (this) {
+         if (lsn <= lastSavedLSN)
+            return;
+         flushers++;
+         notifyAll(); // a delayed thread may now have a full batch
+         while (forcing && lsn > lastSavedLSN) {
+            try {
+               wait();
+            }
+            catch (InterruptedException e) {
+               interrupted = true;
+            }
+         }
+         if (lsn <= lastSavedLSN) {
+            flushers--;
+            reinterrupt(interrupted);
+            return;
+         }
+         forcing = true;
+         interrupted |= awaitBatch();
+         flushers--;
+         fromLSN = lastSavedLSN;
+         keepLSN = truncateLSN;
+      }
+      boolean forced = false;
+      try {
+         forcedLSN = writeAll();
+         for (long seg=segment(Math.max(fromLSN, firstBlock << OFFSET_BITS));
+              seg<=segment(forcedLSN); seg++)
+            fm.force(segmentFile(seg));
+         forced = true;
+         removeSegments(keepLSN);
+      }
+      finally {
+         synchronized (this) {
+            if (forced)
+               lastSavedLSN = Math.max(lastSavedLSN, forcedLSN);
+            forcing = false;
+            forces++;
+            notifyAll();
+         }
+         reinterrupt(interrupted);
+      }
    }
 
+   /**
+    * Sets the number of blocks kept in the cache
+    * of blocks that records were read from.
+    * @param blocks the number of blocks; 0 disables the cache
+    */
+   public void setCacheSize(int blocks) {
+      synchronized (cache) {
+         cacheBlocks = Math.max(0, blocks);
+         cache.clear();
+      }
+   }
+
+   /**
+    * Returns the log record with the specified LSN.
+    * The record's block is taken from the cache, or else
+    * read from disk, after writing it if it is still in the ring.
+    * The record must not have been truncated.
+    * @param lsn the LSN of a log record
+    * @return the bytes of the record
+    */
+   public byte[] read(long lsn) {
+      long blknum = lsn >>> OFFSET_BITS;
+      int recpos = blocksize - (int) (lsn & OFFSET_MASK);
+      byte[] b;
+      synchronized (cache) {
+         b = cache.get(blknum);
+      }
+      // a block read while it was the current block holds only
+      // the records before its boundary at the time
+      if (b == null || recpos < new Page(b).getInt(0)) {
+         if (blknum >= written)
+            writeAll();
+         b = new byte[blocksize];
+         fm.read(block(blknum), new Page(b));
+         synchronized (cache) {
+            cache.put(blknum, b);
+            reads++;
+         }
+      }
+      return new Page(b).getBytes(recpos);
+   }
+
+   /**
+    * Returns the number of blocks that records have been read from
+    * on disk, which shows how well the cache serves the reads.
+    * @return the number of blocks read by LSN
+    */
+   public long reads() {
+      synchronized (cache) {
+         return reads;
+      }
+   }
+
+   /**
+    * Returns the number of times the log has been forced,
+    * which with the number of commits shows how well
+    * the commits were grouped.
+    * @return the number of forces of the log
+    */
+   public synchronized long forces() {
+      return forces;
+   }
+
+   /**
+    * Returns the LSN up to which the log has been forced:
+    * every record with a smaller or equal LSN is on disk.
+    * @return the LSN of the end of the forced log
+    */
+   public synchronized long flushedLSN() {
+      return lastSavedLSN;
+   }
+
+   /**
+    * Truncates the log before the specified LSN.
+    * The segments wholly before the record are deleted
+    * the next time the log is forced, unless
+    * some of their blocks are not yet written.
+    * The log is never truncated past an earlier LSN
+    * than it was truncated before.
+    * @param lsn the LSN of the earliest record still needed
+    */
+   public synchronized void truncate(long lsn) {
+      truncateLSN = Math.max(truncateLSN, lsn);
+   }
+
+   /**
+    * Returns the length of the largest record that fits in a block,
+    * after the boundary and the record's own length.
+    * @return the largest length of a log record
+    */
+   public int maxRecordLength() {
+      return blocksize - 2 * Integer.BYTES;
+   }
+
+   /**
+    * Returns the LSN of the last record appended to the log,
+    * so that every record appended later has a larger LSN.
+    * @return the LSN of the end of the log
+    */
+   public long endLSN() {
+      long t = tail.get();
+      return lsn(t >>> OFFSET_BITS, (int) (t & OFFSET_MASK));
+   }
+
+   /**
+    * Returns the number of segments that the log has
+    * not yet deleted.
+    * @return the number of segments of the log
+    */
+   public int segments() {
+      return (int) ((tail.get() >>> OFFSET_BITS) / segmentblocks
+                    - firstBlock / segmentblocks + 1);
+   }
+
+   /**
+    * Returns an iterator over the records of the log,
+    * from the last to the first record that has not
+    * been truncated.
+    */
    public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+      long blknum = writeAll() >>> OFFSET_BITS;
+      return new LogIterator(this, fm, blknum, firstBlock);
    }
 
    /**
-    * Appends a log record to the log buffer. 
+    * Appends a log record to the log. 
     * The record consists of an arbitrary array of bytes. 
-    * Log records are written right to left in the buffer.
+    * Log records are written right to left in their block.
     * The size of the record is written before the bytes.
-    * The beginning of the buffer contains the location
+    * The beginning of the block contains the location
     * of the last-written record (the "boundary").
     * Storing the records backwards makes it easy to read
     * them in reverse order.
     * @param logrec a byte buffer containing the bytes.
-    * @return the LSN of the final value
+    * @return the LSN of the record
     */
-   public synchronized int append(byte[] logrec) {
-      int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
-      int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush();        // so move to the next block.
-         currentblk = appendNewBlock();
-         boundary = logpage.getInt(0);
+   public long append(byte[] logrec) {
+      int needed = logrec.length + Integer.BYTES;
+      if (logrec.length > maxRecordLength())
+         throw new RuntimeException("log record larger than a block");
+      while (true) {
+         long t = tail.get();
+         long blknum = t >>> OFFSET_BITS;
+         int recpos = (int) (t & OFFSET_MASK) - needed;
+         if (recpos < Integer.BYTES) { // the log record doesn't fit,
+            nextBlock(t, blknum);      // so move to the next block.
+            continue;
+         }
+         int slot = slot(blknum);
+         copying[slot].incrementAndGet();
+         if (!tail.compareAndSet(t, (blknum << OFFSET_BITS) | recpos)) {
+            copying[slot].decrementAndGet();
+            continue;
+         }
+         pages[slot].setInt(recpos, logrec.length);
+         System.arraycopy(logrec, 0, bytes[slot], recpos + Integer.BYTES, logrec.length);
+         used[slot].addAndGet(needed);
+         copying[slot].decrementAndGet();
+         return lsn(blknum, recpos);
       }
-      int recpos = boundary - bytesneeded;
+   }
+
+   /**
+    * Starts the background writer of closed blocks.
+    * @param delay the most milliseconds between rounds of the writer
+    */
+   public synchronized void startWriter(long delay) {
+      if (writer != null)
+         return;
+      writer = new LogWriter(this, delay);
+      Thread t = new Thread(writer, "log writer");
+      t.setDaemon(true);
+      t.start();
+   }
 
-      logpage.setBytes(recpos, logrec);
-      logpage.setInt(0, recpos); // the new boundary
-      latestLSN += 1;
-      return latestLSN;
+   /**
+    * Stops the background writer, if it is running.
+    */
+   public void stopWriter() {
+      LogWriter w;
+      synchronized (this) {
+         w = writer;
+         writer = null;
+      }
+      if (w != null)
+         w.stop();
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Writes the closed blocks that are not yet written,
+    * freeing their pages.
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);     
-      logpage.setInt(0, fm.blockSize());
-      fm.write(blk, logpage);
-      return blk;
+   void writeClosed() {
+      synchronized (writeLatch) {
+         writeBlocks(tail.get() >>> OFFSET_BITS);
+      }
+   }
+
+   /**
+    * Closes the current block and starts the next one,
+    * unless another appender has just done so.
+    * If the page of the next block still holds a block
+    * that is not written, the closed blocks are written first.
+    */
+   private void nextBlock(long t, long blknum) {
+      while (blknum + 1 - written >= pages.length)
+         writeClosed();
+      if (tail.compareAndSet(t, ((blknum + 1) << OFFSET_BITS) | blocksize)) {
+         LogWriter w = writer;
+         if (w != null)
+            w.wake();
+      }
+   }
+
+   /**
+    * Writes every record appended so far:
+    * the closed blocks, and the current block as far as it is filled.
+    * @return the LSN up to which the log is written
+    */
+   private long writeAll() {
+      synchronized (writeLatch) {
+         long t = tail.get();
+         long blknum = t >>> OFFSET_BITS;
+         int boundary = (int) (t & OFFSET_MASK);
+         writeBlocks(blknum);
+         int slot = slot(blknum);
+         awaitCopies(slot);
+         pages[slot].setInt(0, boundary);
+         addSegments(blknum / segmentblocks);
+         fm.write(block(blknum), new Page[] {pages[slot]});
+         return lsn(blknum, boundary);
+      }
+   }
+
+   /**
+    * Writes the blocks from the first one not written
+    * up to the specified block, with a single gathering write
+    * for each segment they are in.
+    * Their pages are then free for later blocks.
+    * The caller holds the write latch.
+    */
+   private void writeBlocks(long end) {
+      int n = (int) (end - written);
+      if (n <= 0)
+         return;
+      Page[] run = new Page[n];
+      for (int i=0; i<n; i++) {
+         int slot = slot(written + i);
+         awaitCopies(slot);
+         pages[slot].setInt(0, blocksize - used[slot].get());
+         run[i] = pages[slot];
+      }
+      addSegments((end - 1) / segmentblocks);
+      for (int i=0; i<n; ) {
+         long blknum = written + i;
+         int count = (int) Math.min(n - i, segmentblocks - blknum % segmentblocks);
+         fm.write(block(blknum), Arrays.copyOfRange(run, i, i + count));
+         i += count;
+      }
+      for (int i=0; i<n; i++)
+         used[slot(written + i)].set(0);
+      written = end;
+   }
+
+   /**
+    * Waits for the appenders that are copying their records
+    * into the page. Later appenders reserve space past the
+    * boundary that the caller read, so the wait is short.
+    */
+   private void awaitCopies(int slot) {
+      while (copying[slot].get() > 0)
+         Thread.yield();
+   }
+
+   /**
+    * Returns the block of the segment file that holds
+    * the specified block of the log.
+    * @param blknum the number of a block of the log
+    * @return the block of its segment file
+    */
+   BlockId block(long blknum) {
+      return new BlockId(segmentFile(blknum / segmentblocks),
+                         (int) (blknum % segmentblocks));
+   }
+
+   /**
+    * Returns the number of the first block
+    * of the segment that holds the specified block.
+    */
+   long segmentStart(long blknum) {
+      return blknum - blknum % segmentblocks;
+   }
+
+   private String segmentFile(long segnum) {
+      return logfile + "." + segnum;
+   }
+
+   private long segment(long lsn) {
+      return (lsn >>> OFFSET_BITS) / segmentblocks;
+   }
+
+   /**
+    * Returns the number of the segment that the
+    * specified file is, or -1 if it is not a segment of the log.
+    */
+   private long segmentNumber(String filename) {
+      if (!filename.startsWith(logfile + "."))
+         return -1;
+      String suffix = filename.substring(logfile.length() + 1);
+      if (suffix.isEmpty() || suffix.length() > 18 || !suffix.chars().allMatch(Character::isDigit))
+         return -1;
+      return Long.parseLong(suffix);
+   }
+
+   /**
+    * Keeps the segments up to the specified one
+    * in the directory of the log, in "file" storage.
+    * The log is read and written by this manager, not through
+    * the buffer pool, so it is kept out of direct I/O and
+    * its blocks stay in the operating system's cache.
+    * The caller holds the write latch, or is the constructor.
+    */
+   private void addSegments(long segnum) {
+      while (lastSegment < segnum) {
+         lastSegment++;
+         String filename = segmentFile(lastSegment);
+         fm.setStorage(filename, "file");
+         fm.setDirectory(filename, logdir);
+      }
+   }
+
+   /**
+    * Deletes the segments before the one holding the
+    * specified LSN, except any holding blocks not yet written.
+    * The new first block is set before the segments are deleted,
+    * so that iterators created from then on do not read them.
+    * Called by the thread forcing the log.
+    */
+   private void removeSegments(long lsn) {
+      long limit = Math.min(lsn >>> OFFSET_BITS, written) / segmentblocks;
+      long first = firstBlock / segmentblocks;
+      if (limit <= first)
+         return;
+      firstBlock = limit * segmentblocks;
+      for (long seg=first; seg<limit; seg++)
+         fm.delete(segmentFile(seg));
+   }
+
+   /**
+    * Reads the log forward from its first block, and returns
+    * the number of the first block that does not hold
+    * a well-formed chain of records, or the end of the log.
+    * Blocks are written in order but forced only by a flush,
+    * so after a crash a block can be on disk without one before it.
+    * No flush reached past such a hole, so no commit and
+    * no data page depends on the records after it.
+    * @param end the number of the block after the last one on disk
+    * @return the number of the block after the log's valid blocks
+    */
+   private long firstInvalidBlock(long end) {
+      Page p = new Page(blocksize);
+      for (long blknum=firstBlock; blknum<end; blknum++) {
+         if (blknum % segmentblocks >= fm.length(segmentFile(blknum / segmentblocks)))
+            return blknum;
+         fm.read(block(blknum), p);
+         if (!isWellFormed(p))
+            return blknum;
+      }
+      return end;
+   }
+
+   /**
+    * Returns true if the page holds a boundary and a chain
+    * of records that ends exactly at the end of the page,
+    * as every block written by this manager does.
+    * A block of zeros, which the file holds where a block
+    * was never written, does not.
+    */
+   private boolean isWellFormed(Page p) {
+      int pos = p.getInt(0);
+      if (pos < Integer.BYTES || pos > blocksize)
+         return false;
+      while (pos < blocksize) {
+         if (pos > blocksize - Integer.BYTES)
+            return false;
+         int length = p.getInt(pos);
+         if (length < 0 || length > blocksize - pos - Integer.BYTES)
+            return false;
+         pos += Integer.BYTES + length;
+      }
+      return true;
+   }
+
+   /**
+    * Clears the blocks of the log from the specified one on,
+    * so that the log ends before it: the blocks left in its
+    * segment are overwritten with zeros, and the later
+    * segments are deleted. A later crash then finds the
+    * same end, and not blocks from before this one.
+    * Called by the constructor.
+    * @param blknum the first block to clear
+    * @param last the number of the last segment
+    */
+   private void discardBlocks(long blknum, long last) {
+      long seg = blknum / segmentblocks;
+      String filename = segmentFile(seg);
+      Page zeros = new Page(blocksize);
+      for (long b=blknum; b<(seg + 1) * segmentblocks
+                          && b % segmentblocks < fm.length(filename); b++)
+         fm.write(block(b), zeros);
+      fm.force(filename);
+      for (long s=seg+1; s<=last; s++)
+         fm.delete(segmentFile(s));
+      lastSegment = seg;
+   }
+
+   /**
+    * Copies the blocks of a log file from before there were
+    * segments into the segments, and deletes the log file.
+    * @return the number of the last segment
+    */
+   private long copyUnsegmentedLog() {
+      if (!new File(logdir, logfile).exists())
+         return 0;
+      fm.setStorage(logfile, "file");
+      int logsize = fm.length(logfile);
+      long last = Math.max(0, logsize - 1) / segmentblocks;
+      addSegments(last);
+      Page p = new Page(blocksize);
+      for (int i=0; i<logsize; i++) {
+         fm.read(new BlockId(logfile, i), p);
+         fm.write(block(i), p);
+      }
+      for (long seg=0; seg<=last; seg++)
+         fm.force(segmentFile(seg));
+      fm.delete(logfile);
+      return last;
+   }
+
+   private int slot(long blknum) {
+      return (int) (blknum % pages.length);
+   }
+
+   private long lsn(long blknum, int boundary) {
+      return (blknum << OFFSET_BITS) | (blocksize - boundary);
+   }
+
+   /**
+    * Waits up to the commit delay for enough threads
+    * to need the log forced, counting this one.
+    * @return true if the thread was interrupted
+    */
+   private boolean awaitBatch() {
+      boolean interrupted = false;
+      long deadline = System.currentTimeMillis() + commitDelay;
+      long remaining = commitDelay;
+      while (flushers < commitBatch && remaining > 0) {
+         try {
+            wait(remaining);
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+         remaining = deadline - System.currentTimeMillis();
+      }
+      return interrupted;
    }
 
    /**
-    * Write the buffer to the log file.
+    * A thread interrupted while it waited for the log
+    * still waits until its records are durable,
+    * and is then interrupted again.
     */
-   private void flush() {
-      fm.write(currentblk, logpage);
-      lastSavedLSN = latestLSN;
+   private void reinterrupt(boolean interrupted) {
+      if (interrupted)
+         Thread.currentThread().interrupt();
    }
 }
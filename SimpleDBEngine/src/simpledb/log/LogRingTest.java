@@ -0,0 +1,73 @@
+package simpledb.log;
+
+import java.io.File;
+import java.util.Iterator;
+import simpledb.file.*;
+
+/**
+ * Has several threads append records to the log at once,
+ * through a ring of only two pages and then through
+ * a larger ring with a background writer, and reads the log back.
+ * Every record must be there, each thread's records in the
+ * order it appended them, and the LSNs of each thread's
+ * records must increase.
+ */
+public class LogRingTest {
+   private static final int THREADS = 4;
+   private static final int RECORDS = 2000;
+
+   public static void main(String[] args) throws Exception {
+      check("ringtest2", 2, false);
+      check("ringtest16", 16, true);
+   }
+
+   private static void check(String dirname, int numpages, boolean withWriter) throws Exception {
+      FileMgr fm = new FileMgr(new File(dirname), 400);
+      LogMgr lm = new LogMgr(fm, "ring.log", numpages);
+      if (withWriter)
+         lm.startWriter(10);
+      int[] badlsns = new int[1];
+      Thread[] threads = new Thread[THREADS];
+      for (int t=0; t<THREADS; t++) {
+         int id = t;
+         threads[t] = new Thread(() -> {
+            long prev = -1;
+            for (int i=0; i<RECORDS; i++) {
+               // records of different sizes, so blocks close at different points
+               byte[] rec = new byte[8 + (i % 5) * 12];
+               Page p = new Page(rec);
+               p.setInt(0, id);
+               p.setInt(4, i);
+               long lsn = lm.append(rec);
+               if (lsn <= prev)
+                  synchronized (badlsns) { badlsns[0]++; }
+               prev = lsn;
+               if (i % 100 == 0)
+                  lm.flush(lsn);
+            }
+         });
+      }
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      lm.stopWriter();
+
+      int[] next = new int[THREADS];
+      for (int t=0; t<THREADS; t++)
+         next[t] = RECORDS - 1;
+      int errors = 0, count = 0;
+      Iterator<byte[]> iter = lm.iterator();
+      while (iter.hasNext()) {
+         Page p = new Page(iter.next());
+         int id = p.getInt(0), i = p.getInt(4);
+         if (id < 0 || id >= THREADS || i != next[id])
+            errors++;
+         else
+            next[id]--;
+         count++;
+      }
+      System.out.println(numpages + " pages: " + count + " records read back, "
+            + errors + " out of place, " + badlsns[0] + " LSNs out of order");
+   }
+}
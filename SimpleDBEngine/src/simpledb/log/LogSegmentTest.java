@@ -0,0 +1,93 @@
+package simpledb.log;
+
+import java.io.File;
+import simpledb.file.BlockId;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+
+/**
+ * Runs many small transactions against a log with segments
+ * of a few blocks, and checks that the log keeps its segments
+ * while a transaction that started early is active, and is
+ * truncated to a couple of segments once it completes.
+ * A transaction whose records span several segments is then
+ * rolled back, and another is left unfinished.
+ * Like RecoveryTest, the test is run twice: the second run
+ * recovers the database from the truncated log, and checks that
+ * the unfinished transaction's changes were undone.
+ */
+public class LogSegmentTest {
+   private static final int NUM_TXS = 200;
+
+   public static void main(String[] args) {
+      String dirname = "logsegmenttest";
+      SimpleDB.LOG_SEGMENT_BLOCKS = 4;
+      boolean recovering = new File(dirname).exists();
+      SimpleDB db = new SimpleDB(dirname);
+      if (recovering) {
+         System.out.println(count(db) + " records after recovery; expected " + NUM_TXS);
+         return;
+      }
+      Planner planner = db.planner();
+      LogMgr lm = db.logMgr();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table t(A int, B varchar(20))", tx);
+      tx.commit();
+
+      // the early transaction changes a file of its own,
+      // so that it does not hold locks the others need
+      Transaction early = db.newTx();
+      BlockId blk = early.append("early");
+      early.pin(blk);
+      early.setInt(blk, 0, 1, true);
+      for (int i=0; i<NUM_TXS; i++) {
+         tx = db.newTx();
+         planner.executeUpdate("insert into t(A,B) values(" + i + ", 'committed')", tx);
+         tx.commit();
+      }
+      int kept = lm.segments();
+      early.rollback();
+      tx = db.newTx();
+      tx.commit();
+      int left = lm.segments();
+      System.out.println("The log kept " + kept + " segments while a transaction was active, "
+            + "and " + (left <= 2 ? "at most 2" : left) + " after it completed");
+      System.out.println((segmentFiles(dirname) == left ? "Only they are" : "Other segments are")
+            + " left on disk");
+
+      tx = db.newTx();
+      for (int i=0; i<NUM_TXS; i++)
+         planner.executeUpdate("insert into t(A,B) values(" + i + ", 'rolled back')", tx);
+      tx.rollback();
+      System.out.println(count(db) + " records after a rollback; expected " + NUM_TXS);
+
+      // a transaction that does not finish, as if the system crashed
+      tx = db.newTx();
+      for (int i=0; i<NUM_TXS; i++)
+         planner.executeUpdate("insert into t(A,B) values(" + i + ", 'unfinished')", tx);
+      db.shutdown();
+      System.out.println("Run the test again to recover the database");
+   }
+
+   private static int count(SimpleDB db) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan("select A from t", tx);
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      tx.commit();
+      return count;
+   }
+
+   private static int segmentFiles(String dirname) {
+      int count = 0;
+      for (String filename : new File(dirname).list())
+         if (filename.startsWith(SimpleDB.LOG_FILE + "."))
+            count++;
+      return count;
+   }
+}
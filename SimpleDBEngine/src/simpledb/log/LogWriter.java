@@ -0,0 +1,83 @@
+package simpledb.log;
+
+/**
+ * The background writer of a log manager.
+ * It writes the blocks of the log as they are closed,
+ * so that their pages are free again before the appenders
+ * come round the ring to them, and an appender
+ * rarely has to write the log itself.
+ * Blocks closed close together are written together.
+ * The writer does not force the log; that is left to flushes.
+ * The writer runs as a daemon thread,
+ * started by {@link LogMgr#startWriter(long)}.
+ */
+class LogWriter implements Runnable {
+   private LogMgr lm;
+   private long delay;
+   private boolean stopped = false;
+   private boolean done = false;
+   private boolean woken = false;
+
+   /**
+    * Creates a writer for the specified log manager.
+    * @param lm the log manager
+    * @param delay the most milliseconds between rounds
+    */
+   LogWriter(LogMgr lm, long delay) {
+      this.lm = lm;
+      this.delay = delay;
+   }
+
+   public void run() {
+      try {
+         while (waitForNextRound())
+            lm.writeClosed();
+      }
+      finally {
+         finished();
+      }
+   }
+
+   /**
+    * Tells the writer that a block has been closed.
+    */
+   synchronized void wake() {
+      woken = true;
+      notifyAll();
+   }
+
+   /**
+    * Asks the writer to stop after its current round,
+    * and waits until it has stopped.
+    * The thread is not interrupted, because interrupting
+    * a thread that is writing to a file channel closes the channel.
+    */
+   synchronized void stop() {
+      stopped = true;
+      notifyAll();
+      try {
+         while (!done)
+            wait();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private synchronized void finished() {
+      done = true;
+      notifyAll();
+   }
+
+   private synchronized boolean waitForNextRound() {
+      try {
+         if (!stopped && !woken)
+            wait(delay);
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      woken = false;
+      return !stopped;
+   }
+}
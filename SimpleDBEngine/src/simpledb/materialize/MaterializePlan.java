@@ -33,7 +33,7 @@ public class MaterializePlan implements Plan {
       Schema sch = srcplan.schema();
       TempTable temp = new TempTable(tx, sch);
       Scan src = srcplan.open();
-      UpdateScan dest = temp.open();
+      UpdateScan dest = temp.openForWrite();
       while (src.next()) {
          dest.insert();
          for (String fldname : sch.fields())
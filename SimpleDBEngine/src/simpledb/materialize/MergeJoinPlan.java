@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.tx.Transaction;
+import simpledb.plan.MemoryGrant;
 import simpledb.plan.Plan;
 import simpledb.query.*;
 import simpledb.record.*;
@@ -27,13 +28,29 @@ public class MergeJoinPlan implements Plan {
     * @param tx the calling transaction
     */
    public MergeJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String fldname2) {
+      this(tx, p1, p2, fldname1, fldname2, new MemoryGrant(tx));
+   }
+   
+   /**
+    * Creates a mergejoin plan for the two specified queries,
+    * whose sorts use frames from the specified memory grant.
+    * The two sorts are done one after the other,
+    * so each of them can use the whole grant.
+    * @param p1 the LHS query plan
+    * @param p2 the RHS query plan
+    * @param fldname1 the LHS join field
+    * @param fldname2 the RHS join field
+    * @param tx the calling transaction
+    * @param grant the memory grant of the query
+    */
+   public MergeJoinPlan(Transaction tx, Plan p1, Plan p2, String fldname1, String fldname2, MemoryGrant grant) {
       this.fldname1 = fldname1;
       List<String> sortlist1 = Arrays.asList(fldname1);
-      this.p1 = new SortPlan(tx, p1, sortlist1);
+      this.p1 = new SortPlan(tx, p1, sortlist1, grant);
       
       this.fldname2 = fldname2;
       List<String> sortlist2 = Arrays.asList(fldname2);
-      this.p2 = new SortPlan(tx, p2, sortlist2);
+      this.p2 = new SortPlan(tx, p2, sortlist2, grant);
       
       sch.addAll(p1.schema());
       sch.addAll(p2.schema());
@@ -2,7 +2,9 @@ package simpledb.materialize;
 
 import java.util.*;
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferReservation;
 import simpledb.record.*;
+import simpledb.plan.MemoryGrant;
 import simpledb.plan.Plan;
 import simpledb.query.*;
 
@@ -15,6 +17,7 @@ public class SortPlan implements Plan {
    private Plan p;
    private Schema sch;
    private RecordComparator comp;
+   private MemoryGrant grant;
    
    /**
     * Create a sort plan for the specified query.
@@ -23,7 +26,20 @@ public class SortPlan implements Plan {
     * @param tx the calling transaction
     */
    public SortPlan(Transaction tx, Plan p, List<String> sortfields) {
+      this(tx, p, sortfields, new MemoryGrant(tx));
+   }
+   
+   /**
+    * Create a sort plan for the specified query,
+    * whose merges use frames from the specified memory grant.
+    * @param p the plan for the underlying query
+    * @param sortfields the fields to sort by
+    * @param tx the calling transaction
+    * @param grant the memory grant of the query
+    */
+   public SortPlan(Transaction tx, Plan p, List<String> sortfields, MemoryGrant grant) {
       this.tx = tx;
+      this.grant = grant;
       this.p = p;
       sch = p.schema();
       comp = new RecordComparator(sortfields);
@@ -33,14 +49,28 @@ public class SortPlan implements Plan {
     * This method is where most of the action is.
     * Up to 2 sorted temporary tables are created,
     * and are passed into SortScan for final merging.
+    * Each merge reads one block of every run it merges,
+    * so the frames reserved from the grant decide
+    * how many runs are merged at a time (at least 2).
+    * The frames are released before the scan is returned.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
       Scan src = p.open();
       List<TempTable> runs = splitIntoRuns(src);
       src.close();
-      while (runs.size() > 2)
-         runs = doAMergeIteration(runs);
+      if (runs.size() > 2) {
+         // one frame for each run, plus one for the output
+         BufferReservation r = grant.reserve(runs.size() + 1);
+         try {
+            int fanin = Math.max(2, r.size() - 1);
+            while (runs.size() > 2)
+               runs = doAMergeIteration(runs, fanin);
+         }
+         finally {
+            grant.release(r);
+         }
+      }
       return new SortScan(runs, comp);
    }
    
@@ -93,53 +123,54 @@ public class SortPlan implements Plan {
          return temps;
       TempTable currenttemp = new TempTable(tx, sch);
       temps.add(currenttemp);
-      UpdateScan currentscan = currenttemp.open();
+      UpdateScan currentscan = currenttemp.openForWrite();
       while (copy(src, currentscan))
          if (comp.compare(src, currentscan) < 0) {
          // start a new run
          currentscan.close();
          currenttemp = new TempTable(tx, sch);
          temps.add(currenttemp);
-         currentscan = (UpdateScan) currenttemp.open();
+         currentscan = currenttemp.openForWrite();
       }
       currentscan.close();
       return temps;
    }
    
-   private List<TempTable> doAMergeIteration(List<TempTable> runs) {
+   private List<TempTable> doAMergeIteration(List<TempTable> runs, int fanin) {
       List<TempTable> result = new ArrayList<>();
       while (runs.size() > 1) {
-         TempTable p1 = runs.remove(0);
-         TempTable p2 = runs.remove(0);
-         result.add(mergeTwoRuns(p1, p2));
+         List<TempTable> group = new ArrayList<>();
+         while (group.size() < fanin && !runs.isEmpty())
+            group.add(runs.remove(0));
+         result.add(mergeRuns(group));
       }
       if (runs.size() == 1)
          result.add(runs.get(0));
       return result;
    }
    
-   private TempTable mergeTwoRuns(TempTable p1, TempTable p2) {
-      Scan src1 = p1.open();
-      Scan src2 = p2.open();
+   private TempTable mergeRuns(List<TempTable> group) {
+      List<Scan> srcs = new ArrayList<>();
+      List<Scan> hasmore = new ArrayList<>();
+      for (TempTable t : group) {
+         Scan src = t.open();
+         srcs.add(src);
+         if (src.next())
+            hasmore.add(src);
+      }
       TempTable result = new TempTable(tx, sch);
-      UpdateScan dest = result.open();
+      UpdateScan dest = result.openForWrite();
       
-      boolean hasmore1 = src1.next();
-      boolean hasmore2 = src2.next();
-      while (hasmore1 && hasmore2)
-         if (comp.compare(src1, src2) < 0)
-         hasmore1 = copy(src1, dest);
-      else
-         hasmore2 = copy(src2, dest);
-      
-      if (hasmore1)
-         while (hasmore1)
-         hasmore1 = copy(src1, dest);
-      else
-         while (hasmore2)
-         hasmore2 = copy(src2, dest);
-      src1.close();
-      src2.close();
+      while (!hasmore.isEmpty()) {
+         Scan smallest = hasmore.get(0);
+         for (Scan src : hasmore)
+            if (comp.compare(src, smallest) < 0)
+            smallest = src;
+         if (!copy(smallest, dest))
+            hasmore.remove(smallest);
+      }
+      for (Scan src : srcs)
+         src.close();
       dest.close();
       return result;
    }
@@ -1,6 +1,7 @@
 package simpledb.materialize;
 
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferRing;
 import simpledb.query.*;
 import simpledb.record.*;
 
@@ -36,6 +37,16 @@ public class TempTable {
       return new TableScan(tx, tblname, layout);
    }
    
+   /**
+    * Open a table scan for filling the temporary table.
+    * The scan writes through a bulk write ring,
+    * so that spilling records does not flush
+    * the rest of the buffer pool.
+    */
+   public UpdateScan openForWrite() {
+      return new TableScan(tx, tblname, layout, BufferRing.BULKWRITE);
+   }
+   
    public String tableName() {
       return tblname;
    }
@@ -1,6 +1,7 @@
 package simpledb.metadata;
 
 import static java.sql.Types.INTEGER;
+import java.util.List;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.index.Index;
@@ -50,6 +51,17 @@ public class IndexInfo {
 //    return new BTreeIndex(tx, idxname, idxLayout);
    }
    
+   /**
+    * Returns the names of the files of the specified index,
+    * for the kind of index that {@link #open()} opens.
+    * @param idxname the name of the index
+    * @return the names of the index's files
+    */
+   public static List<String> fileNames(String idxname) {
+      return HashIndex.fileNames(idxname);
+//    return BTreeIndex.fileNames(idxname);
+   }
+   
    /**
     * Estimate the number of block accesses required to
     * find all index records having a particular search key.
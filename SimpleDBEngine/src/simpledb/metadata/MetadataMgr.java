@@ -1,6 +1,6 @@
 package simpledb.metadata;
 
-import java.util.Map;
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 
@@ -9,18 +9,56 @@ public class MetadataMgr {
    private static ViewMgr   viewmgr;
    private static StatMgr   statmgr;
    private static IndexMgr  idxmgr;
+   private static TablespaceMgr tsmgr;
    
    public MetadataMgr(boolean isnew, Transaction tx) {
       tblmgr  = new TableMgr(isnew, tx);
       viewmgr = new ViewMgr(isnew, tblmgr, tx);
       statmgr = new StatMgr(tblmgr, tx);
       idxmgr  = new IndexMgr(isnew, tblmgr, statmgr, tx);
+      tsmgr   = new TablespaceMgr(isnew, tblmgr, tx);
+   }
+   
+   /**
+    * Tells the file manager where the files of the tables
+    * and indexes placed in tablespaces are.
+    * This must be done at startup once the files of
+    * {@link #placementFiles()} have been recovered,
+    * and before the rest of the database is recovered or read.
+    * @param tx the startup transaction
+    */
+   public static void placeFiles(Transaction tx) {
+      TablespaceMgr.placeFiles(tx);
+   }
+
+   /**
+    * Returns the files of the catalog tables that
+    * {@link #placeFiles(Transaction)} reads; they are
+    * always in the database directory.
+    * @return the names of the files
+    */
+   public static Collection<String> placementFiles() {
+      return TablespaceMgr.catalogFiles();
    }
    
    public void createTable(String tblname, Schema sch, Transaction tx) {
       tblmgr.createTable(tblname, sch, tx);
    }
    
+   public void createTable(String tblname, Schema sch, boolean compressed, Transaction tx) {
+      createTable(tblname, sch, compressed, null, tx);
+   }
+   
+   public void createTable(String tblname, Schema sch, boolean compressed,
+                           String tsname, Transaction tx) {
+      tsmgr.placeTable(tblname, tsname, tx);
+      tblmgr.createTable(tblname, sch, compressed, tx);
+   }
+   
+   public void createTablespace(String tsname, String location, Transaction tx) {
+      tsmgr.createTablespace(tsname, location, tx);
+   }
+   
    public Layout getLayout(String tblname, Transaction tx) {
       return tblmgr.getLayout(tblname, tx);
    }
@@ -34,6 +72,12 @@ public class MetadataMgr {
    }
    
    public void createIndex(String idxname, String tblname, String fldname, Transaction tx) {
+      createIndex(idxname, tblname, fldname, null, tx);
+   }
+   
+   public void createIndex(String idxname, String tblname, String fldname,
+                           String tsname, Transaction tx) {
+      tsmgr.placeIndex(idxname, tsname, tx);
       idxmgr.createIndex(idxname, tblname, fldname, tx);
    }
    
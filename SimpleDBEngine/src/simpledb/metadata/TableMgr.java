@@ -50,6 +50,22 @@ class TableMgr {
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
+      createTable(tblname, sch, false, tx);
+   }
+
+   /**
+    * Create a new table having the specified name and schema,
+    * whose blocks are stored compressed if so specified.
+    * A compressed table stays compressed; the file manager
+    * recognizes its file when the database is opened again.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param compressed true if the table's blocks are to be compressed
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, boolean compressed, Transaction tx) {
+      if (compressed)
+         tx.setStorage(tblname + ".tbl", "compressed");
       Layout layout = new Layout(sch);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
@@ -0,0 +1,183 @@
+package simpledb.metadata;
+
+import java.io.File;
+import java.util.*;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * The tablespace manager.
+ * A tablespace is a named directory, usually on a device
+ * other than the database directory's, in which tables
+ * and indexes can be placed when they are created.
+ * The tablespaces are kept in the catalog table tscat,
+ * and the placement of each table and index in placecat.
+ * The catalog tables themselves stay in the database directory.
+ * <P>
+ * The file manager is told the directory of each placed file,
+ * when the file is placed and again at startup.
+ * At startup the two catalog tables are recovered first,
+ * in the database directory, so that only committed placements
+ * are read; the files are then placed before the rest of
+ * the database is recovered. The blocks of a file placed by
+ * a transaction that did not commit are restored in the
+ * database directory, since its table or index does not
+ * exist after recovery.
+ */
+class TablespaceMgr {
+   // the max chars in the location of a tablespace.
+   public static final int MAX_LOCATION = 100;
+   private static Layout tsLayout, placeLayout;
+
+   static {
+      Schema tsSchema = new Schema();
+      tsSchema.addStringField("tsname", TableMgr.MAX_NAME);
+      tsSchema.addStringField("location", MAX_LOCATION);
+      tsLayout = new Layout(tsSchema);
+
+      Schema placeSchema = new Schema();
+      placeSchema.addStringField("objname", TableMgr.MAX_NAME);
+      placeSchema.addStringField("objtype", 5);
+      placeSchema.addStringField("tsname", TableMgr.MAX_NAME);
+      placeLayout = new Layout(placeSchema);
+   }
+
+   /**
+    * Creates the tablespace manager.
+    * The two catalog tables are created if the database is new,
+    * or if it was created before there were tablespaces.
+    * @param isNew has the value true if the database is new
+    * @param tblMgr the table manager
+    * @param tx the startup transaction
+    */
+   public TablespaceMgr(boolean isNew, TableMgr tblMgr, Transaction tx) {
+      if (isNew || tblMgr.getLayout("tscat", tx).schema().fields().isEmpty()) {
+         tblMgr.createTable("tscat", tsLayout.schema(), tx);
+         tblMgr.createTable("placecat", placeLayout.schema(), tx);
+      }
+   }
+
+   /**
+    * Creates a tablespace at the specified location,
+    * creating its directory if need be.
+    * A relative location is taken from the server's working
+    * directory, as the database directory is.
+    * @param tsname the name of the tablespace
+    * @param location the path of the tablespace's directory
+    * @param tx the transaction
+    */
+   public void createTablespace(String tsname, String location, Transaction tx) {
+      if (location(tsname, tx) != null)
+         throw new RuntimeException("tablespace " + tsname + " already exists");
+      if (location.length() > MAX_LOCATION)
+         throw new RuntimeException("tablespace location longer than "
+                                    + MAX_LOCATION + " characters");
+      File dir = new File(location);
+      dir.mkdirs();
+      if (!dir.isDirectory())
+         throw new RuntimeException("cannot create directory " + location);
+      TableScan ts = new TableScan(tx, "tscat", tsLayout);
+      ts.insert();
+      ts.setString("tsname", tsname);
+      ts.setString("location", location);
+      ts.close();
+   }
+
+   /**
+    * Places the files of a new table in the specified tablespace,
+    * or in the database directory if the tablespace is null.
+    * @param tblname the name of the table
+    * @param tsname the name of the tablespace, or null
+    * @param tx the transaction
+    */
+   public void placeTable(String tblname, String tsname, Transaction tx) {
+      place(tblname, "table", tsname, tx);
+   }
+
+   /**
+    * Places the files of a new index in the specified tablespace,
+    * or in the database directory if the tablespace is null.
+    * @param idxname the name of the index
+    * @param tsname the name of the tablespace, or null
+    * @param tx the transaction
+    */
+   public void placeIndex(String idxname, String tsname, Transaction tx) {
+      place(idxname, "index", tsname, tx);
+   }
+
+   /**
+    * Returns the files of the two catalog tables.
+    * @return the names of the files
+    */
+   static List<String> catalogFiles() {
+      return Arrays.asList("tscat.tbl", "placecat.tbl");
+   }
+
+   /**
+    * Tells the file manager the directory of every file
+    * placed in a tablespace.
+    * The catalog tables are not scanned while they have no blocks,
+    * since a scan would append one before recovery;
+    * a database created before there were tablespaces
+    * has no tablespace catalog at all.
+    * @param tx the startup transaction
+    */
+   static void placeFiles(Transaction tx) {
+      if (tx.size("tscat.tbl") == 0 || tx.size("placecat.tbl") == 0)
+         return;
+      Map<String,File> dirs = new HashMap<>();
+      TableScan ts = new TableScan(tx, "tscat", tsLayout);
+      while (ts.next())
+         dirs.put(ts.getString("tsname"), new File(ts.getString("location")));
+      ts.close();
+
+      TableScan pcat = new TableScan(tx, "placecat", placeLayout);
+      while (pcat.next()) {
+         String objname = pcat.getString("objname");
+         File dir = dirs.get(pcat.getString("tsname"));
+         for (String filename : fileNames(objname, pcat.getString("objtype")))
+            tx.setDirectory(filename, dir);
+      }
+      pcat.close();
+   }
+
+   /**
+    * A file left placed by a transaction that rolled back
+    * is put back in the database directory when an object
+    * of the same name is created outside any tablespace.
+    */
+   private void place(String objname, String objtype, String tsname, Transaction tx) {
+      File dir = null;
+      if (tsname != null) {
+         String location = location(tsname, tx);
+         if (location == null)
+            throw new RuntimeException("no tablespace " + tsname);
+         dir = new File(location);
+         TableScan pcat = new TableScan(tx, "placecat", placeLayout);
+         pcat.insert();
+         pcat.setString("objname", objname);
+         pcat.setString("objtype", objtype);
+         pcat.setString("tsname", tsname);
+         pcat.close();
+      }
+      for (String filename : fileNames(objname, objtype))
+         tx.setDirectory(filename, dir);
+   }
+
+   private String location(String tsname, Transaction tx) {
+      String result = null;
+      TableScan ts = new TableScan(tx, "tscat", tsLayout);
+      while (ts.next())
+         if (ts.getString("tsname").equals(tsname)) {
+            result = ts.getString("location");
+            break;
+         }
+      ts.close();
+      return result;
+   }
+
+   private static List<String> fileNames(String objname, String objtype) {
+      return objtype.equals("table") ? Arrays.asList(objname + ".tbl")
+                                     : IndexInfo.fileNames(objname);
+   }
+}
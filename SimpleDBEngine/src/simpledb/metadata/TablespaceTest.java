@@ -0,0 +1,95 @@
+package simpledb.metadata;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.materialize.MaterializePlan;
+
+/**
+ * Puts the log and the temporary files in directories of their own,
+ * creates a table and an index in a tablespace, and checks
+ * that their files are in the tablespace and not in the
+ * database directory. The records are then read back
+ * through the index after a restart, which finds the files
+ * from the catalog, and the location of the tablespace is
+ * read from the catalog with a query, since the words of the
+ * tablespace grammar are not reserved.
+ */
+public class TablespaceTest {
+   private static final int NUM_RECORDS = 200;
+
+   public static void main(String[] args) {
+      String dirname = "tablespacetest";
+      String tsdir = "tablespacetest_ts";
+      SimpleDB.LOG_DIRECTORY = "tablespacetest_log";
+      SimpleDB.TEMP_DIRECTORY = "tablespacetest_temp";
+      SimpleDB db = new SimpleDB(dirname);
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      if (!new File(tsdir, "moved.tbl").exists()) {
+         planner.executeUpdate("create tablespace fast location '" + tsdir + "'", tx);
+         planner.executeUpdate("create table moved(A int, B varchar(10)) tablespace fast", tx);
+         planner.executeUpdate("create index movedidx on moved(A) tablespace fast", tx);
+         planner.executeUpdate("create table stayed(A int)", tx);
+         for (int i=0; i<NUM_RECORDS; i++) {
+            planner.executeUpdate("insert into moved(A,B) values("
+                                  + i + ", 'rec" + i + "')", tx);
+            planner.executeUpdate("insert into stayed(A) values(" + i + ")", tx);
+         }
+      }
+      tx.commit();
+
+      // materializing a table makes a temporary file
+      tx = db.newTx();
+      Plan tp = new TablePlan(tx, "stayed", db.mdMgr());
+      Scan s = new MaterializePlan(tx, tp).open();
+      while (s.next())
+         ;
+      s.close();
+      tx.commit();
+
+      boolean placed = new File(tsdir, "moved.tbl").exists()
+                    && !new File(dirname, "moved.tbl").exists()
+                    && new File(dirname, "stayed.tbl").exists();
+      for (int bucket=0; bucket<10; bucket++)
+         if (new File(dirname, "movedidx" + bucket + ".tbl").exists())
+            placed = false;
+      System.out.println(placed ? "The table and its index are in the tablespace"
+                                : "The table or its index is in the wrong place");
+      System.out.println("The log is "
+            + (new File(SimpleDB.LOG_DIRECTORY, SimpleDB.LOG_FILE + ".0").exists()
+               && !new File(dirname, SimpleDB.LOG_FILE + ".0").exists() ? "" : "not ")
+            + "in its own directory");
+      String[] temps = new File(SimpleDB.TEMP_DIRECTORY).list();
+      boolean tempsInDb = false;
+      for (String f : new File(dirname).list())
+         tempsInDb |= f.startsWith("temp");
+      System.out.println("The temporary files are "
+            + (temps.length > 0 && !tempsInDb ? "" : "not ") + "in their own directory");
+      db.shutdown();
+
+      SimpleDB db2 = new SimpleDB(dirname);
+      Transaction tx2 = db2.newTx();
+      int errors = 0;
+      for (int i=0; i<NUM_RECORDS; i+=7) {
+         Plan p = db2.planner().createQueryPlan("select B from moved where A = " + i, tx2);
+         Scan s2 = p.open();
+         if (!s2.next() || !s2.getString("b").equals("rec" + i))
+            errors++;
+         s2.close();
+      }
+      Scan s3 = db2.planner().createQueryPlan("select location from tscat "
+                                              + "where tsname = 'fast'", tx2).open();
+      String location = s3.next() ? s3.getString("location") : null;
+      s3.close();
+      tx2.commit();
+      System.out.println(errors == 0 ? "All records found through the index after a restart"
+                                     : errors + " records not found");
+      System.out.println("The catalog gives the location of the tablespace as " + location
+                         + "; expected " + tsdir);
+      SimpleDB.LOG_DIRECTORY = null;
+      SimpleDB.TEMP_DIRECTORY = null;
+   }
+}
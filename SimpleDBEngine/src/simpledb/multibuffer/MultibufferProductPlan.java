@@ -4,6 +4,7 @@ import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.query.*;
 import simpledb.materialize.*;
+import simpledb.plan.MemoryGrant;
 import simpledb.plan.Plan;
 
 /**
@@ -15,6 +16,7 @@ public class MultibufferProductPlan implements Plan {
    private Transaction tx;
    private Plan lhs, rhs;
    private Schema schema = new Schema();
+   private MemoryGrant grant;
 
    /**
     * Creates a product plan for the specified queries.
@@ -23,7 +25,20 @@ public class MultibufferProductPlan implements Plan {
     * @param tx the calling transaction
     */
    public MultibufferProductPlan(Transaction tx, Plan lhs, Plan rhs) {
+      this(tx, lhs, rhs, new MemoryGrant(tx));
+   }
+
+   /**
+    * Creates a product plan for the specified queries,
+    * whose chunks are sized from the specified memory grant.
+    * @param lhs the plan for the LHS query
+    * @param rhs the plan for the RHS query
+    * @param tx the calling transaction
+    * @param grant the memory grant of the query
+    */
+   public MultibufferProductPlan(Transaction tx, Plan lhs, Plan rhs, MemoryGrant grant) {
       this.tx = tx;
+      this.grant = grant;
       this.lhs = new MaterializePlan(tx, lhs);
       this.rhs = rhs;
       schema.addAll(lhs.schema());
@@ -35,7 +50,7 @@ public class MultibufferProductPlan implements Plan {
     * First, the method materializes its LHS and RHS queries.
     * It then determines the optimal chunk size,
     * based on the size of the materialized RHS file and the
-    * number of available buffers.
+    * number of frames it can reserve from the grant.
     * It creates a chunk plan for each chunk, saving them in a list.
     * Finally, it creates a multiscan for this list of plans,
     * and returns that scan.
@@ -44,7 +59,7 @@ public class MultibufferProductPlan implements Plan {
    public Scan open() {
       Scan leftscan = lhs.open();
       TempTable tt = copyRecordsFrom(rhs);
-      return new MultibufferProductScan(tx, leftscan, tt.tableName(), tt.getLayout());
+      return new MultibufferProductScan(tx, leftscan, tt.tableName(), tt.getLayout(), grant);
    }
 
    /**
@@ -52,14 +67,15 @@ public class MultibufferProductPlan implements Plan {
     * required to execute the query. The formula is:
     * <pre> B(product(p1,p2)) = B(p2) + B(p1)*C(p2) </pre>
     * where C(p2) is the number of chunks of p2.
-    * The method uses the current number of available buffers
-    * to calculate C(p2), and so this value may differ
-    * when the query scan is opened.
+    * The method uses the size of the memory grant
+    * to calculate C(p2); the scan may get fewer frames
+    * if other operators of the query are holding some
+    * when it is opened.
     * @see simpledb.plan.Plan#blocksAccessed()
     */
    public int blocksAccessed() {
       // this guesses at the # of chunks
-      int avail = tx.availableBuffs();
+      int avail = Math.max(1, grant.frames());
       int size = new MaterializePlan(tx, rhs).blocksAccessed();
       int numchunks = size / avail;
       return rhs.blocksAccessed() +
@@ -102,7 +118,7 @@ public class MultibufferProductPlan implements Plan {
       Scan   src = p.open(); 
       Schema sch = p.schema();
       TempTable t = new TempTable(tx, sch);
-      UpdateScan dest = (UpdateScan) t.open();
+      UpdateScan dest = t.openForWrite();
       while (src.next()) {
          dest.insert();
          for (String fldname : sch.fields())
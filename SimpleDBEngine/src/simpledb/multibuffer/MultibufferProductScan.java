@@ -1,6 +1,8 @@
 package simpledb.multibuffer;
 
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferReservation;
+import simpledb.plan.MemoryGrant;
 import simpledb.query.*;
 import simpledb.record.*;
 
@@ -15,22 +17,28 @@ public class MultibufferProductScan implements Scan {
    private String filename;
    private Layout layout;
    private int chunksize, nextblknum, filesize;
+   private MemoryGrant grant;
+   private BufferReservation reservation;
    
    
    /**
     * Creates the scan class for the product of the LHS scan and a table.
+    * The frames for the chunks are reserved out of the query's grant,
+    * and are held until the scan is closed.
     * @param lhsscan the LHS scan
     * @param layout the metadata for the RHS table
     * @param tx the current transaction
+    * @param grant the memory grant of the query
     */
-   public MultibufferProductScan(Transaction tx, Scan lhsscan, String tblname, Layout layout) {
+   public MultibufferProductScan(Transaction tx, Scan lhsscan, String tblname, Layout layout, MemoryGrant grant) {
       this.tx = tx;
       this.lhsscan = lhsscan;
       this.filename = tblname + ".tbl";
       this.layout = layout;
+      this.grant = grant;
       filesize = tx.size(filename);
-      int available = tx.availableBuffs();
-      chunksize = BufferNeeds.bestFactor(available, filesize);
+      reservation = grant.reserve(filesize + 2);
+      chunksize = BufferNeeds.bestFactor(reservation.size(), filesize);
       beforeFirst();
    }
    
@@ -61,11 +69,13 @@ public class MultibufferProductScan implements Scan {
    }
    
    /**
-    * Closes the current scans.
+    * Closes the current scans, and releases the
+    * frames reserved for the chunks.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
       prodscan.close();
+      grant.release(reservation);
    }
    
    /** 
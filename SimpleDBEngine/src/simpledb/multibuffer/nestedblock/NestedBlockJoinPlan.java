@@ -2,6 +2,7 @@ package simpledb.multibuffer.nestedblock;
 
 import simpledb.materialize.MaterializePlan;
 import simpledb.materialize.TempTable;
+import simpledb.plan.MemoryGrant;
 import simpledb.plan.Plan;
 import simpledb.plan.ProductPlan;
 import simpledb.query.Predicate;
@@ -21,6 +22,7 @@ public class NestedBlockJoinPlan implements Plan {
    private Schema schema = new Schema();
    private Predicate pred;
    private boolean isSwapped = false;
+   private MemoryGrant grant;
 
    /**
     * Creates a join plan for the specified queries.
@@ -30,7 +32,21 @@ public class NestedBlockJoinPlan implements Plan {
     * @param pred the predicate to apply to the join
     */
    public NestedBlockJoinPlan(Transaction tx, Plan lhs, Plan rhs, Predicate pred) {
+      this(tx, lhs, rhs, pred, new MemoryGrant(tx));
+   }
+
+   /**
+    * Creates a join plan for the specified queries,
+    * whose scan reserves its frames from the specified memory grant.
+    * @param lhs the plan for the LHS query
+    * @param rhs the plan for the RHS query
+    * @param tx the calling transaction
+    * @param pred the predicate to apply to the join
+    * @param grant the memory grant of the query
+    */
+   public NestedBlockJoinPlan(Transaction tx, Plan lhs, Plan rhs, Predicate pred, MemoryGrant grant) {
       this.tx = tx;
+      this.grant = grant;
       if (swapToOptimize(lhs, rhs)){
          Plan temp = lhs;
          lhs = rhs;
@@ -78,7 +94,7 @@ public class NestedBlockJoinPlan implements Plan {
         lhsTT = (TableScan) lhs.open();
         rhsTT = (TableScan) copyRecordsFrom(rhs).open();
       }
-      return new NestedBlockJoinScan(tx, lhsTT, rhsTT, pred);
+      return new NestedBlockJoinScan(tx, lhsTT, rhsTT, pred, grant);
    }
 
    /**
@@ -131,7 +147,7 @@ public class NestedBlockJoinPlan implements Plan {
       Scan   src = p.open();
       Schema sch = p.schema();
       TempTable t = new TempTable(tx, sch);
-      UpdateScan dest = (UpdateScan) t.open();
+      UpdateScan dest = t.openForWrite();
       while (src.next()) {
          dest.insert();
          for (String fldname : sch.fields()) {
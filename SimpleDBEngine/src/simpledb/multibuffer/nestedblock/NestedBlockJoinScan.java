@@ -1,5 +1,7 @@
 package simpledb.multibuffer.nestedblock;
 
+import simpledb.buffer.BufferReservation;
+import simpledb.plan.MemoryGrant;
 import simpledb.query.Constant;
 import simpledb.query.Predicate;
 import simpledb.query.Scan;
@@ -19,15 +21,23 @@ public class NestedBlockJoinScan implements Scan {
 
    private Predicate pred;
 
+   private MemoryGrant grant;
+   private BufferReservation reservation;
+
     /**
      * Creates the scan class for the product of the LHS scan and a table.
+     * The scan reserves a frame for the current block of each side
+     * out of the query's grant, and holds them until it is closed.
      * @param tx the current transaction
+     * @param grant the memory grant of the query
      */
-    public NestedBlockJoinScan(Transaction tx, TableScan lhs, TableScan rhs, Predicate pred) {
+    public NestedBlockJoinScan(Transaction tx, TableScan lhs, TableScan rhs, Predicate pred, MemoryGrant grant) {
         this.tx = tx;
         this.lhsscan = lhs;
         this.rhsscan = rhs;
         this.pred = pred;
+        this.grant = grant;
+        reservation = grant.reserve(2);
         beforeFirst();
     }
 
@@ -86,6 +96,7 @@ public class NestedBlockJoinScan implements Scan {
    public void close() {
       lhsscan.close();
       rhsscan.close();
+      grant.release(reservation);
    }
 
    /**
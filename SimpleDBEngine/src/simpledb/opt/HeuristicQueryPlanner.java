@@ -25,12 +25,15 @@ public class HeuristicQueryPlanner implements QueryPlanner {
     * to be first in the join order.
     * H2. Add the table to the join order which
     * results in the smallest output.
+    * The sorts, products and joins of the plan share
+    * one memory grant, fixed before planning begins.
     */
    public Plan createPlan(QueryData data, Transaction tx) {
+      MemoryGrant grant = new MemoryGrant(tx);
       
       // Step 1:  Create a TablePlanner object for each mentioned table
       for (String tblname : data.tables()) {
-         TablePlanner tp = new TablePlanner(tblname, data.pred(), tx, mdm);
+         TablePlanner tp = new TablePlanner(tblname, data.pred(), tx, mdm, grant);
          tableplanners.add(tp);
       }
       
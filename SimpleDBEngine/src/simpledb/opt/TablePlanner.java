@@ -25,6 +25,7 @@ public class TablePlanner {
    private Schema myschema;
    private Map<String,IndexInfo> indexes;
    private Transaction tx;
+   private MemoryGrant grant;
 
    /**
     * Creates a new table planner.
@@ -35,10 +36,12 @@ public class TablePlanner {
     * @param tblname the name of the table
     * @param mypred the query predicate
     * @param tx the calling transaction
+    * @param grant the memory grant of the query
     */
-   public TablePlanner(String tblname, Predicate mypred, Transaction tx, MetadataMgr mdm) {
+   public TablePlanner(String tblname, Predicate mypred, Transaction tx, MetadataMgr mdm, MemoryGrant grant) {
       this.mypred  = mypred;
       this.tx  = tx;
+      this.grant = grant;
       myplan   = new TablePlan(tx, tblname, mdm);
       myschema = myplan.schema();
       indexes  = mdm.getIndexInfo(tblname, tx);
@@ -152,7 +155,7 @@ public class TablePlanner {
     */
    public Plan makeProductPlan(Plan current) {
       Plan p = addSelectPred(myplan);
-      return new MultibufferProductPlan(tx, current, p);
+      return new MultibufferProductPlan(tx, current, p, grant);
    }
 
    private Plan makeIndexSelect() {
@@ -181,7 +184,7 @@ public class TablePlanner {
    }
 
    private Plan makeNestedBlockJoin(Plan current, Schema currsch) {
-      return new NestedBlockJoinPlan(tx, current, myplan, mypred.joinSubPred(currsch, myschema));
+      return new NestedBlockJoinPlan(tx, current, myplan, mypred.joinSubPred(currsch, myschema), grant);
    }
 
    private Plan makeMergeJoin(Plan current, Schema currsch) {
@@ -196,12 +199,12 @@ public class TablePlanner {
             String field2 = term.getRhs().asFieldName();
 
             if (currsch.hasField(field2) && myschema.hasField(field1)) {
-               p = new MergeJoinPlan(tx, current, myplan, field2, field1);
+               p = new MergeJoinPlan(tx, current, myplan, field2, field1, grant);
                p = addSelectPred(p);
                return addJoinPred(p, currsch);
             }
             else if (currsch.hasField(field1) && myschema.hasField(field2)) {
-               p = new MergeJoinPlan(tx, current, myplan, field1, field2);
+               p = new MergeJoinPlan(tx, current, myplan, field1, field2, grant);
                p = addSelectPred(p);
                return addJoinPred(p, currsch);
             }
@@ -5,15 +5,24 @@ package simpledb.parse;
  * @author Edward Sciore
  */
 public class CreateIndexData {
-   private String idxname, tblname, fldname;
+   private String idxname, tblname, fldname, tsname;
    
    /**
     * Saves the table and field names of the specified index.
     */
    public CreateIndexData(String idxname, String tblname, String fldname) {
+      this(idxname, tblname, fldname, null);
+   }
+   
+   /**
+    * Saves the table and field names of the specified index,
+    * and the tablespace of the index.
+    */
+   public CreateIndexData(String idxname, String tblname, String fldname, String tsname) {
       this.idxname = idxname;
       this.tblname = tblname;
       this.fldname = fldname;
+      this.tsname = tsname;
    }
    
    /**
@@ -39,5 +48,14 @@ public class CreateIndexData {
    public String fieldName() {
       return fldname;
    }
+   
+   /**
+    * Returns the tablespace of the new index, or null
+    * if the index is to be in the database directory.
+    * @return the name of the tablespace, or null
+    */
+   public String tablespace() {
+      return tsname;
+   }
 }
 
@@ -9,13 +9,33 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private boolean compressed;
+   private String tsname;
    
    /**
     * Saves the table name and schema.
     */
    public CreateTableData(String tblname, Schema sch) {
+      this(tblname, sch, false);
+   }
+   
+   /**
+    * Saves the table name and schema, and whether
+    * the table's blocks are to be stored compressed.
+    */
+   public CreateTableData(String tblname, Schema sch, boolean compressed) {
+      this(tblname, sch, compressed, null);
+   }
+   
+   /**
+    * Saves the table name and schema, whether the table's blocks
+    * are to be stored compressed, and the tablespace of the table.
+    */
+   public CreateTableData(String tblname, Schema sch, boolean compressed, String tsname) {
       this.tblname = tblname;
       this.sch = sch;
+      this.compressed = compressed;
+      this.tsname = tsname;
    }
    
    /**
@@ -33,5 +53,22 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+   
+   /**
+    * Returns true if the new table is to be stored compressed.
+    * @return true if the table is compressed
+    */
+   public boolean isCompressed() {
+      return compressed;
+   }
+   
+   /**
+    * Returns the tablespace of the new table, or null
+    * if the table is to be in the database directory.
+    * @return the name of the tablespace, or null
+    */
+   public String tablespace() {
+      return tsname;
+   }
 }
 
@@ -0,0 +1,32 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>create tablespace</i> statement.
+ */
+public class CreateTablespaceData {
+   private String tsname, location;
+   
+   /**
+    * Saves the tablespace name and the path of its directory.
+    */
+   public CreateTablespaceData(String tsname, String location) {
+      this.tsname = tsname;
+      this.location = location;
+   }
+   
+   /**
+    * Returns the name of the new tablespace.
+    * @return the name of the new tablespace
+    */
+   public String tablespaceName() {
+      return tsname;
+   }
+   
+   /**
+    * Returns the path of the new tablespace's directory.
+    * @return the location of the tablespace
+    */
+   public String location() {
+      return location;
+   }
+}
@@ -147,6 +147,9 @@ public class Lexer {
       }
    }
    
+   // "compressed", "tablespace" and "location" are not reserved; the parser
+   // matches them only where the grammar expects them, so they
+   // can still be used as the names of tables and fields
    private void initKeywords() {
       keywords = Arrays.asList("select", "from", "where", "and",
                                "insert", "into", "values", "delete", "update", "set", 
@@ -119,6 +119,8 @@ public class Parser {
          return createTable();
       else if (lex.matchKeyword("view"))
          return createView();
+      else if (lex.matchKeyword("tablespace"))
+         return createTablespace();
       else
          return createIndex();
    }
@@ -198,7 +200,22 @@ public class Parser {
       lex.eatDelim('(');
       Schema sch = fieldDefs();
       lex.eatDelim(')');
-      return new CreateTableData(tblname, sch);
+      boolean compressed = false;
+      String tsname = null;
+      while (lex.matchKeyword("compressed") || lex.matchKeyword("tablespace")) {
+         if (lex.matchKeyword("compressed")) {
+            lex.eatKeyword("compressed");
+            compressed = true;
+         }
+         else
+            tsname = tablespaceClause();
+      }
+      return new CreateTableData(tblname, sch, compressed, tsname);
+   }
+   
+   private String tablespaceClause() {
+      lex.eatKeyword("tablespace");
+      return lex.eatId();
    }
    
    private Schema fieldDefs() {
@@ -253,7 +270,20 @@ public class Parser {
       lex.eatDelim('(');
       String fldname = field();
       lex.eatDelim(')');
-      return new CreateIndexData(idxname, tblname, fldname);
+      String tsname = null;
+      if (lex.matchKeyword("tablespace"))
+         tsname = tablespaceClause();
+      return new CreateIndexData(idxname, tblname, fldname, tsname);
+   }
+   
+//  Method for parsing create tablespace commands
+   
+   public CreateTablespaceData createTablespace() {
+      lex.eatKeyword("tablespace");
+      String tsname = lex.eatId();
+      lex.eatKeyword("location");
+      String location = lex.eatStringConstant();
+      return new CreateTablespaceData(tsname, location);
    }
 }
 
@@ -0,0 +1,92 @@
+package simpledb.plan;
+
+import java.util.*;
+import simpledb.buffer.BufferReservation;
+import simpledb.tx.Transaction;
+
+/**
+ * The buffer frames that a query may use for its
+ * memory-intensive operators: sorts, multibuffer products and joins.
+ * The grant is fixed when the query is planned, from the frames
+ * that could then be reserved, so the plans can estimate their
+ * costs from what they will really get rather than from
+ * the number of buffers that happen to be unpinned.
+ * <P>
+ * When an operator's scan is opened, it reserves its frames
+ * out of the grant, and holds them until it is closed;
+ * an operator opened while others hold frames gets what is left.
+ * Rather than wait for frames, a reservation is cut down
+ * to the frames that can be reserved at the moment,
+ * but never below one frame, since every operator pins a block.
+ */
+public class MemoryGrant {
+   private Transaction tx;
+   private int frames;
+   private Set<BufferReservation> held = new HashSet<>();
+   private int outstanding = 0;
+
+   /**
+    * Creates a grant of the frames that the transaction
+    * can currently reserve.
+    * @param tx the calling transaction
+    */
+   public MemoryGrant(Transaction tx) {
+      this(tx, tx.reservableBuffs());
+   }
+
+   /**
+    * Creates a grant of the specified number of frames.
+    * @param tx the calling transaction
+    * @param frames the number of frames granted
+    */
+   public MemoryGrant(Transaction tx, int frames) {
+      this.tx = tx;
+      this.frames = frames;
+   }
+
+   /**
+    * Returns the number of frames granted to the query.
+    * @return the size of the grant
+    */
+   public int frames() {
+      return frames;
+   }
+
+   /**
+    * Returns the number of granted frames that
+    * no open operator is holding.
+    * @return the number of remaining frames
+    */
+   public int remaining() {
+      return Math.max(0, frames - outstanding);
+   }
+
+   /**
+    * Reserves up to the specified number of frames for an operator,
+    * limited by the frames remaining in the grant
+    * and by the frames that can be reserved now,
+    * but at least one frame.
+    * @param wanted the number of frames the operator could use
+    * @return the reservation, which may be smaller than wanted
+    */
+   public BufferReservation reserve(int wanted) {
+      int numframes = Math.min(wanted, Math.min(remaining(), tx.reservableBuffs()));
+      BufferReservation r = tx.reserveBuffs(Math.max(1, numframes));
+      held.add(r);
+      outstanding += r.size();
+      return r;
+   }
+
+   /**
+    * Returns the frames of the specified reservation
+    * to the grant and to the buffer pool.
+    * Releasing a reservation twice has no effect.
+    * @param r a reservation made by this grant
+    */
+   public void release(BufferReservation r) {
+      if (held.remove(r)) {
+         tx.releaseBuffs(r);
+         outstanding -= r.size();
+      }
+   }
+}
@@ -0,0 +1,116 @@
+package simpledb.plan;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.buffer.*;
+import simpledb.file.BlockId;
+import simpledb.materialize.SortPlan;
+import simpledb.metadata.MetadataMgr;
+import simpledb.query.Scan;
+import simpledb.tx.Transaction;
+
+/**
+ * Reserves frames directly and through a memory grant,
+ * checks that pins of other transactions stay out of
+ * reserved frames, and then sorts the same table
+ * with a small and a large grant.
+ */
+public class MemoryGrantTest {
+   public static void main(String[] args) throws Exception {
+      reserveTest();
+      enforceTest();
+      sortTest();
+   }
+
+   private static void reserveTest() throws Exception {
+      SimpleDB db = new SimpleDB("granttest", 400, 10);
+      BufferMgr bm = db.bufferMgr();
+      BufferReservation r1 = bm.reserve(6);
+      System.out.println("Reserved " + r1.size() + ", " + bm.reservable() + " reservable");
+
+      // a second reservation of 5 has to wait for the first
+      Thread t = new Thread(() -> {
+         BufferReservation r2 = bm.reserve(5);
+         System.out.println("Reserved " + r2.size() + " after the release");
+         bm.release(r2);
+      });
+      t.start();
+      Thread.sleep(200);
+      System.out.println("Releasing " + r1.size());
+      bm.release(r1);
+      bm.release(r1); // no effect
+      t.join();
+      System.out.println(bm.reserved() + " reserved");
+
+      Transaction tx = db.newTx();
+      MemoryGrant grant = new MemoryGrant(tx, 8);
+      BufferReservation a = grant.reserve(5);
+      BufferReservation b = grant.reserve(5); // only 3 left in the grant
+      System.out.println("Grant of " + grant.frames() + " gave " + a.size()
+            + " and " + b.size() + ", " + grant.remaining() + " remaining");
+      grant.release(a);
+      tx.commit(); // releases b
+      System.out.println(bm.reserved() + " reserved after commit");
+   }
+
+   private static void enforceTest() throws Exception {
+      SimpleDB db = new SimpleDB("enforcetest", 400, 10);
+      BufferMgr bm = db.bufferMgr();
+      Transaction tx1 = db.newTx();
+      BufferReservation r = tx1.reserveBuffs(6);
+      Transaction tx2 = db.newTx();
+      for (int i=0; i<4; i++)
+         tx2.pin(new BlockId("enforcefile", i));
+
+      // a fifth pin would take a reserved frame
+      Thread t = new Thread(() -> tx2.pin(new BlockId("enforcefile", 4)));
+      t.start();
+      Thread.sleep(200);
+      System.out.println("The fifth unreserved pin is "
+            + (t.isAlive() ? "waiting" : "done") + ", " + bm.available() + " available");
+      System.out.println("Shrinking to 2 buffers leaves " + bm.resize(2));
+
+      for (int i=10; i<16; i++)
+         tx1.pin(new BlockId("enforcefile", i));
+      System.out.println("The reservation has " + r.unused() + " unused frames");
+      tx1.commit(); // unpins and releases the reservation
+      t.join(2000);
+      System.out.println("The fifth pin is " + (t.isAlive() ? "still waiting" : "done")
+            + " after the release");
+
+      MemoryGrant grant = new MemoryGrant(tx2, 0);
+      BufferReservation least = grant.reserve(5);
+      System.out.println("An empty grant gave " + least.size() + " frame");
+      tx2.commit();
+   }
+
+   private static void sortTest() {
+      SimpleDB db = new SimpleDB("sortgranttest");
+      Transaction tx = db.newTx();
+      Planner planner = db.planner();
+      MetadataMgr mdm = db.mdMgr();
+      planner.executeUpdate("create table S(A int)", tx);
+      Random rand = new Random(448);
+      for (int i=0; i<300; i++)
+         planner.executeUpdate("insert into S(A) values(" + rand.nextInt(1000) + ")", tx);
+
+      for (int frames : new int[] {3, 40}) {
+         MemoryGrant grant = new MemoryGrant(tx, frames);
+         Plan p = new SortPlan(tx, new TablePlan(tx, "s", mdm), Arrays.asList("a"), grant);
+         Scan s = p.open();
+         int count = 0, prev = Integer.MIN_VALUE;
+         boolean sorted = true;
+         while (s.next()) {
+            int a = s.getInt("a");
+            sorted = sorted && prev <= a;
+            prev = a;
+            count++;
+         }
+         s.close();
+         System.out.println("Grant of " + frames + ": " + count
+               + " records, " + (sorted ? "sorted" : "NOT sorted")
+               + ", " + grant.remaining() + " frames remaining");
+      }
+      tx.commit();
+   }
+}
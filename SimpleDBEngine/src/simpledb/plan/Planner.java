@@ -61,6 +61,8 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof CreateTablespaceData)
+         return uplanner.executeCreateTablespace((CreateTablespaceData)data, tx);
       else
          return 0;
    }
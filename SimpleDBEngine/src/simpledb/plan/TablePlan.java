@@ -1,6 +1,7 @@
 package simpledb.plan;
 
 import simpledb.tx.Transaction;
+import simpledb.buffer.BufferRing;
 import simpledb.metadata.*;
 import simpledb.query.Scan;
 import simpledb.record.*;
@@ -29,9 +30,13 @@ public class TablePlan implements Plan {
    
    /**
     * Creates a table scan for this query.
+    * If the table is larger than a quarter of the buffer pool,
+    * the scan reads it through a bulk read ring.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
+      if (si.blocksAccessed() > tx.bufferPoolSize() / 4)
+         return new TableScan(tx, tblname, layout, BufferRing.BULKREAD);
       return new TableScan(tx, tblname, layout);
    }
    
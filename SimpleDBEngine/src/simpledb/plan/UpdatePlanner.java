@@ -63,4 +63,13 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified create tablespace statement, and
+    * returns the number of affected records.
+    * @param data the parsed representation of the create tablespace statement
+    * @param tx the calling transaction
+    * @return the number of affected records
+    */
+   public int executeCreateTablespace(CreateTablespaceData data, Transaction tx);
 }
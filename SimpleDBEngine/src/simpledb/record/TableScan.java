@@ -2,12 +2,16 @@ package simpledb.record;
 
 import static java.sql.Types.INTEGER;
 import simpledb.file.BlockId;
+import simpledb.file.FileRegistry;
+import simpledb.buffer.*;
 import simpledb.query.*;
 import simpledb.tx.Transaction;
 
 /**
  * Provides the abstraction of an arbitrarily large array
  * of records.
+ * The blocks of a scan that moves through them in order
+ * are read into the buffer pool ahead of it by a {@link ReadAhead}.
  * @author sciore
  */
 public class TableScan implements UpdateScan {
@@ -15,12 +19,33 @@ public class TableScan implements UpdateScan {
    private Layout layout;
    private RecordPage rp;
    private String filename;
+   private int fileid;
    private int currentslot;
+   private BufferRing ring = null;
+   private ReadAhead readahead;
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
+      this(tx, tblname, layout, null);
+   }
+
+   /**
+    * Creates a scan that moves from block to block through
+    * a ring of the specified kind, so that it does not push
+    * other blocks out of the buffer pool.
+    * The ring is not used for {@link #moveToRid(RID)}.
+    * @param ringkind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    */
+   public TableScan(Transaction tx, String tblname, Layout layout, int ringkind) {
+      this(tx, tblname, layout, tx.newBufferRing(ringkind));
+   }
+
+   private TableScan(Transaction tx, String tblname, Layout layout, BufferRing ring) {
       this.tx = tx;
       this.layout = layout;
+      this.ring = ring;
       filename = tblname + ".tbl";
+      fileid = FileRegistry.id(filename);
+      readahead = tx.newReadAhead(filename, ring);
       if (tx.size(filename) == 0)
          moveToNewBlock();
       else
@@ -72,8 +97,10 @@ public class TableScan implements UpdateScan {
    }
 
    public void close() {
-      if (rp != null)
-         tx.unpin(rp.block());
+      unpinCurrent();
+      readahead.close();
+      if (ring != null)
+         tx.releaseBufferRing(ring);
    }
 
    // Methods that implement UpdateScan
@@ -109,8 +136,8 @@ public class TableScan implements UpdateScan {
    }
 
    public void moveToRid(RID rid) {
-      close();
-      BlockId blk = new BlockId(filename, rid.blockNumber());
+      unpinCurrent();
+      BlockId blk = new BlockId(filename, fileid, rid.blockNumber());
       rp = new RecordPage(tx, blk, layout);
       currentslot = rid.slot();
    }
@@ -121,17 +148,23 @@ public class TableScan implements UpdateScan {
 
    // Private auxiliary methods
 
+   private void unpinCurrent() {
+      if (rp != null)
+         tx.unpin(rp.block());
+   }
+
    private void moveToBlock(int blknum) {
-      close();
-      BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      unpinCurrent();
+      BlockId blk = new BlockId(filename, fileid, blknum);
+      rp = new RecordPage(tx, blk, layout, ring);
       currentslot = -1;
+      readahead.moved(blknum);
    }
 
    private void moveToNewBlock() {
-      close();
+      unpinCurrent();
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, ring);
       rp.format();
       currentslot = -1;
    }
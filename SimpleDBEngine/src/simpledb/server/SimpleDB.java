@@ -1,10 +1,15 @@
 package simpledb.server;
 
 import java.io.File;
+import java.util.SortedMap;
 import simpledb.file.FileMgr;
 import simpledb.log.LogMgr;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferPoolMonitor;
+import simpledb.buffer.PoolSizeAdvisor;
+import simpledb.buffer.ReplacementPolicy;
 import simpledb.tx.Transaction;
+import simpledb.tx.recovery.*;
 import simpledb.metadata.MetadataMgr;
 import simpledb.plan.*;
 import simpledb.index.planner.IndexUpdatePlanner;
@@ -19,12 +24,31 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static String BUFFER_DUMP_FILE = "bufferpool.dump";
+   public static String BUFFER_POLICY = "clock"; // the default; "lru", "clock", "lru-k" or "2q"
+   public static int BUFFER_WRITER_DELAY = 200; // milliseconds; 0 disables the writer
+   public static String STORAGE = "file"; // "file", "mapped" or "direct"
+   public static int FILE_EXTENT_SIZE = 8; // blocks a file grows by at a time
+   public static int READ_AHEAD_BLOCKS = 16; // blocks read ahead of a sequential scan; 0 disables it
+   public static int LOG_BUFFER_PAGES = 8; // pages in the ring of the log tail
+   public static int LOG_SEGMENT_BLOCKS = 1024; // blocks in each segment file of the log
+   public static int LOG_CACHE_BLOCKS = 16; // log blocks cached for rollbacks; 0 disables the cache
+   public static int LOG_WRITER_DELAY = 100; // milliseconds; 0 disables the log writer
+   public static int COMMIT_DELAY = 0; // milliseconds a log force waits for more commits to join it
+   public static int COMMIT_BATCH = 8; // commits that end the commit delay early
+   public static int CHECKPOINT_INTERVAL = 30000; // milliseconds between fuzzy checkpoints; 0 disables them
+   public static String LOG_DIRECTORY = null; // null keeps the log in the database directory
+   public static String TEMP_DIRECTORY = null; // null keeps temporary files in the database directory
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
    private  LogMgr      lm;
    private  MetadataMgr mdm;
    private  Planner planner;
+   private  Checkpointer checkpointer;
+   private  BufferPoolMonitor monitor;
+   private  String dirname;
+   private  boolean isShutdown = false;
 
    /**
     * A constructor useful for debugging.
@@ -33,10 +57,38 @@ public class SimpleDB {
     * @param buffsize the number of buffers
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
+      this(dirname, blocksize, buffsize, BUFFER_POLICY);
+   }
+   
+   /**
+    * A constructor useful for comparing buffer replacement policies.
+    * @param dirname the name of the database directory
+    * @param blocksize the block size
+    * @param buffsize the number of buffers
+    * @param policy the name of the buffer replacement policy:
+    * "lru", "clock", "lru-k" or "2q"; the other constructors
+    * use {@link #BUFFER_POLICY}, which is "clock" by default
+    */
+   public SimpleDB(String dirname, int blocksize, int buffsize, String policy) {
+      this.dirname = dirname;
       File dbDirectory = new File(dirname);
-      fm = new FileMgr(dbDirectory, blocksize);
-      lm = new LogMgr(fm, LOG_FILE);
-      bm = new BufferMgr(fm, lm, buffsize); 
+      fm = new FileMgr(dbDirectory, blocksize, STORAGE, FILE_EXTENT_SIZE);
+      if (LOG_DIRECTORY != null)
+         fm.setDirectory(LOG_FILE, new File(LOG_DIRECTORY));
+      if (TEMP_DIRECTORY != null)
+         fm.setTempDirectory(new File(TEMP_DIRECTORY));
+      lm = new LogMgr(fm, LOG_FILE, LOG_BUFFER_PAGES, LOG_SEGMENT_BLOCKS);
+      if (LOG_WRITER_DELAY > 0)
+         lm.startWriter(LOG_WRITER_DELAY);
+      lm.setCommitDelay(COMMIT_DELAY, COMMIT_BATCH);
+      lm.setCacheSize(LOG_CACHE_BLOCKS);
+      bm = new BufferMgr(fm, lm, buffsize,
+                         ReplacementPolicy.create(policy, buffsize)); 
+      if (BUFFER_WRITER_DELAY > 0)
+         bm.startWriter(BUFFER_WRITER_DELAY);
+      bm.setReadAhead(READ_AHEAD_BLOCKS);
+      if (READ_AHEAD_BLOCKS > 0)
+         bm.startPrefetcher();
    }
    
    /**
@@ -52,8 +104,16 @@ public class SimpleDB {
          System.out.println("creating new database");
       else {
          System.out.println("recovering existing database");
+         // the placements are read from the recovered tablespace catalog,
+         // and the files in tablespaces are found before the rest is recovered
+         tx.recoverFiles(MetadataMgr.placementFiles());
+         MetadataMgr.placeFiles(tx);
          tx.recover();
       }
+      bm.setDumpFile(new File(dirname, BUFFER_DUMP_FILE));
+      bm.startPrewarm();
+      monitor = new BufferPoolMonitor(bm);
+      monitor.register(dirname);
       mdm = new MetadataMgr(isnew, tx);
 //      QueryPlanner qp = new BasicQueryPlanner(mdm);
 //      UpdatePlanner up = new BasicUpdatePlanner(mdm);
@@ -61,6 +121,12 @@ public class SimpleDB {
     UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      if (CHECKPOINT_INTERVAL > 0) {
+         checkpointer = new Checkpointer(lm, bm, CHECKPOINT_INTERVAL);
+         Thread t = new Thread(checkpointer, "checkpointer");
+         t.setDaemon(true);
+         t.start();
+      }
    }
    
    /**
@@ -79,6 +145,77 @@ public class SimpleDB {
       return planner;
    }
 
+   /**
+    * Shuts the system down cleanly, once no transactions are running.
+    * The background threads are stopped, the dirty buffers are written,
+    * and the ids of the blocks in the buffer pool are recorded so that
+    * the next startup can read them back in. The files are then closed.
+    * Shutting down again does nothing.
+    */
+   public synchronized void shutdown() {
+      if (isShutdown)
+         return;
+      isShutdown = true;
+      if (checkpointer != null)
+         checkpointer.stop();
+      bm.stopWriter();
+      bm.stopPrefetcher();
+      bm.stopPrewarm();
+      bm.flushAll();
+      lm.stopWriter();
+      bm.dumpResidentBlocks();
+      if (monitor != null)
+         monitor.unregister(dirname);
+      fm.close();
+   }
+
+   /**
+    * Writes a fuzzy checkpoint now, without waiting for
+    * the checkpointer, and flushes the pages that were dirty.
+    * Transactions keep running during the checkpoint.
+    * @return the LSN of the checkpoint record
+    */
+   public long checkpoint() {
+      return RecoveryMgr.checkpoint(lm, bm);
+   }
+
+   // These methods administer the buffer pool while the system runs
+   /**
+    * Resizes the buffer pool without stopping transactions.
+    * @param numbuffs the requested number of buffers
+    * @return the number of buffers after the resize, which is
+    * more than requested if too many buffers were pinned
+    */
+   public int resizeBufferPool(int numbuffs) {
+      return bm.resize(numbuffs);
+   }
+
+   /**
+    * Starts estimating the hit ratio of pools up to
+    * four times the current size.
+    */
+   public void startBufferPoolAdvisor() {
+      bm.startAdvisor(4 * bm.size());
+   }
+
+   /**
+    * Estimates the hit ratio of pools from a quarter of
+    * the current size up to four times it, from the pins made
+    * since the advisor was started.
+    * @return a map from each pool size to its estimated hit ratio
+    */
+   public SortedMap<Integer,Double> bufferPoolAdvice() {
+      PoolSizeAdvisor advisor = bm.advisor();
+      if (advisor == null)
+         throw new IllegalStateException("the buffer pool advisor is not running");
+      int n = bm.size();
+      return advisor.estimate(Math.max(1, n/4), Math.max(1, n/2), n, 2*n, 4*n);
+   }
+
+   public void stopBufferPoolAdvisor() {
+      bm.stopAdvisor();
+   }
+
    // These methods aid in debugging
    public FileMgr fileMgr() {
       return fm;
@@ -9,6 +9,9 @@ public class StartServer {
       // configure and initialize the database
       String dirname = (args.length == 0) ? "studentdb" : args[0];
       SimpleDB db = new SimpleDB(dirname);
+      // the server runs until it is stopped, and then shuts the database down,
+      // which writes the dirty buffers and dumps the buffer pool
+      Runtime.getRuntime().addShutdownHook(new Thread(db::shutdown, "simpledb shutdown"));
       
       // create a registry specific for the server on the default port
       Registry reg = LocateRegistry.createRegistry(1099);
@@ -1,20 +1,30 @@
 package simpledb.tx;
 
 import java.util.*;
-import simpledb.file.BlockId;
+import simpledb.file.*;
 import simpledb.buffer.*;
 
 /**
  * Manage the transaction's currently-pinned buffers. 
+ * The number of pins the transaction holds is also
+ * kept in the statistics of the buffer pool.
+ * A block the transaction pinned more than once
+ * has a single entry, with the number of its pins.
+ * The first pin of a block is made through a reservation
+ * of the transaction that has a frame to spare, if any,
+ * and the last unpin through the same reservation.
  * @author Edward Sciore
  */
 public class BufferList {
-   private Map<BlockId,Buffer> buffers = new HashMap<>();
-   public static List<BlockId> pins = new ArrayList<>();
+   private BlockMap<Pins> buffers = new BlockMap<>();
+   private Set<BufferRing> rings = new HashSet<>();
+   private Set<BufferReservation> reservations = new HashSet<>();
    private BufferMgr bm;
+   private int txnum;
   
-   public BufferList(BufferMgr bm) {
+   public BufferList(BufferMgr bm, int txnum) {
       this.bm = bm;
+      this.txnum = txnum;
    }
    
    /**
@@ -25,7 +35,8 @@ public class BufferList {
     * @return the buffer pinned to that block
     */
    Buffer getBuffer(BlockId blk) {
-      return buffers.get(blk);
+      Pins p = buffers.get(blk);
+      return (p == null) ? null : p.buff;
    }
    
    /**
@@ -33,9 +44,66 @@ public class BufferList {
     * @param blk a reference to the disk block
     */
    void pin(BlockId blk) {
-      Buffer buff = bm.pin(blk);
-      buffers.put(blk, buff);
-      pins.add(blk);
+      pin(blk, null);
+   }
+   
+   /**
+    * Pin the block through the specified ring
+    * and keep track of the buffer internally.
+    * @param blk a reference to the disk block
+    * @param ring the ring to use, or null to use the shared pool
+    */
+   void pin(BlockId blk, BufferRing ring) {
+      Pins p = buffers.get(blk);
+      if (p == null) {
+         BufferReservation r = unusedReservation();
+         buffers.put(blk, new Pins(bm.pin(blk, ring, r), r));
+      }
+      else {
+         bm.pin(blk, ring);
+         p.count++;
+      }
+      bm.stats().txPinned(txnum);
+      if (ring != null)
+         rings.add(ring);
+   }
+   
+   /**
+    * Create a ring for the specified kind of access.
+    * @param kind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    * @return the new ring
+    */
+   BufferRing newRing(int kind) {
+      return bm.newRing(kind);
+   }
+   
+   /**
+    * Return the buffers of the ring to the shared pool.
+    * @param ring the ring to release
+    */
+   void releaseRing(BufferRing ring) {
+      bm.releaseRing(ring);
+      rings.remove(ring);
+   }
+   
+   /**
+    * Reserve the specified number of frames of the buffer pool.
+    * @param numframes the number of frames
+    * @return the reservation
+    */
+   BufferReservation reserve(int numframes) {
+      BufferReservation r = bm.reserve(numframes);
+      reservations.add(r);
+      return r;
+   }
+   
+   /**
+    * Return the frames of the specified reservation to the pool.
+    * @param r the reservation to release
+    */
+   void release(BufferReservation r) {
+      bm.release(r);
+      reservations.remove(r);
    }
    
    /**
@@ -43,22 +111,61 @@ public class BufferList {
     * @param blk a reference to the disk block
     */
    void unpin(BlockId blk) {
-      Buffer buff = buffers.get(blk);
-      bm.unpin(buff);
-      pins.remove(blk);
-      if (!pins.contains(blk))
+      Pins p = buffers.get(blk);
+      if (--p.count == 0) {
+         bm.unpin(p.buff, p.reservation);
          buffers.remove(blk);
+      }
+      else
+         bm.unpin(p.buff);
+      bm.stats().txUnpinned(txnum);
    }
    
    /**
-    * Unpin any buffers still pinned by this transaction.
+    * Unpin any buffers still pinned by this transaction,
+    * and release any rings and reservations
+    * it did not release itself.
     */
    void unpinAll() {
-      for (BlockId blk : pins) {
-         Buffer buff = buffers.get(blk);
-         bm.unpin(buff);
+      for (Pins p : buffers.values()) {
+         for (int i=1; i<p.count; i++)
+            bm.unpin(p.buff);
+         bm.unpin(p.buff, p.reservation);
       }
       buffers.clear();
-      pins.clear();
+      bm.stats().txFinished(txnum);
+      for (BufferRing ring : rings)
+         bm.releaseRing(ring);
+      rings.clear();
+      for (BufferReservation r : reservations)
+         bm.release(r);
+      reservations.clear();
+   }
+
+   /**
+    * Returns a reservation of the transaction that
+    * has a frame to spare, or null if there is none.
+    */
+   private BufferReservation unusedReservation() {
+      for (BufferReservation r : reservations)
+         if (r.unused() > 0)
+            return r;
+      return null;
+   }
+
+   /**
+    * The buffer of a pinned block, the number of times
+    * the transaction has pinned it, and the reservation
+    * it was first pinned through.
+    */
+   private static class Pins {
+      Buffer buff;
+      int count = 1;
+      BufferReservation reservation;
+
+      Pins(Buffer buff, BufferReservation reservation) {
+         this.buff = buff;
+         this.reservation = reservation;
+      }
    }
-}
\ No newline at end of file
+}
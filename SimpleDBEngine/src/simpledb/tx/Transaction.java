@@ -1,5 +1,7 @@
 package simpledb.tx;
 
+import java.io.File;
+import java.util.Collection;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.buffer.*;
@@ -40,7 +42,7 @@ public class Transaction {
       txnum       = nextTxNumber();
       recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
       concurMgr   = new ConcurrencyMgr();
-      mybuffers = new BufferList(bm);
+      mybuffers = new BufferList(bm, txnum);
    }
    
    /**
@@ -79,9 +81,19 @@ public class Transaction {
     * before user transactions begin.
     */
    public void recover() {
-      bm.flushAll(txnum);
+      bm.flushAll();
       recoveryMgr.recover();
    }
+
+   /**
+    * Undo the changes that uncompleted transactions made
+    * to the specified files only, so that they can be read
+    * at startup before {@link #recover()} is called.
+    * @param filenames the names of the files
+    */
+   public void recoverFiles(Collection<String> filenames) {
+      recoveryMgr.recoverFiles(filenames);
+   }
    
    /**
     * Pin the specified block.
@@ -92,6 +104,71 @@ public class Transaction {
       mybuffers.pin(blk);
    }
    
+   /**
+    * Pin the specified block through the specified ring.
+    * If the block is not in the buffer pool,
+    * it is read into one of the ring's buffers.
+    * @param blk a reference to the disk block
+    * @param ring the ring to use, or null to use the shared pool
+    */
+   public void pin(BlockId blk, BufferRing ring) {
+      mybuffers.pin(blk, ring);
+   }
+   
+   /**
+    * Create a ring of buffers for a scan that reads or writes
+    * many blocks once, such as a full table scan or a sort spill.
+    * The ring is released when the transaction completes,
+    * if the scan has not already released it.
+    * @param kind BufferRing.BULKREAD or BufferRing.BULKWRITE
+    * @return the new ring
+    */
+   public BufferRing newBufferRing(int kind) {
+      return mybuffers.newRing(kind);
+   }
+   
+   /**
+    * Return the buffers of the specified ring to the shared pool.
+    * @param ring the ring to release
+    */
+   public void releaseBufferRing(BufferRing ring) {
+      mybuffers.releaseRing(ring);
+   }
+   
+   /**
+    * Create a read-ahead for a scan of the specified file,
+    * which reads the blocks ahead of the scan into the buffer pool
+    * once the scan moves through them in order.
+    * The blocks are only read, not locked.
+    * @param filename the name of the file
+    * @param ring the ring the scan pins blocks through, or null
+    * @return the read-ahead
+    */
+   public ReadAhead newReadAhead(String filename, BufferRing ring) {
+      return bm.newReadAhead(filename, ring);
+   }
+   
+   /**
+    * Reserve the specified number of buffer frames
+    * for an operator that needs them for as long as it runs,
+    * waiting until other reservations leave room.
+    * The reservation is released when the transaction completes,
+    * if the operator has not already released it.
+    * @param numframes the number of frames to reserve
+    * @return the reservation
+    */
+   public BufferReservation reserveBuffs(int numframes) {
+      return mybuffers.reserve(numframes);
+   }
+   
+   /**
+    * Return the frames of the specified reservation to the pool.
+    * @param r the reservation to release
+    */
+   public void releaseBuffs(BufferReservation r) {
+      mybuffers.release(r);
+   }
+   
    /**
     * Unpin the specified block.
     * The transaction looks up the buffer pinned to this block,
@@ -148,10 +225,10 @@ public class Transaction {
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
+      long lsn = -1;
       if (okToLog)
          lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
+      Page p = buff.contentsForUpdate();
       p.setInt(offset, val);
       buff.setModified(txnum, lsn);
    }
@@ -172,14 +249,38 @@ public class Transaction {
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
+      long lsn = -1;
       if (okToLog)
          lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
+      Page p = buff.contentsForUpdate();
       p.setString(offset, val);
       buff.setModified(txnum, lsn);
    }
 
+   /**
+    * Keep the specified file in the specified kind of storage,
+    * instead of the database's own kind.
+    * The storage must be set before the file is first used,
+    * and is not undone by a rollback.
+    * @param filename the name of the file
+    * @param storage "file", "mapped", "direct" or "compressed"
+    */
+   public void setStorage(String filename, String storage) {
+      fm.setStorage(filename, storage);
+   }
+
+   /**
+    * Keep the specified file in the specified directory,
+    * or in the database directory if the directory is null.
+    * The directory must be set before the file is first used,
+    * and is not undone by a rollback.
+    * @param filename the name of the file
+    * @param dir the directory of the file, or null
+    */
+   public void setDirectory(String filename, File dir) {
+      fm.setDirectory(filename, dir);
+   }
+   
    /**
     * Return the number of blocks in the specified file.
     * This method first obtains an SLock on the 
@@ -216,6 +317,19 @@ public class Transaction {
       return bm.available();
    }
    
+   /**
+    * Return the number of buffer frames that can be
+    * reserved without waiting.
+    * @return the number of reservable frames
+    */
+   public int reservableBuffs() {
+      return bm.reservable();
+   }
+   
+   public int bufferPoolSize() {
+      return bm.size();
+   }
+   
    private static synchronized int nextTxNumber() {
       nextTxNum++;
       return nextTxNum;
@@ -1,7 +1,6 @@
 package simpledb.tx.concurrency;
 
-import java.util.*;
-import simpledb.file.BlockId;
+import simpledb.file.*;
 
 /**
  * The concurrency manager for the transaction.
@@ -18,7 +17,7 @@ public class ConcurrencyMgr {
     * all transactions share the same table.
     */
    private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   private BlockMap<String> locks  = new BlockMap<>();
 
    /**
     * Obtain an SLock on the block, if necessary.
@@ -53,7 +52,7 @@ public class ConcurrencyMgr {
     * unlock each one.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
+      for (BlockId blk : locks.keys()) 
          locktbl.unlock(blk);
       locks.clear();
    }
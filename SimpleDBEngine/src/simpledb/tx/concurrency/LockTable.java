@@ -1,7 +1,6 @@
 package simpledb.tx.concurrency;
 
-import java.util.*;
-import simpledb.file.BlockId;
+import simpledb.file.*;
 
 /**
  * The lock table, which provides methods to lock and unlock blocks.
@@ -12,12 +11,14 @@ import simpledb.file.BlockId;
  * are removed from the wait list and rescheduled.
  * If one of those transactions discovers that the lock it is waiting for
  * is still locked, it will place itself back on the wait list.
+ * The locks are kept in a {@link BlockMap}, so looking up a lock
+ * compares block keys and allocates nothing.
  * @author Edward Sciore
  */
 class LockTable {
    private static final long MAX_TIME = 10000; // 10 seconds
    
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
+   private BlockMap<Integer> locks = new BlockMap<>();
    
    /**
     * Grant an SLock on the specified block.
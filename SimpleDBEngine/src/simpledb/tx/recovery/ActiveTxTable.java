@@ -0,0 +1,79 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import simpledb.log.LogMgr;
+
+/**
+ * The transactions active on a log, each with the LSN
+ * at which its part of the log starts, and the LSN of the
+ * last checkpoint written to the log.
+ * LSNs belong to a single log, so there is one table per
+ * log manager, shared by the recovery managers of the
+ * transactions of its database, and by its checkpoints.
+ * The tables are found by their log managers, which they
+ * do not refer to, so that a table goes with its log manager.
+ */
+class ActiveTxTable {
+   private static Map<LogMgr,ActiveTxTable> tables = new WeakHashMap<>();
+   private Map<Integer,Long> startLSNs = new HashMap<>();
+   private long lastCheckpointLSN = Long.MAX_VALUE; // none yet
+
+   /**
+    * Returns the table of the specified log,
+    * creating it when it is first needed.
+    * @param lm the log manager
+    * @return the table of the log's active transactions
+    */
+   static synchronized ActiveTxTable of(LogMgr lm) {
+      return tables.computeIfAbsent(lm, k -> new ActiveTxTable());
+   }
+
+   /**
+    * Makes the transaction active, and writes its START record.
+    * The transaction is active before its START record is appended,
+    * so that a completing transaction cannot truncate the log past it,
+    * and a checkpoint lists it unless its START follows the checkpoint.
+    * @param lm the log manager of the table
+    * @param txnum the id of the transaction
+    * @return the LSN of the START record
+    */
+   synchronized long start(LogMgr lm, int txnum) {
+      startLSNs.put(txnum, lm.endLSN());
+      return StartRecord.writeToLog(lm, txnum);
+   }
+
+   /**
+    * Writes a checkpoint record listing the active transactions.
+    * @param lm the log manager of the table
+    * @return the LSN of the checkpoint record
+    */
+   synchronized long writeCheckpoint(LogMgr lm) {
+      return CheckpointRecord.writeToLog(lm, new ArrayList<>(startLSNs.keySet()));
+   }
+
+   /**
+    * Notes the checkpoint that has just been flushed.
+    * @param lsn the LSN of the checkpoint record
+    */
+   synchronized void checkpointed(long lsn) {
+      lastCheckpointLSN = lsn;
+   }
+
+   /**
+    * Removes the transaction from the active transactions, and
+    * returns the LSN before which the log is no longer needed:
+    * the START record of the oldest transaction still active
+    * or the last checkpoint, whichever is earlier, or, if there
+    * is neither, the transaction's last record.
+    * @param txnum the id of the transaction
+    * @param lsn the LSN of the transaction's last record
+    * @return the LSN of the earliest record still needed
+    */
+   synchronized long complete(int txnum, long lsn) {
+      startLSNs.remove(txnum);
+      long keep = Math.min(lsn, lastCheckpointLSN);
+      for (long start : startLSNs.values())
+         keep = Math.min(keep, start);
+      return keep;
+   }
+}
@@ -1,15 +1,38 @@
 package simpledb.tx.recovery;
 
+import java.util.*;
 import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
  * The CHECKPOINT log record.
+ * A quiescent checkpoint, written when no transaction is active,
+ * lists no transactions. A fuzzy checkpoint lists the transactions
+ * that were active when it was written, unless there were too many
+ * to fit in a log record, in which case the list is unknown.
  * @author Edward Sciore
  */
 public class CheckpointRecord implements LogRecord {
+   private List<Integer> activeTxs;
+
    public CheckpointRecord() {
+      activeTxs = Collections.emptyList();
+   }
+
+   /**
+    * Create a log record by reading the list of
+    * active transactions from the log.
+    * @param p the page containing the log values
+    */
+   public CheckpointRecord(Page p) {
+      int npos = Integer.BYTES;
+      int n = p.getInt(npos);
+      if (n >= 0) {
+         activeTxs = new ArrayList<>(n);
+         for (int i=0; i<n; i++)
+            activeTxs.add(p.getInt(npos + (i + 1) * Integer.BYTES));
+      }
    }
 
    public int op() {
@@ -24,6 +47,15 @@ public class CheckpointRecord implements LogRecord {
       return -1; // dummy value
    }
 
+   /**
+    * Returns the transactions that were active
+    * when the checkpoint was written.
+    * @return the active transactions, or null if they are unknown
+    */
+   public List<Integer> activeTxs() {
+      return activeTxs;
+   }
+
    /**
     * Does nothing, because a checkpoint record
     * contains no undo information.
@@ -31,19 +63,46 @@ public class CheckpointRecord implements LogRecord {
    public void undo(Transaction tx) {}
 
    public String toString() {
-      return "<CHECKPOINT>";
+      if (activeTxs == null)
+         return "<CHECKPOINT ?>";
+      else if (activeTxs.isEmpty())
+         return "<CHECKPOINT>";
+      else
+         return "<CHECKPOINT " + activeTxs + ">";
    }
 
-   /** 
+   /**
+    * A static method to write a quiescent checkpoint record to the log.
+    * @return the LSN of the last log value
+    */
+   public static long writeToLog(LogMgr lm) {
+      return writeToLog(lm, Collections.emptyList());
+   }
+
+   /**
     * A static method to write a checkpoint record to the log.
     * This log record contains the CHECKPOINT operator,
-    * and nothing else.
+    * followed by the number of active transactions and their ids,
+    * or by -1 if the ids do not fit in a log record.
+    * @param lm the log manager
+    * @param activeTxs the ids of the active transactions
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm) {
-      byte[] rec = new byte[Integer.BYTES];
+   public static long writeToLog(LogMgr lm, Collection<Integer> activeTxs) {
+      int n = activeTxs.size();
+      if ((n + 2) * Integer.BYTES > lm.maxRecordLength())
+         n = -1;
+      byte[] rec = new byte[(Math.max(n, 0) + 2) * Integer.BYTES];
       Page p = new Page(rec);
       p.setInt(0, CHECKPOINT);
+      p.setInt(Integer.BYTES, n);
+      if (n > 0) {
+         int pos = 2 * Integer.BYTES;
+         for (int txnum : activeTxs) {
+            p.setInt(pos, txnum);
+            pos += Integer.BYTES;
+         }
+      }
       return lm.append(rec);
    }
 }
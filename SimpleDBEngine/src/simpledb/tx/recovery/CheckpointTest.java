@@ -0,0 +1,112 @@
+package simpledb.tx.recovery;
+
+import java.io.File;
+import java.util.Iterator;
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import static simpledb.tx.recovery.LogRecord.*;
+
+/**
+ * Writes a fuzzy checkpoint while a long transaction is active,
+ * between two sets of committed transactions, and then
+ * leaves the long transaction and one started after the
+ * checkpoint unfinished, as if the system crashed.
+ * The checkpoint must list the long transaction, be preceded by
+ * the dirty-page table, and be followed by the flush of the pages,
+ * except the one that the long transaction still has pinned.
+ * Like RecoveryTest, the test is run twice: the second run
+ * recovers the database, which has to read past the checkpoint
+ * to undo the long transaction.
+ */
+public class CheckpointTest {
+   private static final int NUM_TXS = 50;
+
+   public static void main(String[] args) {
+      String dirname = "checkpointtest";
+      SimpleDB.CHECKPOINT_INTERVAL = 0;
+      boolean recovering = new File(dirname).exists();
+      SimpleDB db = new SimpleDB(dirname);
+      BlockId blk = new BlockId("long", 0);
+      BlockId pinnedBlk = new BlockId("long", 1);
+      if (recovering) {
+         Transaction tx = db.newTx();
+         tx.pin(blk);
+         tx.pin(pinnedBlk);
+         int val = tx.getInt(blk, 0) + tx.getInt(pinnedBlk, 0);
+         tx.commit();
+         System.out.println("After recovery: " + count(db) + " records, expected "
+                            + (2 * NUM_TXS) + "; the long transaction's changes are "
+                            + (val == 0 ? "undone" : "still there"));
+         return;
+      }
+      db.bufferMgr().stopWriter(); // leaves the unpinned page to the checkpoint
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table t(A int)", tx);
+      tx.commit();
+
+      // the long transaction changes a file of its own,
+      // so that it does not hold locks the others need
+      Transaction longTx = db.newTx();
+      longTx.append("long");
+      longTx.append("long");
+      longTx.pin(blk);
+      longTx.setInt(blk, 0, 99, true);
+      longTx.unpin(blk);
+      longTx.pin(pinnedBlk);
+      longTx.setInt(pinnedBlk, 0, 99, true);
+      insert(db, 0, NUM_TXS);
+      int dirtyBefore = db.bufferMgr().numDirty();
+      db.checkpoint();
+      int dirtyAfter = db.bufferMgr().numDirty();
+      insert(db, NUM_TXS, 2 * NUM_TXS);
+
+      CheckpointRecord ckpt = null;
+      int dirtyPages = 0;
+      Iterator<byte[]> iter = db.logMgr().iterator();
+      while (iter.hasNext()) {
+         LogRecord rec = LogRecord.createLogRecord(iter.next());
+         if (rec.op() == CHECKPOINT && ckpt == null)
+            ckpt = (CheckpointRecord) rec;
+         else if (rec.op() == DIRTYPAGES && ckpt != null)
+            dirtyPages += ((DirtyPagesRecord) rec).pages().size();
+         else if (ckpt != null)
+            break;
+      }
+      System.out.println("The checkpoint lists " + ckpt.activeTxs().size()
+                         + " active transaction, after " + dirtyPages + " dirty pages");
+      System.out.println("The flush after it left " + dirtyAfter + " of "
+                         + dirtyBefore + " pages dirty: "
+                         + (db.bufferMgr().dirtyPages().containsKey(pinnedBlk) ? "the pinned one" : "not the pinned one"));
+
+      // a transaction that starts after the checkpoint and does not finish
+      Transaction late = db.newTx();
+      for (int i=0; i<NUM_TXS; i++)
+         planner.executeUpdate("insert into t(A) values(" + i + ")", late);
+      db.shutdown();
+      System.out.println("Run the test again to recover the database");
+   }
+
+   private static void insert(SimpleDB db, int from, int to) {
+      for (int i=from; i<to; i++) {
+         Transaction tx = db.newTx();
+         db.planner().executeUpdate("insert into t(A) values(" + i + ")", tx);
+         tx.commit();
+      }
+   }
+
+   private static int count(SimpleDB db) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan("select A from t", tx);
+      Scan s = p.open();
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      tx.commit();
+      return count;
+   }
+}
@@ -0,0 +1,78 @@
+package simpledb.tx.recovery;
+
+import simpledb.log.LogMgr;
+import simpledb.buffer.BufferMgr;
+
+/**
+ * The background checkpointer.
+ * Every interval, it writes a fuzzy checkpoint and flushes
+ * the pages that were dirty when it was written, so that
+ * recovery after a crash reads about an interval of the log,
+ * however long the server has run.
+ * The checkpointer runs as a daemon thread, started
+ * once recovery is done, since a checkpoint written
+ * before recovery would not list the transactions to undo.
+ */
+public class Checkpointer implements Runnable {
+   private LogMgr lm;
+   private BufferMgr bm;
+   private long interval;
+   private boolean stopped = false;
+   private boolean done = false;
+
+   /**
+    * Creates a checkpointer for the specified log and buffer managers.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @param interval the number of milliseconds between checkpoints
+    */
+   public Checkpointer(LogMgr lm, BufferMgr bm, long interval) {
+      this.lm = lm;
+      this.bm = bm;
+      this.interval = interval;
+   }
+
+   public void run() {
+      try {
+         while (waitForNextRound())
+            RecoveryMgr.checkpoint(lm, bm);
+      }
+      finally {
+         finished();
+      }
+   }
+
+   /**
+    * Asks the checkpointer to stop after its current checkpoint,
+    * and waits until it has stopped.
+    * The thread is not interrupted, because interrupting
+    * a thread that is writing to a file channel closes the channel.
+    */
+   public synchronized void stop() {
+      stopped = true;
+      notifyAll();
+      try {
+         while (!done)
+            wait();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private synchronized void finished() {
+      done = true;
+      notifyAll();
+   }
+
+   private synchronized boolean waitForNextRound() {
+      try {
+         if (!stopped)
+            wait(interval);
+      }
+      catch (InterruptedException e) {
+         stopped = true;
+      }
+      return !stopped;
+   }
+}
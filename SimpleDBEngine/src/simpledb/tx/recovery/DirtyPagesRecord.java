@@ -0,0 +1,120 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The DIRTYPAGES log record, written just before a fuzzy
+ * CHECKPOINT record. It holds part of the dirty-page table
+ * of the buffer pool at the time of the checkpoint:
+ * each dirty block, with the LSN of the record that first
+ * made its page dirty, or -1 if that change was not logged.
+ * A table too large for one log record is written
+ * as several records.
+ */
+public class DirtyPagesRecord implements LogRecord {
+   private Map<BlockId,Long> pages = new LinkedHashMap<>();
+
+   /**
+    * Create a log record by reading the dirty blocks from the log.
+    * @param p the page containing the log values
+    */
+   public DirtyPagesRecord(Page p) {
+      int pos = Integer.BYTES;
+      int n = p.getInt(pos);
+      pos += Integer.BYTES;
+      for (int i=0; i<n; i++) {
+         String filename = p.getString(pos);
+         pos += Page.maxLength(filename.length());
+         int blknum = p.getInt(pos);
+         pos += Integer.BYTES;
+         long lsn = p.getLong(pos);
+         pos += Long.BYTES;
+         pages.put(new BlockId(filename, blknum), lsn);
+      }
+   }
+
+   public int op() {
+      return DIRTYPAGES;
+   }
+
+   /**
+    * The record has no associated transaction,
+    * and so the method returns a "dummy", negative txid.
+    */
+   public int txNumber() {
+      return -1;
+   }
+
+   /**
+    * Returns the dirty blocks in the record,
+    * each with the LSN that first made it dirty.
+    * @return the dirty blocks and their LSNs
+    */
+   public Map<BlockId,Long> pages() {
+      return pages;
+   }
+
+   /**
+    * Does nothing, because the record
+    * contains no undo information.
+    */
+   public void undo(Transaction tx) {}
+
+   public String toString() {
+      return "<DIRTYPAGES " + pages + ">";
+   }
+
+   /**
+    * A static method to write the dirty-page table to the log,
+    * in as many records as it needs.
+    * Each record contains the DIRTYPAGES operator, followed by
+    * the number of blocks, and for each block its filename, number,
+    * and the LSN that first made it dirty.
+    * @param lm the log manager
+    * @param pages the dirty blocks and their LSNs
+    * @return the LSN of the last record, or -1 if there were no dirty blocks
+    */
+   public static long writeToLog(LogMgr lm, Map<BlockId,Long> pages) {
+      long lsn = -1;
+      List<Map.Entry<BlockId,Long>> entries = new ArrayList<>(pages.entrySet());
+      int i = 0;
+      while (i < entries.size()) {
+         int size = 2 * Integer.BYTES;
+         int end = i;
+         while (end < entries.size()) {
+            int entrySize = entrySize(entries.get(end).getKey());
+            if (size + entrySize > lm.maxRecordLength())
+               break;
+            size += entrySize;
+            end++;
+         }
+         if (end == i)
+            throw new RuntimeException("file name too long for the log: "
+                                       + entries.get(i).getKey().fileName());
+         byte[] rec = new byte[size];
+         Page p = new Page(rec);
+         p.setInt(0, DIRTYPAGES);
+         p.setInt(Integer.BYTES, end - i);
+         int pos = 2 * Integer.BYTES;
+         for (; i<end; i++) {
+            BlockId blk = entries.get(i).getKey();
+            long pagelsn = entries.get(i).getValue();
+            p.setString(pos, blk.fileName());
+            pos += Page.maxLength(blk.fileName().length());
+            p.setInt(pos, blk.number());
+            pos += Integer.BYTES;
+            p.setLong(pos, pagelsn);
+            pos += Long.BYTES;
+         }
+         lsn = lm.append(rec);
+      }
+      return lsn;
+   }
+
+   private static int entrySize(BlockId blk) {
+      return Page.maxLength(blk.fileName().length()) + Integer.BYTES + Long.BYTES;
+   }
+}
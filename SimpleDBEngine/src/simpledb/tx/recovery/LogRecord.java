@@ -1,6 +1,6 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.*;
 import simpledb.tx.Transaction;
 
 /**
@@ -10,7 +10,8 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5,
+         DIRTYPAGES = 6;
 
    /**
     * Returns the log record's type. 
@@ -25,6 +26,26 @@ public interface LogRecord {
     */
    int txNumber();
 
+   /**
+    * Returns the LSN of the previous log record of the
+    * same transaction, which links the records that a rollback
+    * undoes into a chain ending at the transaction's START record.
+    * Only the records that can be undone are in the chain.
+    * @return the LSN of the transaction's previous record, or -1
+    */
+   default long prevLSN() {
+      return -1;
+   }
+
+   /**
+    * Returns the block whose value the record saves,
+    * or null if the record changes no block.
+    * @return the block of the record, or null
+    */
+   default BlockId block() {
+      return null;
+   }
+
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
@@ -42,7 +63,9 @@ public interface LogRecord {
       Page p = new Page(bytes);
       switch (p.getInt(0)) {
       case CHECKPOINT: 
-         return new CheckpointRecord();
+         // a checkpoint written before they listed transactions has no list
+         return (bytes.length == Integer.BYTES) ? new CheckpointRecord()
+                                                : new CheckpointRecord(p);
       case START: 
          return new StartRecord(p);
       case COMMIT: 
@@ -50,9 +73,11 @@ public interface LogRecord {
       case ROLLBACK: 
          return new RollbackRecord(p);
       case SETINT: 
-         return new SetIntRecord(p);
+         return new SetIntRecord(p, bytes.length);
       case SETSTRING: 
-         return new SetStringRecord(p);
+         return new SetStringRecord(p, bytes.length);
+      case DIRTYPAGES:
+         return new DirtyPagesRecord(p);
       default:
          return null;
       }
@@ -9,13 +9,39 @@ import static simpledb.tx.recovery.LogRecord.*;
 
 /**
  * The recovery manager.  Each transaction has its own recovery manager.
+ * <P>
+ * Recovery is undo-only: the data a transaction changed is
+ * forced when it commits or rolls back. So the log before the
+ * START record of the oldest active transaction is no longer
+ * needed, by a rollback or by recovery, and the log is truncated
+ * there whenever a transaction completes, except that the last
+ * checkpoint is kept.
+ * <P>
+ * Besides the quiescent checkpoint written by recovery, a
+ * {@link Checkpointer} can write fuzzy checkpoints while transactions
+ * run. A fuzzy checkpoint lists the active transactions, and is
+ * preceded by the dirty-page table of the buffer pool; the pages
+ * in the table are then flushed. Recovery reads back past a fuzzy
+ * checkpoint only as far as the START records of the listed
+ * transactions that had not completed, so the log that recovery
+ * reads is bounded by the checkpoint interval and by the longest
+ * transaction, not by how long the server has run.
+ * The dirty-page table is not needed by the undo-only recovery;
+ * it records what the flush after the checkpoint writes.
+ * <P>
+ * The active transactions and the last checkpoint are kept
+ * in an {@link ActiveTxTable} for each log, since LSNs
+ * mean nothing outside their own log.
  * @author Edward Sciore
  */
 public class RecoveryMgr {
    private LogMgr lm;
    private BufferMgr bm;
+   private ActiveTxTable activeTxs; // shared by the transactions on the log
    private Transaction tx;
    private int txnum;
+   private long startLSN; // the LSN of the transaction's START record
+   private long lastLSN;  // the LSN of its latest record that can be undone
 
    /**
     * Create a recovery manager for the specified transaction.
@@ -26,7 +52,9 @@ public class RecoveryMgr {
       this.txnum = txnum;
       this.lm = lm;
       this.bm = bm;
-      StartRecord.writeToLog(lm, txnum);
+      activeTxs = ActiveTxTable.of(lm);
+      startLSN = activeTxs.start(lm, txnum);
+      lastLSN = startLSN;
    }
 
    /**
@@ -34,8 +62,9 @@ public class RecoveryMgr {
     */
    public void commit() {
       bm.flushAll(txnum);
-      int lsn = CommitRecord.writeToLog(lm, txnum);
+      long lsn = CommitRecord.writeToLog(lm, txnum);
       lm.flush(lsn);
+      complete(lsn);
    }
 
    /**
@@ -44,19 +73,60 @@ public class RecoveryMgr {
    public void rollback() {
       doRollback();
       bm.flushAll(txnum);
-      int lsn = RollbackRecord.writeToLog(lm, txnum);
+      long lsn = RollbackRecord.writeToLog(lm, txnum);
       lm.flush(lsn);
+      complete(lsn);
    }
 
    /**
     * Recover uncompleted transactions from the log
     * and then write a quiescent checkpoint record to the log and flush it.
+    * The blocks in the buffer pool are recorded along with the checkpoint.
     */
    public void recover() {
-      doRecover();
-      bm.flushAll(txnum);
-      int lsn = CheckpointRecord.writeToLog(lm);
+      doRecover(null);
+      bm.flushAll();
+      long lsn = CheckpointRecord.writeToLog(lm);
+      lm.flush(lsn);
+      activeTxs.checkpointed(lsn);
+      bm.dumpResidentBlocks();
+   }
+
+   /**
+    * Undoes the changes that uncompleted transactions made
+    * to the specified files, and to no others, so that the files
+    * can be read at startup before the rest of the database
+    * is recovered. The later {@link #recover()} undoes
+    * the same changes again, to the same values.
+    * @param filenames the names of the files to recover
+    */
+   public void recoverFiles(Collection<String> filenames) {
+      doRecover(filenames);
+   }
+
+   /**
+    * Writes a fuzzy checkpoint, without stopping the transactions.
+    * The dirty-page table of the buffer pool is written to the log,
+    * followed by a checkpoint record listing the active transactions,
+    * and the log is flushed. The pages in the table are then flushed,
+    * except those pinned by live transactions, which
+    * recovery undoes if need be and which their commits flush;
+    * the log before the checkpoint can be truncated once
+    * the listed transactions have completed.
+    * Recovery must have been done before the first fuzzy checkpoint.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @return the LSN of the checkpoint record
+    */
+   public static long checkpoint(LogMgr lm, BufferMgr bm) {
+      Map<BlockId,Long> dirtyPages = bm.dirtyPages();
+      DirtyPagesRecord.writeToLog(lm, dirtyPages);
+      ActiveTxTable activeTxs = ActiveTxTable.of(lm);
+      long lsn = activeTxs.writeCheckpoint(lm);
       lm.flush(lsn);
+      activeTxs.checkpointed(lsn);
+      bm.flushBlocks(dirtyPages.keySet());
+      return lsn;
    }
 
    /**
@@ -65,10 +135,11 @@ public class RecoveryMgr {
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setInt(Buffer buff, int offset, int newval) {
+   public long setInt(Buffer buff, int offset, int newval) {
       int oldval = buff.contents().getInt(offset);
       BlockId blk = buff.block();
-      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      lastLSN = SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval, lastLSN);
+      return lastLSN;
    }
 
    /**
@@ -77,29 +148,40 @@ public class RecoveryMgr {
     * @param offset the offset of the value in the page
     * @param newval the value to be written
     */
-   public int setString(Buffer buff, int offset, String newval) {
+   public long setString(Buffer buff, int offset, String newval) {
       String oldval = buff.contents().getString(offset);
       BlockId blk = buff.block();
-      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      lastLSN = SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval, lastLSN);
+      return lastLSN;
    }
 
    /**
-    * Rollback the transaction, by iterating
-    * through the log records until it finds 
+    * Removes the transaction from the active transactions, and
+    * truncates the log before the START record of the oldest
+    * transaction still active or the last checkpoint,
+    * whichever is earlier, or, if there is neither,
+    * before the transaction's last record.
+    * The log is truncated when it is next forced.
+    * @param lsn the LSN of the transaction's last record
+    */
+   private void complete(long lsn) {
+      lm.truncate(activeTxs.complete(txnum, lsn));
+   }
+
+   /**
+    * Rollback the transaction, by following the chain
+    * of its log records, from the latest back to
     * the transaction's START record,
-    * calling undo() for each of the transaction's
-    * log records.
+    * calling undo() for each of them.
+    * Each record is read by its LSN, so the records
+    * of other transactions are not read.
     */
    private void doRollback() {
-      Iterator<byte[]> iter = lm.iterator();
-      while (iter.hasNext()) {
-         byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes); 
-         if (rec.txNumber() == txnum) {
-            if (rec.op() == START)
-               return;
-            rec.undo(tx);
-         }
+      long lsn = lastLSN;
+      while (lsn != startLSN) {
+         LogRecord rec = LogRecord.createLogRecord(lm.read(lsn));
+         rec.undo(tx);
+         lsn = rec.prevLSN();
       }
    }
 
@@ -108,21 +190,49 @@ public class RecoveryMgr {
     * The method iterates through the log records.
     * Whenever it finds a log record for an unfinished
     * transaction, it calls undo() on that record.
-    * The method stops when it encounters a CHECKPOINT record
-    * or the end of the log.
+    * When it encounters the last CHECKPOINT record, the
+    * transactions still to be undone are those the checkpoint
+    * lists whose START, COMMIT or ROLLBACK records have not been
+    * read; the method stops once there are none left,
+    * or at the end of the log. If the checkpoint could not
+    * list the transactions, the method reads the whole log.
+    * @param filenames the files whose changes are undone,
+    *                  or null to undo the changes to every file
     */
-   private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<>();
+   private void doRecover(Collection<String> filenames) {
+      Collection<Integer> finishedTxs = new HashSet<>();
+      Collection<Integer> startedTxs = new HashSet<>();
+      boolean pastCheckpoint = false;
+      Set<Integer> pending = null; // null until a checkpoint lists them
       Iterator<byte[]> iter = lm.iterator();
       while (iter.hasNext()) {
          byte[] bytes = iter.next();
          LogRecord rec = LogRecord.createLogRecord(bytes);
-         if (rec.op() == CHECKPOINT)
-            return;
-         if (rec.op() == COMMIT || rec.op() == ROLLBACK)
+         int op = rec.op();
+         if (op == CHECKPOINT && !pastCheckpoint) {
+            pastCheckpoint = true;
+            List<Integer> active = ((CheckpointRecord) rec).activeTxs();
+            if (active != null) {
+               pending = new HashSet<>(active);
+               pending.removeAll(finishedTxs);
+               pending.removeAll(startedTxs);
+            }
+         }
+         else if (op == COMMIT || op == ROLLBACK)
             finishedTxs.add(rec.txNumber());
-         else if (!finishedTxs.contains(rec.txNumber()))
-            rec.undo(tx);
+         else if (!finishedTxs.contains(rec.txNumber())) {
+            if (filenames == null || (rec.block() != null
+                                      && filenames.contains(rec.block().fileName())))
+               rec.undo(tx);
+            if (op == START)
+               startedTxs.add(rec.txNumber());
+         }
+         if (pending != null) {
+            if (op == START || op == COMMIT || op == ROLLBACK)
+               pending.remove(rec.txNumber());
+            if (pending.isEmpty())
+               return;
+         }
       }
    }
 }
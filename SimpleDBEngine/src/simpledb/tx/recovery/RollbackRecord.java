@@ -44,7 +44,7 @@ public class RollbackRecord implements LogRecord {
     * followed by the transaction id.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum) {
+   public static long writeToLog(LogMgr lm, int txnum) {
       byte[] rec = new byte[2*Integer.BYTES];
       Page p = new Page(rec);
       p.setInt(0, ROLLBACK);
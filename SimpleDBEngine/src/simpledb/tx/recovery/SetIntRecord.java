@@ -7,12 +7,15 @@ import simpledb.tx.Transaction;
 public class SetIntRecord implements LogRecord {
    private int txnum, offset, val;
    private BlockId blk;
+   private long prevLSN;
 
    /**
     * Create a new setint log record.
     * @param bb the bytebuffer containing the log values
+    * @param length the length of the record; a record
+    * written before there were undo chains has no prevLSN
     */
-   public SetIntRecord(Page p) {
+   public SetIntRecord(Page p, int length) {
       int tpos = Integer.BYTES;
       txnum = p.getInt(tpos);
       int fpos = tpos + Integer.BYTES;
@@ -24,6 +27,8 @@ public class SetIntRecord implements LogRecord {
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
       val = p.getInt(vpos);
+      int ppos = vpos + Integer.BYTES;
+      prevLSN = (ppos < length) ? p.getLong(ppos) : -1;
    }
 
    public int op() {
@@ -34,6 +39,14 @@ public class SetIntRecord implements LogRecord {
       return txnum;
    }
 
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
       return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
    }
@@ -56,16 +69,19 @@ public class SetIntRecord implements LogRecord {
     * This log record contains the SETINT operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * integer value at that offset, and then by the LSN of
+    * the transaction's previous log record.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
+   public static long writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val,
+                                 long prevLSN) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      byte[] rec = new byte[vpos + Integer.BYTES];
+      int ppos = vpos + Integer.BYTES;
+      byte[] rec = new byte[ppos + Long.BYTES];
       Page p = new Page(rec);
       p.setInt(0, SETINT);
       p.setInt(tpos, txnum);
@@ -73,6 +89,7 @@ public class SetIntRecord implements LogRecord {
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setInt(vpos, val);
+      p.setLong(ppos, prevLSN);
       return lm.append(rec);
    }
 }
@@ -8,12 +8,15 @@ public class SetStringRecord implements LogRecord {
    private int txnum, offset;
    private String val;
    private BlockId blk;
+   private long prevLSN;
 
    /**
     * Create a new setint log record.
     * @param bb the bytebuffer containing the log values
+    * @param length the length of the record; a record
+    * written before there were undo chains has no prevLSN
     */
-   public SetStringRecord(Page p) {
+   public SetStringRecord(Page p, int length) {
       int tpos = Integer.BYTES;
       txnum = p.getInt(tpos);
       int fpos = tpos + Integer.BYTES;
@@ -25,6 +28,8 @@ public class SetStringRecord implements LogRecord {
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
       val = p.getString(vpos);
+      int ppos = vpos + Page.maxLength(val.length());
+      prevLSN = (ppos < length) ? p.getLong(ppos) : -1;
    }
 
    public int op() {
@@ -35,6 +40,14 @@ public class SetStringRecord implements LogRecord {
       return txnum;
    }
 
+   public long prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
       return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
    }
@@ -57,16 +70,19 @@ public class SetStringRecord implements LogRecord {
     * This log record contains the SETINT operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * integer value at that offset, and then by the LSN of
+    * the transaction's previous log record.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
+   public static long writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val,
+                                 long prevLSN) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      int reclen = vpos + Page.maxLength(val.length());
+      int ppos = vpos + Page.maxLength(val.length());
+      int reclen = ppos + Long.BYTES;
       byte[] rec = new byte[reclen];
       Page p = new Page(rec);
       p.setInt(0, SETSTRING);
@@ -75,6 +91,7 @@ public class SetStringRecord implements LogRecord {
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setString(vpos, val);
+      p.setLong(ppos, prevLSN);
       return lm.append(rec);
    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package simpledb.tx.recovery;
+
+import java.util.Iterator;
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+import static simpledb.tx.recovery.LogRecord.*;
+
+/**
+ * Opens two databases in the same JVM, and leaves a transaction
+ * active on the first while the second runs many small transactions
+ * and writes a checkpoint. The second database's checkpoint must
+ * not list the first one's transaction, and its log must be
+ * truncated as its own transactions complete.
+ */
+public class TwoLogTest {
+   private static final int NUM_TXS = 200;
+
+   public static void main(String[] args) {
+      SimpleDB.LOG_SEGMENT_BLOCKS = 4;
+      SimpleDB db1 = new SimpleDB("twologtest1", 400, 8);
+      SimpleDB db2 = new SimpleDB("twologtest2", 400, 8);
+
+      Transaction active = db1.newTx();
+      BlockId blk1 = active.append("first");
+      active.pin(blk1);
+      active.setInt(blk1, 0, 1, true);
+
+      Transaction tx = db2.newTx();
+      BlockId blk2 = tx.append("second");
+      tx.commit();
+      for (int i=0; i<NUM_TXS; i++) {
+         tx = db2.newTx();
+         tx.pin(blk2);
+         tx.setInt(blk2, 0, i, true);
+         tx.commit();
+      }
+      db2.checkpoint();
+      tx = db2.newTx();
+      tx.commit();
+
+      LogMgr lm2 = db2.logMgr();
+      int listed = -1;
+      Iterator<byte[]> iter = lm2.iterator();
+      while (iter.hasNext() && listed < 0) {
+         LogRecord rec = LogRecord.createLogRecord(iter.next());
+         if (rec.op() == CHECKPOINT)
+            listed = ((CheckpointRecord) rec).activeTxs().size();
+      }
+      System.out.println("The second database's checkpoint lists " + listed
+                         + " active transactions; expected 0");
+      int left = lm2.segments();
+      System.out.println("Its log was truncated to "
+                         + (left <= 2 ? "at most 2" : String.valueOf(left)) + " segments");
+      active.rollback();
+   }
+}
@@ -0,0 +1,71 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Rolls back a short transaction after other transactions
+ * have filled many blocks of the log with their records,
+ * and checks that the rollback restores its values while
+ * reading only the blocks holding its own records.
+ * Then rolls back a transaction whose records span many blocks,
+ * more than the log-block cache holds.
+ */
+public class UndoChainTest {
+   private static final int SHORT_UPDATES = 5;
+   private static final int BUSY_TXS = 10;
+   private static final int BUSY_UPDATES = 200;
+   private static final int LONG_UPDATES = 1000;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("undochaintest", 400, 8);
+      LogMgr lm = db.logMgr();
+      Transaction init = db.newTx();
+      BlockId shortBlk = init.append("short");
+      BlockId longBlk = init.append("long");
+      init.commit();
+
+      Transaction shortTx = db.newTx();
+      shortTx.pin(shortBlk);
+      for (int i=0; i<SHORT_UPDATES; i++)
+         shortTx.setInt(shortBlk, i * Integer.BYTES, 100 + i, true);
+
+      // each busy transaction changes a file of its own
+      for (int t=0; t<BUSY_TXS; t++) {
+         Transaction tx = db.newTx();
+         BlockId blk = tx.append("busy" + t);
+         tx.pin(blk);
+         for (int i=0; i<BUSY_UPDATES; i++)
+            tx.setInt(blk, (i % 50) * Integer.BYTES, i, true);
+         tx.commit();
+      }
+
+      long reads = lm.reads();
+      shortTx.rollback();
+      long shortReads = lm.reads() - reads;
+      System.out.println("The short rollback read " + shortReads + " log blocks and "
+                         + (restored(db, shortBlk, SHORT_UPDATES) ? "restored" : "did not restore")
+                         + " its values");
+
+      Transaction longTx = db.newTx();
+      longTx.pin(longBlk);
+      for (int i=0; i<LONG_UPDATES; i++)
+         longTx.setInt(longBlk, (i % 50) * Integer.BYTES, 1000 + i, true);
+      longTx.rollback();
+      System.out.println("The long rollback "
+                         + (restored(db, longBlk, 50) ? "restored" : "did not restore")
+                         + " its values");
+   }
+
+   private static boolean restored(SimpleDB db, BlockId blk, int count) {
+      Transaction tx = db.newTx();
+      tx.pin(blk);
+      boolean ok = true;
+      for (int i=0; i<count; i++)
+         ok &= tx.getInt(blk, i * Integer.BYTES) == 0;
+      tx.commit();
+      return ok;
+   }
+}